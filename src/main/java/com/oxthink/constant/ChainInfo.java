@@ -8,48 +8,48 @@ public enum ChainInfo {
     /**
      * ETH主网
      */
-//    ETH_MAIN("https://mainnet.infura.io/v3/", "1", "0xC02aaA39b223FE8D0A0e5C4F27eAD9083C756Cc2", "ETH", "https://etherscan.io/"),
+//    ETH_MAIN("https://mainnet.infura.io/v3/", "1", "0xC02aaA39b223FE8D0A0e5C4F27eAD9083C756Cc2", "ETH", "https://etherscan.io/", true),
 
     /**
      * BSC主网
      */
-    BSC_MAIN("https://bsc-dataseed1.binance.org/", "56", "0xbb4cdb9cbd36b01bd1cbaebf2de08d9173bc095c", "BSC", "https://bscscan.com/"),
+    BSC_MAIN("https://bsc-dataseed1.binance.org/", "56", "0xbb4cdb9cbd36b01bd1cbaebf2de08d9173bc095c", "BSC", "https://bscscan.com/", false, "0xD152f549545093347A162Dce210e7293f1452150"),
 
     /**
      * BSC测试网
      */
-    BSC_TEST("https://data-seed-prebsc-1-s1.binance.org:8545/", "97", "0xae13d989daC2f0dEbFf460aC112a837C89BAa7cd", "BSCTest", "https://testnet.bscscan.com/"),
+    BSC_TEST("https://data-seed-prebsc-1-s1.binance.org:8545/", "97", "0xae13d989daC2f0dEbFf460aC112a837C89BAa7cd", "BSCTest", "https://testnet.bscscan.com/", false),
 
     /**
      * Polygon主网
      */
-    MATIC_MAIN("https://polygon-rpc.com/", "137", "0x0d500b1d8e8ef31e21c99d1db9a6444d3adf1270", "Polygon", "https://polygonscan.com/"),
+    MATIC_MAIN("https://polygon-rpc.com/", "137", "0x0d500b1d8e8ef31e21c99d1db9a6444d3adf1270", "Polygon", "https://polygonscan.com/", true, "0xD152f549545093347A162Dce210e7293f1452150"),
 
     /**
      * FTM主网
      */
-    FTM_MAIN("https://rpcapi.fantom.network", "250", "", "FTM", "https://ftmscan.com/"),
+    FTM_MAIN("https://rpcapi.fantom.network", "250", "", "FTM", "https://ftmscan.com/", false, "0xD152f549545093347A162Dce210e7293f1452150"),
 
     /**
      * Okex主网
      */
-    OEC_MAIN("https://exchainrpc.okex.org", "66", "0x8f8526dbfd6e38e3d8307702ca8469bae6c56c15", "oec", "https://www.oklink.com/okexchain/"),
+    OEC_MAIN("https://exchainrpc.okex.org", "66", "0x8f8526dbfd6e38e3d8307702ca8469bae6c56c15", "oec", "https://www.oklink.com/okexchain/", false),
 
     /**
      * AAAVE主网
      */
-    AAVE_MAIN("https://api.avax.network/ext/bc/C/rpc", "", "", "", ""),
+    AAVE_MAIN("https://api.avax.network/ext/bc/C/rpc", "", "", "", "", true, "0xD152f549545093347A162Dce210e7293f1452150"),
 
     /**
      * CELO主网
      */
-    CELO_MAIN("https://forno.celo.org", "", "", "", ""),
+    CELO_MAIN("https://forno.celo.org", "", "", "", "", false),
 
     /**
      * CRO主网
      */
-    CRO_MAIN("https://evm-cronos.crypto.org", "", "", "", ""),
-    DOGE_EVM("https://rpc02-sg.dogechain.dog/","2000","0xB7ddC6414bf4F5515b52D8BdD69973Ae205ff101","dogechain" ,"https://explorer.dogechain.dog");
+    CRO_MAIN("https://evm-cronos.crypto.org", "", "", "", "", false),
+    DOGE_EVM("https://rpc02-sg.dogechain.dog/","2000","0xB7ddC6414bf4F5515b52D8BdD69973Ae205ff101","dogechain" ,"https://explorer.dogechain.dog",false);
     /**
      * 节点链接
      */
@@ -70,13 +70,27 @@ public enum ChainInfo {
      * 网络浏览器地址
      */
     private final String chainBrowser;
+    /**
+     * 是否使用EIP-1559(type 2)交易
+     */
+    private final boolean eip1559;
+    /**
+     * Disperse合约的部署地址，没有部署为空
+     */
+    private final String disperseAddress;
+
+    ChainInfo(String nodeUrl, String chainId, String WETHAddress, String chainName, String chainBrowser, boolean eip1559) {
+        this(nodeUrl, chainId, WETHAddress, chainName, chainBrowser, eip1559, "");
+    }
 
-    ChainInfo(String nodeUrl, String chainId, String WETHAddress, String chainName, String chainBrowser) {
+    ChainInfo(String nodeUrl, String chainId, String WETHAddress, String chainName, String chainBrowser, boolean eip1559, String disperseAddress) {
         this.nodeUrl = nodeUrl;
         this.chainId = chainId;
         this.WETHAddress = WETHAddress;
         this.chainName = chainName;
         this.chainBrowser = chainBrowser;
+        this.eip1559 = eip1559;
+        this.disperseAddress = disperseAddress;
     }
 
     public ChainInfo getChainInfoByName(String name) {
@@ -1,5 +1,6 @@
 package com.oxthink.constant;
 
+import com.oxthink.web3.PairAddressUtil;
 import lombok.Getter;
 
 import java.util.ArrayList;
@@ -8,19 +9,23 @@ import java.util.List;
 @Getter
 public enum RouterInfo {
     // bsc
-    PANCAKE_BSC_MAIN("0x10ED43C718714eb63d5aA57B78B54704E256024E", "Pancake", ChainInfo.BSC_MAIN),
-    BISWAP_BSC_MAIN("0x3a6d8cA21D1CF76F653A67577FA0D27453350dD8", "Biswap", ChainInfo.BSC_MAIN),
+    PANCAKE_BSC_MAIN("0x10ED43C718714eb63d5aA57B78B54704E256024E", "Pancake", ChainInfo.BSC_MAIN,
+            "0xcA143Ce32Fe78f1f7019d7d551a6402fC5350c73", "0x00fb7f630766e6a796048ea87d01acd3068e8ff67d078148a3fa3f4a84f69bd5", 25, 10000, false),
+    BISWAP_BSC_MAIN("0x3a6d8cA21D1CF76F653A67577FA0D27453350dD8", "Biswap", ChainInfo.BSC_MAIN,
+            "0x858E3312ed3A876947EA49d572A7C42DE08af7EE", "0xfea293c909d87cd4153593f077b76bb7e94340200f4ee84211ae8e4f9bd7ffdf", 1, 1000, true),
 
     // oec
-    CHERRY_OEC_MAIN("0x865bfde337C8aFBffF144Ff4C29f9404EBb22b15", "Cherry", ChainInfo.OEC_MAIN),
-    JSWAP_OEC_MAIN("0x069A306A638ac9d3a68a6BD8BE898774C073DCb3", "Jswap", ChainInfo.OEC_MAIN),
+    CHERRY_OEC_MAIN("0x865bfde337C8aFBffF144Ff4C29f9404EBb22b15", "Cherry", ChainInfo.OEC_MAIN, "", "", 3, 1000, false),
+    JSWAP_OEC_MAIN("0x069A306A638ac9d3a68a6BD8BE898774C073DCb3", "Jswap", ChainInfo.OEC_MAIN, "", "", 3, 1000, false),
 
     // matic
-    QUICK_MATIC_MAIN("0xa5e0829caced8ffdd4de3c43696c57f7d7a678ff", "Quick", ChainInfo.MATIC_MAIN),
-    UNI_MATIC_MAIN("", "uni", ChainInfo.MATIC_MAIN),
+    QUICK_MATIC_MAIN("0xa5e0829caced8ffdd4de3c43696c57f7d7a678ff", "Quick", ChainInfo.MATIC_MAIN,
+            "0x5757371414417b8C6CAad45bAeF941aBc7d3Ab32", "0x96e8ac4277198ff8b6f785478aa9a39f403cb768dd02cbee326c3e7da348845f", 3, 1000, false),
+    UNI_MATIC_MAIN("0xE592427A0AEce92De3Edee1F18E0157C05861564", "uni", ChainInfo.MATIC_MAIN,
+            "0x1F98431c8aD98523631AE4a59f267346ea31F984", "0xe34f199b19b2b4f47f68442619d555527d244f78a3297ea89325f843f87b8b54", 3),
 
     // DOGE
-    DOGESWAP_DOGE_EVM("0xa4ee06ce40cb7e8c04e127c1f7d3dfb7f7039c81","DogeSwap",ChainInfo.DOGE_EVM);
+    DOGESWAP_DOGE_EVM("0xa4ee06ce40cb7e8c04e127c1f7d3dfb7f7039c81","DogeSwap",ChainInfo.DOGE_EVM, "", "", 3, 1000, false);
 
     /**
      * router地址
@@ -37,10 +42,92 @@ public enum RouterInfo {
      */
     private final ChainInfo chainInfo;
 
-    RouterInfo(String routerAddress, String routerName, ChainInfo chainInfo) {
+    /**
+     * pair工厂地址，为空时通过router的factory()查询
+     */
+    private final String factoryAddress;
+
+    /**
+     * pair合约的init code hash，用于本地计算pair地址，为空时通过工厂的getPair查询
+     */
+    private final String initCodeHash;
+
+    /**
+     * 兑换手续费，实际费率为 swapFee / feeBase
+     */
+    private final int swapFee;
+
+    /**
+     * 手续费的分母，与router合约getAmountOut中的计算方式一致
+     */
+    private final int feeBase;
+
+    /**
+     * 手续费是否由每个pair单独设置(pair合约的swapFee())，eg: Biswap
+     */
+    private final boolean pairSwapFee;
+
+    /**
+     * 协议版本，2: Uniswap V2的router，3: Uniswap V3的SwapRouter
+     */
+    private final int version;
+
+    RouterInfo(String routerAddress, String routerName, ChainInfo chainInfo, String factoryAddress, String initCodeHash,
+               int swapFee, int feeBase, boolean pairSwapFee) {
         this.chainInfo = chainInfo;
         this.routerAddress = routerAddress;
         this.routerName = routerName;
+        this.factoryAddress = factoryAddress;
+        this.initCodeHash = initCodeHash;
+        this.swapFee = swapFee;
+        this.feeBase = feeBase;
+        this.pairSwapFee = pairSwapFee;
+        this.version = 2;
+    }
+
+    RouterInfo(String routerAddress, String routerName, ChainInfo chainInfo, String factoryAddress, String initCodeHash, int version) {
+        this.chainInfo = chainInfo;
+        this.routerAddress = routerAddress;
+        this.routerName = routerName;
+        this.factoryAddress = factoryAddress;
+        this.initCodeHash = initCodeHash;
+        // V3的手续费由pool的手续费等级决定
+        this.swapFee = 0;
+        this.feeBase = 1000000;
+        this.pairSwapFee = false;
+        this.version = version;
+    }
+
+    /**
+     * 是否为Uniswap V3的router
+     *
+     * @return V3返回true
+     */
+    public boolean isV3() {
+        return version == 3;
+    }
+
+    /**
+     * 是否可以在本地计算pair地址
+     *
+     * @return V2的router配置了工厂地址和init code hash返回true
+     */
+    public boolean canComputePairAddress() {
+        return version == 2 && !factoryAddress.isEmpty() && !initCodeHash.isEmpty();
+    }
+
+    /**
+     * 在本地计算两种代币组成的pair地址
+     *
+     * @param tokenA 代币地址
+     * @param tokenB 代币地址
+     * @return pair地址，未配置工厂地址或init code hash时返回null
+     */
+    public String computePairAddress(String tokenA, String tokenB) {
+        if (!canComputePairAddress()) {
+            return null;
+        }
+        return PairAddressUtil.computePairAddress(factoryAddress, initCodeHash, tokenA, tokenB);
     }
 
     /**
@@ -0,0 +1,162 @@
+package com.oxthink.web3;
+
+import com.oxthink.constant.ChainInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.crypto.Credentials;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 批量账户池
+ * 私钥只在创建时并行解析一次，所有账户共用同一条链的节点连接，
+ * 每个账户对应一个只包含凭证的轻量Web3jUtil，关闭后释放所有账户
+ */
+@Slf4j
+public class AccountPool implements Closeable {
+
+    /**
+     * 提供节点连接的实例
+     */
+    private final Web3jUtil transport;
+
+    /**
+     * 账户对象，与私钥列表顺序一致
+     */
+    private final Web3jUtil[] accounts;
+
+    /**
+     * 账户地址，与私钥列表顺序一致
+     */
+    private final List<String> addresses;
+
+    private volatile boolean closed;
+
+    /**
+     * 使用链共用的节点连接创建账户池
+     *
+     * @param chainInfo      网络信息
+     * @param privateKeyList 批量账户私钥列表
+     */
+    public AccountPool(ChainInfo chainInfo, List<String> privateKeyList) {
+        this(Web3jUtil.of(chainInfo), privateKeyList);
+    }
+
+    /**
+     * 使用指定的节点连接创建账户池
+     *
+     * @param transport      提供节点连接的实例
+     * @param privateKeyList 批量账户私钥列表
+     */
+    public AccountPool(Web3jUtil transport, List<String> privateKeyList) {
+        this.transport = transport;
+        // 私钥解析需要椭圆曲线运算，并行执行
+        List<CompletableFuture<Credentials>> futures = new ArrayList<>();
+        for (String privateKey : privateKeyList) {
+            futures.add(Web3jUtil.supplyAsync(() -> Credentials.create(privateKey)));
+        }
+        this.accounts = new Web3jUtil[privateKeyList.size()];
+        String[] addressArray = new String[privateKeyList.size()];
+        for (int i = 0; i < futures.size(); i++) {
+            accounts[i] = new Web3jUtil(transport, futures.get(i).join());
+            addressArray[i] = accounts[i].getOwnerAddress();
+        }
+        this.addresses = Collections.unmodifiableList(Arrays.asList(addressArray));
+        log.info(String.format("账户池已创建, 账户数: %d", accounts.length));
+    }
+
+    /**
+     * 账户数量
+     *
+     * @return 账户数量
+     */
+    public int size() {
+        return accounts.length;
+    }
+
+    /**
+     * 获取某个账户
+     *
+     * @param index 账户序号，与私钥列表顺序一致
+     * @return 与其他账户共用节点连接的web3对象
+     */
+    public Web3jUtil get(int index) {
+        checkOpen();
+        return accounts[index];
+    }
+
+    /**
+     * 获取所有账户
+     *
+     * @return 与私钥列表顺序一致的web3对象
+     */
+    public List<Web3jUtil> getAccounts() {
+        checkOpen();
+        return Collections.unmodifiableList(Arrays.asList(accounts));
+    }
+
+    /**
+     * 获取某个账户的地址，不再解析私钥
+     *
+     * @param index 账户序号
+     * @return 账户地址
+     */
+    public String getAddress(int index) {
+        return addresses.get(index);
+    }
+
+    /**
+     * 获取所有账户的地址
+     *
+     * @return 与私钥列表顺序一致的地址
+     */
+    public List<String> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * 获取提供节点连接的实例
+     *
+     * @return 只读实例
+     */
+    public Web3jUtil getTransport() {
+        return transport;
+    }
+
+    /**
+     * 设置所有账户的gasPrice范围
+     *
+     * @param minGwei 最小gasPrice 单位：Gwei
+     * @param maxGwei 最大gasPrice 单位：Gwei
+     */
+    public void setGasPriceLimit(String minGwei, String maxGwei) {
+        checkOpen();
+        for (Web3jUtil account : accounts) {
+            account.setGasPriceLimit(minGwei, maxGwei);
+        }
+    }
+
+    /**
+     * 关闭账户池，释放所有账户的凭证
+     * nonce管理器按节点和地址共用，其他实例可能仍在使用同一账户，不移除；节点连接由链上的其他实例共用，不关闭
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Arrays.fill(accounts, null);
+        log.info("账户池已关闭");
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("账户池已关闭");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.oxthink.web3;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量账户操作的执行报告
+ * 按账户顺序记录每个账户的执行结果、耗时和失败原因
+ */
+public class BatchReport {
+
+    /**
+     * 每个账户的执行结果，与账户列表顺序一致
+     */
+    private final AccountResult[] results;
+
+    /**
+     * 开始时间 单位:ms
+     */
+    @Getter
+    private final long startTime;
+
+    /**
+     * 总耗时 单位:ms
+     */
+    @Getter
+    private long totalMillis;
+
+    BatchReport(int size) {
+        this.results = new AccountResult[size];
+        this.startTime = System.currentTimeMillis();
+    }
+
+    void set(int index, AccountResult result) {
+        results[index] = result;
+    }
+
+    void finish() {
+        totalMillis = System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * 获取所有账户的执行结果
+     *
+     * @return 执行结果，未执行的账户为null
+     */
+    public List<AccountResult> getResults() {
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * 获取执行失败的账户
+     *
+     * @return 失败的执行结果
+     */
+    public List<AccountResult> getFailures() {
+        List<AccountResult> failures = new ArrayList<>();
+        for (AccountResult result : results) {
+            if (result != null && !result.isSuccess()) {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * 获取执行成功的账户数量
+     *
+     * @return 成功数量
+     */
+    public int getSuccessCount() {
+        int count = 0;
+        for (AccountResult result : results) {
+            if (result != null && result.isSuccess()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 获取执行失败的账户数量
+     *
+     * @return 失败数量
+     */
+    public int getFailureCount() {
+        return getFailures().size();
+    }
+
+    /**
+     * 是否所有账户都执行成功
+     *
+     * @return 全部成功返回true
+     */
+    public boolean isAllSuccess() {
+        return getSuccessCount() == results.length;
+    }
+
+    @Override
+    public String toString() {
+        long maxMillis = 0;
+        long sumMillis = 0;
+        int count = 0;
+        for (AccountResult result : results) {
+            if (result != null) {
+                maxMillis = Math.max(maxMillis, result.getElapsedMillis());
+                sumMillis += result.getElapsedMillis();
+                count++;
+            }
+        }
+        return String.format("账户数: %d 成功: %d 失败: %d 总耗时: %dms 单账户平均耗时: %dms 最大耗时: %dms",
+                results.length, getSuccessCount(), getFailureCount(), totalMillis, count == 0 ? 0 : sumMillis / count, maxMillis);
+    }
+
+    /**
+     * 单个账户的执行结果
+     */
+    @Getter
+    public static class AccountResult {
+
+        /**
+         * 账户地址
+         */
+        private final String address;
+
+        /**
+         * 是否执行成功
+         */
+        private final boolean success;
+
+        /**
+         * 交易hash，没有发送交易时为空
+         */
+        private final String hash;
+
+        /**
+         * 失败原因
+         */
+        private final Throwable error;
+
+        /**
+         * 开始时间 单位:ms
+         */
+        private final long startTime;
+
+        /**
+         * 耗时 单位:ms
+         */
+        private final long elapsedMillis;
+
+        AccountResult(String address, boolean success, String hash, Throwable error, long startTime) {
+            this.address = address;
+            this.success = success;
+            this.hash = hash;
+            this.error = error;
+            this.startTime = startTime;
+            this.elapsedMillis = System.currentTimeMillis() - startTime;
+        }
+
+        static AccountResult success(String address, String hash, long startTime) {
+            return new AccountResult(address, true, hash, null, startTime);
+        }
+
+        static AccountResult failure(String address, String hash, Throwable error, long startTime) {
+            return new AccountResult(address, false, hash, error, startTime);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %dms%s%s", address, success ? "成功" : "失败", elapsedMillis,
+                    hash == null ? "" : " 交易hash: " + hash, error == null ? "" : " 原因: " + error.getMessage());
+        }
+    }
+}
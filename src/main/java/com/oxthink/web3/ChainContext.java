@@ -0,0 +1,218 @@
+package com.oxthink.web3;
+
+import com.oxthink.constant.ChainInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.EthChainId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 链上不会变化的网络信息缓存：chainId、WETH地址、router对应的工厂地址
+ * 同一节点上的所有Web3jUtil共用一份，第一次使用时解析，之后不再与节点交互
+ */
+@Slf4j
+public class ChainContext {
+
+    /**
+     * 所有节点的网络信息 key: 节点链接
+     */
+    private static final Map<String, ChainContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    /**
+     * provide对象
+     */
+    private final Web3j web3;
+
+    /**
+     * 关联的网络信息，通过RPC链接创建时可能为空
+     */
+    private volatile ChainInfo chainInfo;
+
+    /**
+     * 网络id
+     */
+    private volatile Long chainId;
+
+    /**
+     * router地址(小写) -> 工厂地址
+     */
+    private final Map<String, String> factoryAddress = new ConcurrentHashMap<>();
+
+    public ChainContext(Web3j web3, ChainInfo chainInfo) {
+        this.web3 = web3;
+        this.chainInfo = chainInfo;
+        initFromChainInfo();
+    }
+
+    /**
+     * 获取某个节点的网络信息，同一节点共用一份
+     *
+     * @param nodeUrl   节点链接
+     * @param web3      provide对象
+     * @param chainInfo 网络信息，可以为空
+     * @return 网络信息缓存
+     */
+    public static ChainContext of(String nodeUrl, Web3j web3, ChainInfo chainInfo) {
+        ChainContext context = CONTEXTS.computeIfAbsent(nodeUrl, k -> new ChainContext(web3, chainInfo));
+        if (context.chainInfo == null && chainInfo != null) {
+            context.chainInfo = chainInfo;
+            context.initFromChainInfo();
+        }
+        return context;
+    }
+
+    /**
+     * 获取网络id，ChainInfo中已配置时不与节点交互
+     *
+     * @return 网络id
+     * @throws IOException 与节点交互失败
+     */
+    public long getChainId() throws IOException {
+        Long id = chainId;
+        if (id != null) {
+            return id;
+        }
+        EthChainId response = web3.ethChainId().send();
+        if (response.hasError()) {
+            throw new IOException("error: " + response.getError().getMessage());
+        }
+        setChainId(response.getChainId().longValue());
+        return chainId;
+    }
+
+    /**
+     * 网络id是否已经解析
+     *
+     * @return 已解析返回true
+     */
+    public boolean isChainIdResolved() {
+        return chainId != null;
+    }
+
+    /**
+     * 设置从节点查询到的网络id，并根据网络id补全ChainInfo
+     *
+     * @param chainId 网络id
+     */
+    public void setChainId(long chainId) {
+        this.chainId = chainId;
+        if (chainInfo == null) {
+            for (ChainInfo info : ChainInfo.values()) {
+                if (String.valueOf(chainId).equals(info.getChainId())) {
+                    chainInfo = info;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取网络的WETH地址
+     *
+     * @return WETH地址，未知网络返回null
+     * @throws IOException 与节点交互失败
+     */
+    public String getWETHAddress() throws IOException {
+        if (chainInfo == null) {
+            getChainId();
+        }
+        return chainInfo == null ? null : chainInfo.getWETHAddress();
+    }
+
+    /**
+     * 获取关联的网络信息
+     *
+     * @return ChainInfo枚举类，未知网络返回null
+     */
+    public ChainInfo getChainInfo() {
+        return chainInfo;
+    }
+
+    /**
+     * 获取router的LP pair工厂地址，每个router只查询一次
+     *
+     * @param routerAddress router地址
+     * @return 工厂地址
+     * @throws IOException 与节点交互失败
+     */
+    public String getFactoryAddress(String routerAddress) throws IOException {
+        String key = routerAddress.toLowerCase();
+        String factory = factoryAddress.get(key);
+        if (factory != null) {
+            return factory;
+        }
+        factory = readAddress(routerAddress, "factory");
+        factoryAddress.put(key, factory);
+        return factory;
+    }
+
+    /**
+     * 手动指定router的工厂地址，之后不再查询
+     *
+     * @param routerAddress router地址
+     * @param factory       工厂地址
+     */
+    public void putFactoryAddress(String routerAddress, String factory) {
+        factoryAddress.put(routerAddress.toLowerCase(), factory);
+    }
+
+    /**
+     * 清空缓存，下次使用时重新解析
+     */
+    public void refresh() {
+        chainId = null;
+        factoryAddress.clear();
+        initFromChainInfo();
+        log.info("网络信息缓存已刷新");
+    }
+
+    /**
+     * 使用ChainInfo中配置的网络id
+     */
+    private void initFromChainInfo() {
+        if (chainInfo != null && chainId == null && !chainInfo.getChainId().isEmpty()) {
+            chainId = Long.parseLong(chainInfo.getChainId());
+        }
+    }
+
+    /**
+     * 读取合约中无参数、返回地址的函数
+     *
+     * @param contractAddress 合约地址
+     * @param functionName    函数名称
+     * @return 地址
+     * @throws IOException 与节点交互失败
+     */
+    private String readAddress(String contractAddress, String functionName) throws IOException {
+        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+        });
+        Function function = new Function(functionName, new ArrayList<>(), output);
+        EthCall response = web3.ethCall(
+                        Transaction.createEthCallTransaction(null, contractAddress, FunctionEncoder.encode(function)),
+                        DefaultBlockParameterName.LATEST)
+                .send();
+        if (response.hasError()) {
+            throw new IOException("error: " + response.getError().getMessage());
+        }
+        List<Type> result = FunctionReturnDecoder.decode(response.getValue(), function.getOutputParameters());
+        if (result.isEmpty()) {
+            throw new IOException(String.format("%s.%s() 返回为空", contractAddress, functionName));
+        }
+        return ((Address) result.get(0)).getValue();
+    }
+}
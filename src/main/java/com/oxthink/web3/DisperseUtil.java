@@ -0,0 +1,447 @@
+package com.oxthink.web3;
+
+import com.oxthink.constant.ChainInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthEstimateGas;
+import org.web3j.protocol.core.methods.response.EthGetCode;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.utils.Convert;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 通过Disperse合约批量转账主网币和代币
+ * 多个(接收地址, 数量)合并为disperseEther/disperseToken调用，按估算的gas分块，
+ * 所有分块的gas估算合并为一次JSON-RPC批量请求，分块依次广播后统一等待确认
+ * 估算或执行失败的接收地址改为单独转账，当前链没有部署Disperse合约时全部单独转账
+ */
+@Slf4j
+public class DisperseUtil {
+
+    private final Web3jUtil web3;
+
+    /**
+     * Disperse合约地址，默认取自网络信息
+     */
+    private String disperseAddress;
+
+    /**
+     * Disperse合约地址上是否有代码，首次使用时查询
+     */
+    private Boolean deployed;
+
+    /**
+     * 每笔交易的gas上限，超过时继续拆分
+     */
+    private long maxGasPerTx = 8_000_000L;
+
+    /**
+     * 预估每个接收地址消耗的gas，用于计算初始分块大小
+     */
+    private long gasPerRecipient = 35_000L;
+
+    /**
+     * 等待交易确认的最大时间 单位:ms
+     */
+    private long waitTime = 60000;
+
+    public DisperseUtil(Web3jUtil web3) {
+        this.web3 = web3;
+        ChainInfo chainInfo = web3.getChainInfo();
+        this.disperseAddress = chainInfo != null ? chainInfo.getDisperseAddress() : "";
+    }
+
+    /**
+     * 设置Disperse合约地址，网络信息中没有配置或使用其它部署时设置
+     *
+     * @param disperseAddress 合约地址
+     */
+    public void setDisperseAddress(String disperseAddress) {
+        this.disperseAddress = disperseAddress;
+        this.deployed = null;
+    }
+
+    /**
+     * 设置分块参数，初始每块的接收地址数量为 maxGasPerTx / gasPerRecipient
+     *
+     * @param maxGasPerTx     每笔交易的gas上限
+     * @param gasPerRecipient 预估每个接收地址消耗的gas
+     */
+    public void setGasLimit(long maxGasPerTx, long gasPerRecipient) {
+        this.maxGasPerTx = maxGasPerTx;
+        this.gasPerRecipient = gasPerRecipient;
+    }
+
+    /**
+     * 设置等待交易确认的最大时间
+     *
+     * @param waitTime 最大等待时间 单位:ms
+     */
+    public void setWaitTime(long waitTime) {
+        this.waitTime = waitTime;
+    }
+
+    /**
+     * 向多个地址发送相同数量的主网币
+     *
+     * @param recipients 接收地址
+     * @param amount     每个地址的数量 单位：ether
+     * @return 执行报告，与接收地址顺序一致
+     * @throws Exception 余额不足或与节点交互失败
+     */
+    public BatchReport disperseEther(List<String> recipients, String amount) throws Exception {
+        BigInteger value = Convert.toWei(amount, Convert.Unit.ETHER).toBigInteger();
+        return disperseEther(recipients, Collections.nCopies(recipients.size(), value));
+    }
+
+    /**
+     * 批量发送主网币
+     *
+     * @param recipients 接收地址
+     * @param amounts    每个地址的数量 单位：wei
+     * @return 执行报告，与接收地址顺序一致
+     * @throws Exception 余额不足或与节点交互失败
+     */
+    public BatchReport disperseEther(List<String> recipients, List<BigInteger> amounts) throws Exception {
+        BigInteger total = sum(recipients, amounts);
+        BigInteger balance = Convert.toWei(web3.getBalance(), Convert.Unit.ETHER).toBigInteger();
+        if (total.compareTo(balance) > 0) {
+            throw new Exception(String.format("需发送 %s ether,账户余额不足!", fromWei(total)));
+        }
+        if (!isDeployed()) {
+            return sendAll(null, recipients, amounts);
+        }
+        return disperse(null, recipients, amounts);
+    }
+
+    /**
+     * 批量发送代币，授权额度不足时先向Disperse合约授权本次发送的总数量
+     *
+     * @param tokenAddress 代币地址
+     * @param recipients   接收地址
+     * @param amounts      每个地址的数量 单位：wei
+     * @return 执行报告，与接收地址顺序一致
+     * @throws Exception 余额不足、授权失败或与节点交互失败
+     */
+    public BatchReport disperseToken(String tokenAddress, List<String> recipients, List<BigInteger> amounts) throws Exception {
+        BigInteger total = sum(recipients, amounts);
+        BigInteger balance = readUint(tokenAddress, "balanceOf", Collections.singletonList(new Address(web3.getOwnerAddress())));
+        if (total.compareTo(balance) > 0) {
+            throw new Exception(String.format("需发送 %s 代币,账户余额不足!", total));
+        }
+        if (!isDeployed()) {
+            return sendAll(tokenAddress, recipients, amounts);
+        }
+        BigInteger allowance = readUint(tokenAddress, "allowance",
+                Arrays.asList(new Address(web3.getOwnerAddress()), new Address(disperseAddress)));
+        if (allowance.compareTo(total) < 0) {
+            String hash = web3.approve(tokenAddress, disperseAddress, total.toString());
+            TransactionReceipt receipt = web3.getReceiptWatcher().watch(hash, waitTime).get();
+            if (!"0x1".equals(receipt.getStatus())) {
+                throw new Exception("error: 授权失败, 交易hash: " + hash);
+            }
+        }
+        return disperse(tokenAddress, recipients, amounts);
+    }
+
+    /**
+     * 分块、依次广播、统一等待，失败的接收地址改为单独转账
+     *
+     * @param tokenAddress 代币地址，主网币为空
+     */
+    private BatchReport disperse(String tokenAddress, List<String> recipients, List<BigInteger> amounts) {
+        BatchReport report = new BatchReport(recipients.size());
+        List<Integer> single = new ArrayList<>();
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<BigInteger> chunkGas = new ArrayList<>();
+        plan(tokenAddress, recipients, amounts, chunks, chunkGas, single);
+        log.info(String.format("批量转账: %d个地址, 分为%d笔交易, %d个地址单独转账", recipients.size(), chunks.size(), single.size()));
+
+        long startTime = System.currentTimeMillis();
+        ReceiptWatcher watcher = web3.getReceiptWatcher();
+        Map<String, List<Integer>> sent = new LinkedHashMap<>();
+        Map<String, CompletableFuture<TransactionReceipt>> futures = new LinkedHashMap<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            List<Integer> chunk = chunks.get(i);
+            Function function = function(tokenAddress, chunk, recipients, amounts);
+            String data = FunctionEncoder.encode(function);
+            // 使用分块时的估算值，发送时不再估算
+            web3.getGasLimitCache().putEstimate(GasLimitCache.key(disperseAddress, data, function.getInputParameters()), chunkGas.get(i));
+            try {
+                String value = tokenAddress == null ? fromWei(total(chunk, amounts)) : "0";
+                String hash = web3.writeContract(disperseAddress, function.getName(), value, function.getInputParameters(), Collections.emptyList());
+                sent.put(hash, chunk);
+                futures.put(hash, watcher.watch(hash, waitTime));
+            } catch (UnknownBroadcastException e) {
+                // 节点可能已收到该分块，按已发送等待回执，超时后再确认是否需要单独转账
+                log.info("批量转账发送结果未知, 等待回执: " + e.getHash());
+                sent.put(e.getHash(), chunk);
+                futures.put(e.getHash(), watcher.watch(e.getHash(), waitTime));
+            } catch (Exception e) {
+                // 节点明确拒绝或确认未收到交易
+                log.info(String.format("批量转账发送失败, 改为单独转账: %s", e.getMessage()));
+                single.addAll(chunk);
+            }
+        }
+        // 所有分块一起等待确认
+        List<String> timeout = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<TransactionReceipt>> entry : futures.entrySet()) {
+            String hash = entry.getKey();
+            try {
+                TransactionReceipt receipt = entry.getValue().get();
+                if ("0x1".equals(receipt.getStatus())) {
+                    for (int index : sent.get(hash)) {
+                        report.set(index, BatchReport.AccountResult.success(recipients.get(index), hash, startTime));
+                    }
+                } else {
+                    log.info("批量转账执行失败, 改为单独转账, 交易hash: " + hash);
+                    single.addAll(sent.get(hash));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(report, sent.get(hash), recipients, hash, e, startTime);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    timeout.add(hash);
+                }
+                fail(report, sent.get(hash), recipients, hash, e.getCause(), startTime);
+            }
+        }
+        // 超时的交易仍在交易池中时不重发，避免重复转账
+        List<String> dropped = watcher.getDropped(timeout);
+        for (String hash : timeout) {
+            if (dropped.contains(hash)) {
+                single.addAll(sent.get(hash));
+            } else {
+                log.info("批量转账仍在等待打包，不重发: " + hash);
+            }
+        }
+        if (!dropped.isEmpty()) {
+            // 被丢弃的交易留下nonce空洞，单独转账前与链上同步
+            web3.getNonceManager().resync();
+        }
+        sendEach(tokenAddress, single, recipients, amounts, report);
+        report.finish();
+        log.info("批量转账完成, " + report);
+        return report;
+    }
+
+    /**
+     * Disperse合约地址上是否有代码，没有配置地址或没有代码时全部单独转账
+     */
+    private boolean isDeployed() throws IOException {
+        if (deployed == null) {
+            if (disperseAddress == null || disperseAddress.isEmpty()) {
+                deployed = false;
+            } else {
+                EthGetCode code = web3.getWeb3().ethGetCode(disperseAddress, DefaultBlockParameterName.LATEST).send();
+                if (code.hasError()) {
+                    throw new IOException("error: " + code.getError().getMessage());
+                }
+                String value = code.getCode();
+                deployed = value != null && !value.isEmpty() && !"0x".equals(value);
+            }
+            if (!deployed) {
+                log.warn(String.format("Disperse合约地址%s上没有代码, 改为单独转账", disperseAddress));
+            }
+        }
+        return deployed;
+    }
+
+    /**
+     * 不使用Disperse合约，全部单独转账
+     */
+    private BatchReport sendAll(String tokenAddress, List<String> recipients, List<BigInteger> amounts) {
+        BatchReport report = new BatchReport(recipients.size());
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < recipients.size(); i++) {
+            indexes.add(i);
+        }
+        sendEach(tokenAddress, indexes, recipients, amounts, report);
+        report.finish();
+        log.info("单独转账完成, " + report);
+        return report;
+    }
+
+    /**
+     * 按估算的gas分块，估算失败或超过上限的分块对半拆分后重新估算
+     * 每一轮的所有估算合并为一次批量请求，单个地址仍然估算失败时改为单独转账
+     */
+    private void plan(String tokenAddress, List<String> recipients, List<BigInteger> amounts,
+                      List<List<Integer>> chunks, List<BigInteger> chunkGas, List<Integer> single) {
+        int size = (int) Math.max(1, maxGasPerTx / gasPerRecipient);
+        List<List<Integer>> pending = new ArrayList<>();
+        for (int from = 0; from < recipients.size(); from += size) {
+            List<Integer> chunk = new ArrayList<>();
+            for (int i = from; i < Math.min(from + size, recipients.size()); i++) {
+                chunk.add(i);
+            }
+            pending.add(chunk);
+        }
+        BigInteger maxGas = BigInteger.valueOf(maxGasPerTx);
+        while (!pending.isEmpty()) {
+            List<BigInteger> estimates = estimate(tokenAddress, pending, recipients, amounts);
+            List<List<Integer>> next = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                List<Integer> chunk = pending.get(i);
+                BigInteger estimate = estimates.get(i);
+                if (estimate != null && estimate.compareTo(maxGas) <= 0) {
+                    chunks.add(chunk);
+                    chunkGas.add(estimate);
+                } else if (chunk.size() == 1) {
+                    single.addAll(chunk);
+                } else {
+                    int mid = chunk.size() / 2;
+                    next.add(chunk.subList(0, mid));
+                    next.add(chunk.subList(mid, chunk.size()));
+                }
+            }
+            pending = next;
+        }
+    }
+
+    /**
+     * 一次批量请求估算所有分块的gas
+     *
+     * @return 与分块顺序一致的估算值，估算失败为null
+     */
+    private List<BigInteger> estimate(String tokenAddress, List<List<Integer>> chunks, List<String> recipients, List<BigInteger> amounts) {
+        List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+        for (List<Integer> chunk : chunks) {
+            String data = FunctionEncoder.encode(function(tokenAddress, chunk, recipients, amounts));
+            BigInteger value = tokenAddress == null ? total(chunk, amounts) : BigInteger.ZERO;
+            requests.add(web3.getWeb3().ethEstimateGas(
+                    Transaction.createFunctionCallTransaction(web3.getOwnerAddress(), null, null, null, disperseAddress, value, data)));
+        }
+        List<BigInteger> estimates = new ArrayList<>(Collections.nCopies(chunks.size(), null));
+        try {
+            List<Response<?>> responses = web3.sendBatch(requests);
+            for (int i = 0; i < chunks.size(); i++) {
+                EthEstimateGas response = (EthEstimateGas) responses.get(i);
+                if (!response.hasError()) {
+                    estimates.set(i, response.getAmountUsed());
+                }
+            }
+        } catch (IOException e) {
+            log.info("估算批量转账gas失败: " + e.getMessage());
+        }
+        return estimates;
+    }
+
+    /**
+     * 单独转账，依次广播后统一等待
+     */
+    private void sendEach(String tokenAddress, List<Integer> indexes, List<String> recipients, List<BigInteger> amounts, BatchReport report) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        Map<Integer, String> hashes = new LinkedHashMap<>();
+        Map<Integer, CompletableFuture<TransactionReceipt>> futures = new LinkedHashMap<>();
+        for (int index : indexes) {
+            try {
+                String hash = tokenAddress == null
+                        ? web3.sendEther(recipients.get(index), fromWei(amounts.get(index)))
+                        : web3.transfer(tokenAddress, recipients.get(index), amounts.get(index).toString());
+                hashes.put(index, hash);
+                futures.put(index, web3.getReceiptWatcher().watch(hash, waitTime));
+            } catch (UnknownBroadcastException e) {
+                log.info(String.format("向%s转账结果未知, 等待回执: %s", recipients.get(index), e.getHash()));
+                hashes.put(index, e.getHash());
+                futures.put(index, web3.getReceiptWatcher().watch(e.getHash(), waitTime));
+            } catch (Exception e) {
+                log.info(String.format("向%s转账失败: %s", recipients.get(index), e.getMessage()));
+                report.set(index, BatchReport.AccountResult.failure(recipients.get(index), null, e, startTime));
+            }
+        }
+        for (Map.Entry<Integer, CompletableFuture<TransactionReceipt>> entry : futures.entrySet()) {
+            int index = entry.getKey();
+            String hash = hashes.get(index);
+            try {
+                TransactionReceipt receipt = entry.getValue().get();
+                if ("0x1".equals(receipt.getStatus())) {
+                    report.set(index, BatchReport.AccountResult.success(recipients.get(index), hash, startTime));
+                } else {
+                    report.set(index, BatchReport.AccountResult.failure(recipients.get(index), hash, new Exception("error: 交易执行失败"), startTime));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                report.set(index, BatchReport.AccountResult.failure(recipients.get(index), hash, e, startTime));
+            } catch (ExecutionException e) {
+                report.set(index, BatchReport.AccountResult.failure(recipients.get(index), hash, e.getCause(), startTime));
+            }
+        }
+    }
+
+    private Function function(String tokenAddress, List<Integer> chunk, List<String> recipients, List<BigInteger> amounts) {
+        List<Address> addresses = new ArrayList<>();
+        List<Uint256> values = new ArrayList<>();
+        for (int index : chunk) {
+            addresses.add(new Address(recipients.get(index)));
+            values.add(new Uint256(amounts.get(index)));
+        }
+        DynamicArray<Address> recipientArray = new DynamicArray<>(Address.class, addresses);
+        DynamicArray<Uint256> valueArray = new DynamicArray<>(Uint256.class, values);
+        if (tokenAddress == null) {
+            return new Function("disperseEther", Arrays.<Type>asList(recipientArray, valueArray), Collections.emptyList());
+        }
+        return new Function("disperseToken", Arrays.<Type>asList(new Address(tokenAddress), recipientArray, valueArray), Collections.emptyList());
+    }
+
+    private BigInteger readUint(String contractAddress, String functionName, List<Type> input) throws Exception {
+        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Uint256>() {
+        });
+        return ((Uint256) web3.readContract(contractAddress, functionName, input, output).get(0)).getValue();
+    }
+
+    private static void fail(BatchReport report, List<Integer> indexes, List<String> recipients, String hash, Throwable error, long startTime) {
+        for (int index : indexes) {
+            report.set(index, BatchReport.AccountResult.failure(recipients.get(index), hash, error, startTime));
+        }
+    }
+
+    private static BigInteger sum(List<String> recipients, List<BigInteger> amounts) {
+        if (recipients.size() != amounts.size()) {
+            throw new IllegalArgumentException("接收地址与数量的个数不一致");
+        }
+        BigInteger total = BigInteger.ZERO;
+        for (BigInteger amount : amounts) {
+            total = total.add(amount);
+        }
+        return total;
+    }
+
+    private static BigInteger total(List<Integer> chunk, List<BigInteger> amounts) {
+        BigInteger total = BigInteger.ZERO;
+        for (int index : chunk) {
+            total = total.add(amounts.get(index));
+        }
+        return total;
+    }
+
+    private static String fromWei(BigInteger amount) {
+        return Convert.fromWei(new BigDecimal(amount), Convert.Unit.ETHER).toPlainString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.oxthink.web3;
+
+import lombok.Getter;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.Sign;
+import org.web3j.rlp.RlpEncoder;
+import org.web3j.rlp.RlpList;
+import org.web3j.rlp.RlpString;
+import org.web3j.rlp.RlpType;
+import org.web3j.utils.Bytes;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EIP-1559(type 2)交易
+ * 编码格式: 0x02 || rlp([chainId, nonce, maxPriorityFeePerGas, maxFeePerGas, gasLimit, to, value, data, accessList, yParity, r, s])
+ */
+@Getter
+public class Eip1559Transaction {
+
+    /**
+     * 交易类型
+     */
+    private static final byte TRANSACTION_TYPE = 0x02;
+
+    private final long chainId;
+
+    private final BigInteger nonce;
+
+    private final BigInteger maxPriorityFeePerGas;
+
+    private final BigInteger maxFeePerGas;
+
+    private final BigInteger gasLimit;
+
+    private final String to;
+
+    private final BigInteger value;
+
+    private final String data;
+
+    public Eip1559Transaction(long chainId, BigInteger nonce, BigInteger maxPriorityFeePerGas, BigInteger maxFeePerGas,
+                              BigInteger gasLimit, String to, BigInteger value, String data) {
+        this.chainId = chainId;
+        this.nonce = nonce;
+        this.maxPriorityFeePerGas = maxPriorityFeePerGas;
+        this.maxFeePerGas = maxFeePerGas;
+        this.gasLimit = gasLimit;
+        this.to = to;
+        this.value = value;
+        this.data = data;
+    }
+
+    /**
+     * 签名交易
+     *
+     * @param credentials 凭证对象
+     * @return 可以直接广播的签名数据
+     */
+    public byte[] sign(Credentials credentials) {
+        byte[] hash = Hash.sha3(encode(null));
+        Sign.SignatureData signature = Sign.signMessage(hash, credentials.getEcKeyPair(), false);
+        return encode(signature);
+    }
+
+    /**
+     * 编码交易，签名为空时得到待签名的数据
+     *
+     * @param signature 签名
+     * @return 编码后的交易
+     */
+    private byte[] encode(Sign.SignatureData signature) {
+        List<RlpType> values = new ArrayList<>();
+        values.add(RlpString.create(chainId));
+        values.add(RlpString.create(nonce));
+        values.add(RlpString.create(maxPriorityFeePerGas));
+        values.add(RlpString.create(maxFeePerGas));
+        values.add(RlpString.create(gasLimit));
+        values.add(to == null || to.isEmpty() ? RlpString.create(new byte[0]) : RlpString.create(Numeric.hexStringToByteArray(to)));
+        values.add(RlpString.create(value));
+        values.add(RlpString.create(data == null ? new byte[0] : Numeric.hexStringToByteArray(data)));
+        // 不使用accessList
+        values.add(new RlpList());
+        if (signature != null) {
+            // v为27或28，转换为yParity
+            values.add(RlpString.create(Numeric.toBigInt(signature.getV()).subtract(BigInteger.valueOf(27))));
+            values.add(RlpString.create(Bytes.trimLeadingZeroes(signature.getR())));
+            values.add(RlpString.create(Bytes.trimLeadingZeroes(signature.getS())));
+        }
+        byte[] rlp = RlpEncoder.encode(new RlpList(values));
+        byte[] encoded = new byte[rlp.length + 1];
+        encoded[0] = TRANSACTION_TYPE;
+        System.arraycopy(rlp, 0, encoded, 1, rlp.length);
+        return encoded;
+    }
+}
@@ -0,0 +1,201 @@
+package com.oxthink.web3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * gasLimit缓存
+ * 以(合约地址, 函数选择器, 路径长度)为key，记录估算值和交易回执中实际消耗的gas，
+ * 重复的操作直接使用缓存的gasLimit，不再调用eth_estimateGas
+ * 缓存的gasLimit导致gas不足失败时，删除该key，下次重新估算
+ */
+@Slf4j
+public class GasLimitCache {
+
+    /**
+     * 所有节点的gasLimit缓存 key: 节点链接
+     */
+    private static final Map<String, GasLimitCache> CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * 缓存的最大数量，超过后清空
+     */
+    private static final int MAX_SIZE = 10000;
+
+    /**
+     * key -> 观察到的最大gas用量
+     */
+    private final Map<String, BigInteger> gasUsed = new ConcurrentHashMap<>();
+
+    /**
+     * 已发送但还未看到回执的交易 hash -> 交易信息
+     */
+    private final Map<String, PendingTransaction> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 安全余量，默认在观察值的基础上增加20%
+     */
+    private volatile BigDecimal margin = new BigDecimal("0.2");
+
+    /**
+     * 获取某个节点的gasLimit缓存，同一节点共用一个
+     *
+     * @param nodeUrl 节点链接
+     * @return gasLimit缓存
+     */
+    public static GasLimitCache of(String nodeUrl) {
+        return CACHES.computeIfAbsent(nodeUrl, k -> new GasLimitCache());
+    }
+
+    /**
+     * 生成缓存的key
+     *
+     * @param to    交互合约地址
+     * @param data  交互数据
+     * @param input 函数的输入参数，可以为空
+     * @return 缓存的key
+     */
+    public static String key(String to, String data, List<Type> input) {
+        String selector = data != null && data.length() >= 10 ? data.substring(0, 10) : "0x";
+        int pathLength = 0;
+        if (input != null) {
+            for (Type type : input) {
+                if (type instanceof DynamicArray) {
+                    pathLength = ((DynamicArray<?>) type).getValue().size();
+                    break;
+                }
+            }
+        }
+        return to.toLowerCase() + ":" + selector + ":" + pathLength;
+    }
+
+    /**
+     * 设置安全余量
+     *
+     * @param margin 在观察值的基础上增加的比例 eg: 0.2
+     */
+    public void setMargin(String margin) {
+        this.margin = new BigDecimal(margin);
+    }
+
+    /**
+     * 获取缓存的gasLimit
+     *
+     * @param key 缓存的key
+     * @return 加上安全余量的gasLimit，没有缓存返回null
+     */
+    public BigInteger get(String key) {
+        BigInteger used = gasUsed.get(key);
+        if (used == null) {
+            return null;
+        }
+        return new BigDecimal(used).multiply(BigDecimal.ONE.add(margin)).toBigInteger();
+    }
+
+    /**
+     * 获取某个合约上路径长度相同的操作观察到的gas用量，不区分函数，用于估算兑换的gas成本
+     *
+     * @param to         交互合约地址
+     * @param pathLength 路径长度
+     * @return 观察到的最大gas用量，没有记录返回null
+     */
+    public BigInteger getUsed(String to, int pathLength) {
+        String prefix = to.toLowerCase() + ":";
+        String suffix = ":" + pathLength;
+        BigInteger result = null;
+        for (Map.Entry<String, BigInteger> entry : gasUsed.entrySet()) {
+            if (entry.getKey().startsWith(prefix) && entry.getKey().endsWith(suffix)) {
+                result = result == null ? entry.getValue() : result.max(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 记录eth_estimateGas的估算值
+     *
+     * @param key      缓存的key
+     * @param estimate 估算值
+     */
+    public void putEstimate(String key, BigInteger estimate) {
+        update(key, estimate);
+    }
+
+    /**
+     * 记录已发送的交易，收到回执时用实际消耗的gas更新缓存
+     *
+     * @param hash     交易hash
+     * @param key      缓存的key
+     * @param gasLimit 交易使用的gasLimit
+     */
+    public void track(String hash, String key, BigInteger gasLimit) {
+        if (pending.size() >= MAX_SIZE) {
+            pending.clear();
+        }
+        pending.put(hash, new PendingTransaction(key, gasLimit));
+    }
+
+    /**
+     * 根据交易回执更新缓存
+     * 交易失败且用完了全部gasLimit时认为是gas不足，删除缓存，下次重新估算
+     *
+     * @param receipt 交易回执
+     */
+    public void onReceipt(TransactionReceipt receipt) {
+        PendingTransaction tx = pending.remove(receipt.getTransactionHash());
+        if (tx == null || receipt.getGasUsed() == null) {
+            return;
+        }
+        if ("0x0".equals(receipt.getStatus()) && receipt.getGasUsed().compareTo(tx.gasLimit) >= 0) {
+            log.info("{} gas不足，删除缓存的gasLimit", tx.key);
+            gasUsed.remove(tx.key);
+            return;
+        }
+        if ("0x1".equals(receipt.getStatus())) {
+            update(tx.key, receipt.getGasUsed());
+        }
+    }
+
+    /**
+     * 删除某个key的缓存
+     *
+     * @param key 缓存的key
+     */
+    public void invalidate(String key) {
+        gasUsed.remove(key);
+    }
+
+    /**
+     * 记录观察到的gas用量，保留最大值
+     *
+     * @param key  缓存的key
+     * @param used gas用量
+     */
+    private void update(String key, BigInteger used) {
+        if (gasUsed.size() >= MAX_SIZE && !gasUsed.containsKey(key)) {
+            gasUsed.clear();
+        }
+        gasUsed.merge(key, used, BigInteger::max);
+    }
+
+    /**
+     * 已发送但还未看到回执的交易
+     */
+    private static class PendingTransaction {
+        private final String key;
+        private final BigInteger gasLimit;
+
+        private PendingTransaction(String key, BigInteger gasLimit) {
+            this.key = key;
+            this.gasLimit = gasLimit;
+        }
+    }
+}
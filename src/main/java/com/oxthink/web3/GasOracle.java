@@ -0,0 +1,452 @@
+package com.oxthink.web3;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthGasPrice;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网络共用的gas价格预言机
+ * 后台线程每出一个新区块就通过eth_feeHistory重新计算一次gas建议值，
+ * 发送交易时直接读取最新的建议值，不与节点交互，后台刷新停滞超过上限时同步刷新
+ */
+@Slf4j
+public class GasOracle {
+
+    /**
+     * 交易打包速度
+     */
+    @Getter
+    public enum Speed {
+        /**
+         * 慢速，取近几个区块小费的10%分位
+         */
+        SLOW(10),
+        /**
+         * 普通，取近几个区块小费的中位数
+         */
+        NORMAL(50),
+        /**
+         * 快速，取近几个区块小费的90%分位
+         */
+        FAST(90);
+
+        /**
+         * 小费分位数
+         */
+        private final int percentile;
+
+        Speed(int percentile) {
+            this.percentile = percentile;
+        }
+    }
+
+    /**
+     * 所有节点的预言机 key: 节点链接
+     */
+    private static final Map<String, GasOracle> ORACLES = new ConcurrentHashMap<>();
+
+    /**
+     * 参与计算的历史区块数量
+     */
+    private static final int HISTORY_BLOCKS = 10;
+
+    /**
+     * 节点不支持的方法的错误码
+     */
+    private static final int METHOD_NOT_FOUND = -32601;
+
+    /**
+     * eth_feeHistory连续失败多少次后暂停使用
+     */
+    private static final int MAX_FEE_HISTORY_FAILURES = 3;
+
+    /**
+     * 暂停使用eth_feeHistory后重新尝试的间隔 单位:ms
+     */
+    private static final long FEE_HISTORY_REPROBE_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * provide对象
+     */
+    private final Web3j web3;
+
+    /**
+     * 发送自定义请求的服务
+     */
+    private final Web3jService web3jService;
+
+    /**
+     * 检查新区块的间隔 单位:ms
+     */
+    private volatile long intervalMillis = 1000;
+
+    /**
+     * 最新的gas建议值
+     */
+    private volatile Suggestion suggestion;
+
+    /**
+     * 建议值的最大停滞时间，超过时同步刷新 单位:ms
+     */
+    private volatile long maxStaleMillis = 10000;
+
+    /**
+     * 最后一次确认建议值为最新的时间 单位:ms
+     */
+    private volatile long lastCheckTime;
+
+    /**
+     * 在此时间之前不使用eth_feeHistory，节点不支持或连续失败时设置 单位:ms
+     */
+    private volatile long feeHistoryDisabledUntil;
+
+    /**
+     * eth_feeHistory连续失败的次数
+     */
+    private int feeHistoryFailures;
+
+    /**
+     * 后台刷新线程
+     */
+    private ScheduledExecutorService scheduler;
+
+    public GasOracle(Web3j web3, Web3jService web3jService) {
+        this.web3 = web3;
+        this.web3jService = web3jService;
+    }
+
+    /**
+     * 获取某个节点的预言机，同一节点共用一个，首次获取时启动后台刷新
+     *
+     * @param nodeUrl      节点链接
+     * @param web3         provide对象
+     * @param web3jService 发送自定义请求的服务
+     * @return gas预言机
+     */
+    public static GasOracle of(String nodeUrl, Web3j web3, Web3jService web3jService) {
+        return ORACLES.computeIfAbsent(nodeUrl, k -> {
+            GasOracle oracle = new GasOracle(web3, web3jService);
+            oracle.start();
+            return oracle;
+        });
+    }
+
+    /**
+     * 启动后台刷新
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "gas-oracle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refreshIfNewBlock();
+            } catch (Exception e) {
+                log.warn("gas预言机刷新失败: {}", e.getMessage());
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台刷新
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 设置检查新区块的间隔，建议与出块时间一致，重启后生效
+     *
+     * @param intervalMillis 间隔 单位:ms
+     */
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * 设置建议值的最大停滞时间，后台刷新超过这个时间没有成功时，读取时同步刷新
+     *
+     * @param maxStaleMillis 最大停滞时间 单位:ms
+     */
+    public void setMaxStaleMillis(long maxStaleMillis) {
+        this.maxStaleMillis = maxStaleMillis;
+    }
+
+    /**
+     * 获取最新的gas建议值，只有预言机还未完成第一次刷新或后台刷新停滞时才会与节点交互
+     *
+     * @return gas建议值
+     * @throws IOException 与节点交互失败，不会返回停滞的建议值
+     */
+    public Suggestion getSuggestion() throws IOException {
+        Suggestion current = suggestion;
+        if (current == null || isStale()) {
+            synchronized (this) {
+                if (suggestion == null || isStale()) {
+                    if (suggestion != null) {
+                        log.warn("gas建议值已停滞{}ms，同步刷新", System.currentTimeMillis() - lastCheckTime);
+                    }
+                    refresh();
+                }
+                current = suggestion;
+            }
+        }
+        return current;
+    }
+
+    private boolean isStale() {
+        return System.currentTimeMillis() - lastCheckTime > maxStaleMillis;
+    }
+
+    /**
+     * 出现新区块时刷新建议值
+     *
+     * @throws IOException 与节点交互失败
+     */
+    private void refreshIfNewBlock() throws IOException {
+        EthBlockNumber response = web3.ethBlockNumber().send();
+        if (response.hasError()) {
+            throw new IOException("error: " + response.getError().getMessage());
+        }
+        Suggestion current = suggestion;
+        if (current != null && current.getBlockNumber().compareTo(response.getBlockNumber()) >= 0) {
+            lastCheckTime = System.currentTimeMillis();
+            return;
+        }
+        refresh();
+    }
+
+    /**
+     * 立即刷新建议值
+     * 节点返回方法不存在或连续多次失败时暂停使用eth_feeHistory，改用eth_gasPrice，一段时间后重新尝试；
+     * 偶发的错误不改变计价方式，已有建议值时保留原值并抛出异常
+     *
+     * @throws IOException 与节点交互失败
+     */
+    public synchronized void refresh() throws IOException {
+        long now = System.currentTimeMillis();
+        if (now >= feeHistoryDisabledUntil) {
+            Request<?, EthFeeHistory> request = new Request<>("eth_feeHistory",
+                    Arrays.asList(Numeric.encodeQuantity(BigInteger.valueOf(HISTORY_BLOCKS)), "latest", percentiles()),
+                    web3jService, EthFeeHistory.class);
+            EthFeeHistory response = request.send();
+            if (!response.hasError() && response.getResult() != null) {
+                feeHistoryFailures = 0;
+                suggestion = fromFeeHistory(response.getResult());
+                lastCheckTime = System.currentTimeMillis();
+                return;
+            }
+            String message = response.hasError() ? response.getError().getMessage() : "返回结果为空";
+            boolean notFound = response.hasError() && response.getError().getCode() == METHOD_NOT_FOUND;
+            if (notFound || ++feeHistoryFailures >= MAX_FEE_HISTORY_FAILURES) {
+                log.info("eth_feeHistory不可用: {}，{}分钟内改用eth_gasPrice", message, FEE_HISTORY_REPROBE_MILLIS / 60000);
+                feeHistoryFailures = 0;
+                feeHistoryDisabledUntil = now + FEE_HISTORY_REPROBE_MILLIS;
+            } else if (suggestion != null) {
+                throw new IOException("error: eth_feeHistory: " + message);
+            }
+        }
+        EthGasPrice gasPrice = web3.ethGasPrice().send();
+        if (gasPrice.hasError()) {
+            throw new IOException("error: " + gasPrice.getError().getMessage());
+        }
+        EthBlockNumber blockNumber = web3.ethBlockNumber().send();
+        suggestion = fromGasPrice(blockNumber.hasError() ? BigInteger.ZERO : blockNumber.getBlockNumber(), gasPrice.getGasPrice());
+        lastCheckTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 根据历史区块的基础费用和小费分位数计算建议值
+     *
+     * @param history eth_feeHistory的返回结果
+     * @return gas建议值
+     */
+    private static Suggestion fromFeeHistory(FeeHistory history) {
+        Speed[] speeds = Speed.values();
+        List<String> baseFees = history.getBaseFeePerGas();
+        // baseFeePerGas的最后一个元素是下一个区块的基础费用
+        BigInteger nextBaseFee = baseFees == null || baseFees.isEmpty()
+                ? BigInteger.ZERO : Numeric.decodeQuantity(baseFees.get(baseFees.size() - 1));
+        int blockCount = baseFees == null ? 0 : Math.max(baseFees.size() - 1, 0);
+        BigInteger latestBlock = Numeric.decodeQuantity(history.getOldestBlock())
+                .add(BigInteger.valueOf(Math.max(blockCount - 1, 0)));
+        BigInteger[] priorityFees = new BigInteger[speeds.length];
+        for (int i = 0; i < speeds.length; i++) {
+            List<BigInteger> rewards = new ArrayList<>();
+            if (history.getReward() != null) {
+                for (List<String> blockReward : history.getReward()) {
+                    if (blockReward != null && blockReward.size() > i) {
+                        rewards.add(Numeric.decodeQuantity(blockReward.get(i)));
+                    }
+                }
+            }
+            priorityFees[i] = median(rewards);
+        }
+        BigInteger[] gasPrices = new BigInteger[speeds.length];
+        BigInteger[] maxFees = new BigInteger[speeds.length];
+        for (int i = 0; i < speeds.length; i++) {
+            gasPrices[i] = nextBaseFee.add(priorityFees[i]);
+            // 预留两个区块基础费用上涨的空间
+            maxFees[i] = nextBaseFee.multiply(BigInteger.valueOf(2)).add(priorityFees[i]);
+        }
+        return new Suggestion(latestBlock, nextBaseFee, gasPrices, priorityFees, maxFees);
+    }
+
+    /**
+     * 节点不支持eth_feeHistory时，所有速度都使用eth_gasPrice
+     *
+     * @param blockNumber 区块高度
+     * @param gasPrice    节点返回的gasPrice
+     * @return gas建议值
+     */
+    private static Suggestion fromGasPrice(BigInteger blockNumber, BigInteger gasPrice) {
+        int size = Speed.values().length;
+        BigInteger[] gasPrices = new BigInteger[size];
+        BigInteger[] priorityFees = new BigInteger[size];
+        Arrays.fill(gasPrices, gasPrice);
+        Arrays.fill(priorityFees, gasPrice);
+        return new Suggestion(blockNumber, BigInteger.ZERO, gasPrices, priorityFees, gasPrices);
+    }
+
+    /**
+     * 计算中位数，列表为空返回0
+     *
+     * @param values 数值列表
+     * @return 中位数
+     */
+    private static BigInteger median(List<BigInteger> values) {
+        if (values.isEmpty()) {
+            return BigInteger.ZERO;
+        }
+        values.sort(BigInteger::compareTo);
+        return values.get(values.size() / 2);
+    }
+
+    /**
+     * 各个速度对应的小费分位数
+     *
+     * @return 分位数列表
+     */
+    private static List<Integer> percentiles() {
+        List<Integer> list = new ArrayList<>();
+        for (Speed speed : Speed.values()) {
+            list.add(speed.getPercentile());
+        }
+        return list;
+    }
+
+    /**
+     * 某个区块时刻的gas建议值，单位均为wei
+     */
+    public static class Suggestion {
+
+        /**
+         * 计算时的最新区块高度
+         */
+        @Getter
+        private final BigInteger blockNumber;
+
+        /**
+         * 下一个区块的基础费用，不支持EIP-1559的网络为0
+         */
+        @Getter
+        private final BigInteger baseFee;
+
+        private final BigInteger[] gasPrice;
+
+        private final BigInteger[] maxPriorityFeePerGas;
+
+        private final BigInteger[] maxFeePerGas;
+
+        Suggestion(BigInteger blockNumber, BigInteger baseFee, BigInteger[] gasPrice,
+                   BigInteger[] maxPriorityFeePerGas, BigInteger[] maxFeePerGas) {
+            this.blockNumber = blockNumber;
+            this.baseFee = baseFee;
+            this.gasPrice = gasPrice;
+            this.maxPriorityFeePerGas = maxPriorityFeePerGas;
+            this.maxFeePerGas = maxFeePerGas;
+        }
+
+        /**
+         * 网络是否支持EIP-1559
+         *
+         * @return 基础费用大于0返回true
+         */
+        public boolean isEip1559() {
+            return baseFee.signum() > 0;
+        }
+
+        /**
+         * 普通交易的gasPrice
+         *
+         * @param speed 打包速度
+         * @return gasPrice
+         */
+        public BigInteger getGasPrice(Speed speed) {
+            return gasPrice[speed.ordinal()];
+        }
+
+        /**
+         * EIP-1559交易的小费上限
+         *
+         * @param speed 打包速度
+         * @return maxPriorityFeePerGas
+         */
+        public BigInteger getMaxPriorityFeePerGas(Speed speed) {
+            return maxPriorityFeePerGas[speed.ordinal()];
+        }
+
+        /**
+         * EIP-1559交易的总费用上限
+         *
+         * @param speed 打包速度
+         * @return maxFeePerGas
+         */
+        public BigInteger getMaxFeePerGas(Speed speed) {
+            return maxFeePerGas[speed.ordinal()];
+        }
+    }
+
+    /**
+     * eth_feeHistory的返回结果
+     */
+    @Data
+    public static class FeeHistory {
+        private String oldestBlock;
+        private List<String> baseFeePerGas;
+        private List<Double> gasUsedRatio;
+        private List<List<String>> reward;
+    }
+
+    /**
+     * eth_feeHistory请求的返回
+     */
+    public static class EthFeeHistory extends Response<FeeHistory> {
+    }
+}
@@ -0,0 +1,347 @@
+package com.oxthink.web3;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 合约不可变信息缓存
+ * 缓存代币的名称、标志、精度，Pair的token0、token1、工厂地址等部署后不会改变的数据，key为(链ID, 合约地址, 字段)
+ * 缓存同时追加写入本地文件，启动时加载，重启后已知的代币和Pair不再需要查询节点
+ */
+@Slf4j
+public class MetadataCache {
+
+    /**
+     * 淘汰策略
+     */
+    public enum Eviction {
+        /**
+         * 淘汰最久未使用的
+         */
+        LRU,
+        /**
+         * 淘汰最早加入的
+         */
+        FIFO
+    }
+
+    /**
+     * 默认的缓存文件
+     */
+    public static final String DEFAULT_FILE = Paths.get(System.getProperty("user.home"), ".web3jutils", "metadata.tsv").toString();
+
+    private static final MetadataCache INSTANCE = new MetadataCache();
+
+    /**
+     * 缓存的最大数量
+     */
+    private int maxSize = 100000;
+
+    /**
+     * 淘汰策略
+     */
+    private Eviction eviction = Eviction.LRU;
+
+    /**
+     * 缓存文件，为空时不持久化
+     */
+    private Path file;
+
+    /**
+     * 缓存文件的行数，超过缓存数量的两倍时重写文件
+     */
+    private int fileLines;
+
+    /**
+     * 是否已加载缓存文件
+     */
+    private boolean loaded;
+
+    private Map<String, String> cache = newMap();
+
+    private MetadataCache() {
+        String path = System.getProperty("web3jutils.metadata.file", DEFAULT_FILE);
+        this.file = path.isEmpty() ? null : Paths.get(path);
+    }
+
+    /**
+     * 获取全局的缓存
+     *
+     * @return 缓存
+     */
+    public static MetadataCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 设置缓存的最大数量
+     *
+     * @param maxSize 最大数量
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        rebuild();
+    }
+
+    /**
+     * 设置淘汰策略
+     *
+     * @param eviction 淘汰策略
+     */
+    public synchronized void setEviction(Eviction eviction) {
+        this.eviction = eviction;
+        rebuild();
+    }
+
+    /**
+     * 设置缓存文件，并从文件加载缓存
+     *
+     * @param path 文件路径，为空时不持久化
+     */
+    public synchronized void setFile(String path) {
+        this.file = path == null || path.isEmpty() ? null : Paths.get(path);
+        this.loaded = false;
+        load();
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @param chainId 链ID
+     * @param address 合约地址
+     * @param field   字段
+     * @return 缓存的值，没有缓存返回null
+     */
+    public synchronized String get(long chainId, String address, String field) {
+        load();
+        return cache.get(key(chainId, address, field));
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param chainId 链ID
+     * @param address 合约地址
+     * @param field   字段
+     * @param value   值
+     */
+    public synchronized void put(long chainId, String address, String field, String value) {
+        load();
+        String key = key(chainId, address, field);
+        if (value.equals(cache.put(key, value))) {
+            return;
+        }
+        append(key, value);
+    }
+
+    /**
+     * 读取缓存，没有缓存时查询并写入缓存
+     *
+     * @param web3    web3对象，用于确定链ID
+     * @param address 合约地址
+     * @param field   字段
+     * @param loader  没有缓存时的查询方法
+     * @return 值
+     * @throws Exception 与节点交互失败
+     */
+    public String get(Web3jUtil web3, String address, String field, Callable<String> loader) throws Exception {
+        long chainId = web3.getChainContext().getChainId();
+        String value = get(chainId, address, field);
+        if (value == null) {
+            value = loader.call();
+            put(chainId, address, field, value);
+        }
+        return value;
+    }
+
+    /**
+     * 异步读取缓存，没有缓存时查询并写入缓存
+     * 链ID还未确定时不使用缓存，避免在调用线程中阻塞
+     *
+     * @param web3    web3对象，用于确定链ID
+     * @param address 合约地址
+     * @param field   字段
+     * @param loader  没有缓存时的查询方法
+     * @return 值
+     */
+    public CompletableFuture<String> getAsync(Web3jUtil web3, String address, String field, Supplier<CompletableFuture<String>> loader) {
+        ChainContext chainContext = web3.getChainContext();
+        if (!chainContext.isChainIdResolved()) {
+            return loader.get();
+        }
+        long chainId;
+        try {
+            chainId = chainContext.getChainId();
+        } catch (IOException e) {
+            return loader.get();
+        }
+        String value = get(chainId, address, field);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        return loader.get().thenApply(result -> {
+            put(chainId, address, field, result);
+            return result;
+        });
+    }
+
+    /**
+     * 清空缓存和缓存文件
+     */
+    public synchronized void clear() {
+        cache.clear();
+        rewrite();
+    }
+
+    /**
+     * 缓存的数量
+     *
+     * @return 数量
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    private static String key(long chainId, String address, String field) {
+        return chainId + "\t" + address.toLowerCase() + "\t" + field;
+    }
+
+    private Map<String, String> newMap() {
+        return new LinkedHashMap<String, String>(16, 0.75f, eviction == Eviction.LRU) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 按新的配置重建缓存
+     */
+    private void rebuild() {
+        Map<String, String> old = cache;
+        cache = newMap();
+        cache.putAll(old);
+    }
+
+    /**
+     * 首次使用时从文件加载缓存
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        fileLines = 0;
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                // 格式: 链ID \t 地址 \t 字段 \t 值
+                String[] parts = line.split("\t", 4);
+                if (parts.length == 4) {
+                    cache.put(parts[0] + "\t" + parts[1] + "\t" + parts[2], unescape(parts[3]));
+                    fileLines++;
+                }
+            }
+            log.info("从{}加载了{}条合约信息", file, cache.size());
+        } catch (IOException e) {
+            log.warn("读取缓存文件失败: {}", e.getMessage());
+        }
+        if (fileLines > 2 * Math.max(cache.size(), 1)) {
+            rewrite();
+        }
+    }
+
+    /**
+     * 向文件追加一条缓存
+     */
+    private void append(String key, String value) {
+        if (file == null) {
+            return;
+        }
+        if (fileLines >= 2 * maxSize) {
+            rewrite();
+            return;
+        }
+        try {
+            createParent();
+            Files.write(file, (key + "\t" + escape(value) + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            fileLines++;
+        } catch (IOException e) {
+            log.warn("写入缓存文件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 用内存中的缓存重写文件，去掉重复和已淘汰的数据
+     */
+    private void rewrite() {
+        if (file == null) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(cache.size());
+        for (Map.Entry<String, String> entry : cache.entrySet()) {
+            lines.add(entry.getKey() + "\t" + escape(entry.getValue()));
+        }
+        try {
+            createParent();
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            fileLines = lines.size();
+        } catch (IOException e) {
+            log.warn("写入缓存文件失败: {}", e.getMessage());
+        }
+    }
+
+    private void createParent() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    /**
+     * 转义值中的换行和制表符，代币名称可以是任意字符串
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -3,19 +3,67 @@ package com.oxthink.web3;
 import com.oxthink.constant.ChainInfo;
 import com.oxthink.tool.StringUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Hash;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthGetBalance;
+import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
+import org.web3j.protocol.core.methods.response.EthSendTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.utils.Convert;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
-public class MultiAccountUtil {
+public class MultiAccountUtil implements Closeable {
 
-    private final List<String> privateKeyList;
+    /**
+     * 一次批量请求中最多包含的请求数量
+     */
+    private static final int BATCH_SIZE = 100;
 
-    private final ChainInfo chainInfo;
+    /**
+     * 批量账户，私钥只解析一次，与主账户共用节点连接
+     */
+    private final AccountPool accountPool;
 
     private final Web3jUtil web3jMainAccount;
 
-    private final String gasPrice;
+    /**
+     * 批量操作的并发数，1表示逐个账户执行
+     */
+    private int concurrency = 1;
+
+    /**
+     * 等待交易确认的最大时间 单位:ms
+     */
+    private long waitTime = 60000;
+
+    /**
+     * 失败交易的最大重发次数
+     */
+    private int retryCount = 2;
+
+    /**
+     * 是否通过Disperse合约批量发送gas
+     */
+    private boolean disperse = false;
 
     /**
      * 构造函数
@@ -26,87 +74,448 @@ public class MultiAccountUtil {
      * @param gasPrice       设定的gasPrice价格
      */
     public MultiAccountUtil(ChainInfo chainInfo, List<String> privateKeyList, String mainAccount, String gasPrice) {
-        this.privateKeyList = privateKeyList;
-        this.chainInfo = chainInfo;
-        this.web3jMainAccount = new Web3jUtil(chainInfo, mainAccount);
-        this.gasPrice = gasPrice;
+        this(new AccountPool(chainInfo, privateKeyList), mainAccount, gasPrice);
+    }
+
+    /**
+     * 构造函数，使用已创建的账户池
+     *
+     * @param accountPool 批量账户池
+     * @param mainAccount 主账户私钥
+     * @param gasPrice    设定的gasPrice价格
+     */
+    public MultiAccountUtil(AccountPool accountPool, String mainAccount, String gasPrice) {
+        this.accountPool = accountPool;
+        this.web3jMainAccount = new Web3jUtil(accountPool.getTransport(), Credentials.create(mainAccount));
         web3jMainAccount.setGasPriceLimit(gasPrice, gasPrice);
+        accountPool.setGasPriceLimit(gasPrice, gasPrice);
+    }
+
+    /**
+     * 设置批量操作的并发数
+     *
+     * @param concurrency 同时执行的账户数量，1表示逐个账户执行
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
     }
 
     /**
-     * 多账户批量完成操作
+     * 设置等待交易确认的最大时间
+     *
+     * @param waitTime 最大等待时间 单位:ms
+     */
+    public void setWaitTime(long waitTime) {
+        this.waitTime = waitTime;
+    }
+
+    /**
+     * 设置失败交易的最大重发次数
+     *
+     * @param retryCount 重发次数，0表示不重发
+     */
+    public void setRetryCount(int retryCount) {
+        this.retryCount = Math.max(0, retryCount);
+    }
+
+    /**
+     * 设置是否通过Disperse合约批量发送gas，多个账户合并为一笔交易
+     *
+     * @param disperse 使用Disperse合约为true
+     */
+    public void setDisperse(boolean disperse) {
+        this.disperse = disperse;
+    }
+
+    /**
+     * 设置节点的请求限速，同一节点上的所有账户共用
+     *
+     * @param permitsPerSecond 每秒允许的请求数，小于等于0表示不限速
+     */
+    public void setRateLimit(double permitsPerSecond) {
+        RpcRateLimiter.of(web3jMainAccount.getNodeUrl()).setRate(permitsPerSecond);
+    }
+
+    /**
+     * 多账户批量完成操作，按设置的并发数同时执行，单个账户失败不影响其他账户
      *
      * @param listener 操作具体内容
+     * @return 执行报告
      */
-    public void todo(AccountListener listener) {
-        for (String privateKey : privateKeyList) {
-            Web3jUtil web3j = new Web3jUtil(chainInfo, privateKey);
-            // 设置gasPrice
-            web3j.setGasPriceLimit(gasPrice, gasPrice);
-            log.info(web3j.getOwnerAddress() + " 正在执行批量操作");
+    public BatchReport todo(AccountListener listener) {
+        BatchReport report = new BatchReport(accountPool.size());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < accountPool.size(); i++) {
+            int index = i;
+            tasks.add(() -> {
+                report.set(index, todo(accountPool.get(index), listener));
+                return null;
+            });
+        }
+        runAll(tasks);
+        report.finish();
+        log.info("批量操作完成, " + report);
+        return report;
+    }
+
+    private BatchReport.AccountResult todo(Web3jUtil web3j, AccountListener listener) {
+        long startTime = System.currentTimeMillis();
+        log.info(web3j.getOwnerAddress() + " 正在执行批量操作");
+        try {
             // 执行具体的操作
             listener.doSameThing(web3j);
             log.info(web3j.getOwnerAddress() + " 完成批量操作");
+            return BatchReport.AccountResult.success(web3j.getOwnerAddress(), null, startTime);
+        } catch (Exception e) {
+            log.info(String.format("%s 批量操作失败: %s", web3j.getOwnerAddress(), e.getMessage()));
+            return BatchReport.AccountResult.failure(web3j.getOwnerAddress(), null, e, startTime);
+        }
+    }
+
+    /**
+     * 按并发数执行所有任务，并发数为1时在当前线程中逐个执行
+     *
+     * @param tasks 任务
+     */
+    private void runAll(List<Callable<Void>> tasks) {
+        if (concurrency <= 1 || tasks.size() <= 1) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    log.info("批量操作失败: " + e.getMessage());
+                }
+            }
+            return;
+        }
+        AtomicInteger index = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, tasks.size()), r -> {
+            Thread thread = new Thread(r, "multi-account-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("批量操作被中断");
+        } finally {
+            executor.shutdownNow();
         }
     }
 
     /**
      * 主账户向批量账户发送gas
+     * 使用本地连续的nonce依次广播所有转账，再统一等待确认，
+     * 广播失败或被节点丢弃的转账在下一轮重发，已在交易池中等待的转账不重发
+     * 开启disperse时通过Disperse合约批量发送
      *
      * @param gasPerAccount gas数量 单位：ether
+     * @return 执行报告
      * @throws Exception 与节点交互失败
      */
-    public void distributeGas(String gasPerAccount) throws Exception {
+    public BatchReport distributeGas(String gasPerAccount) throws Exception {
         // 检查主账户的gas是否够用
         String mainBalance = web3jMainAccount.getBalance();
-        String gasDistribute = String.valueOf(Double.parseDouble(gasPerAccount) * privateKeyList.size());
+        String gasDistribute = String.valueOf(Double.parseDouble(gasPerAccount) * accountPool.size());
         if (StringUtil.greatThan(gasDistribute, mainBalance)) {
             throw new Exception(String.format("需花费 %s ether Gas,主账户Gas不足!", gasDistribute));
         }
+        if (disperse) {
+            List<String> addresses = accountPool.getAddresses();
+            DisperseUtil disperseUtil = new DisperseUtil(web3jMainAccount);
+            disperseUtil.setWaitTime(waitTime);
+            return disperseUtil.disperseEther(addresses, gasPerAccount);
+        }
+
+        BatchReport report = new BatchReport(accountPool.size());
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < accountPool.size(); i++) {
+            indexes.add(i);
+        }
+        for (int round = 0; round <= retryCount && !indexes.isEmpty(); round++) {
+            if (round > 0) {
+                log.info(String.format("第%d次重发gas, 账户数: %d", round, indexes.size()));
+                // 失败的交易可能留下nonce空洞，重发前与链上同步
+                NonceManager.of(web3jMainAccount.getNodeUrl(), web3jMainAccount.getWeb3(), web3jMainAccount.getOwnerAddress()).resync();
+            }
+            indexes = distributeRound(indexes, gasPerAccount, report);
+        }
+        report.finish();
+        log.info("发送gas完成, " + report);
+        return report;
+    }
 
-        for (String privateKey : privateKeyList) {
-            String address = Web3jUtil.getPublicAddress(privateKey);
-            // 向钱包发送gas
+    /**
+     * 一轮发送gas：依次广播，统一等待
+     *
+     * @return 需要重发的账户
+     */
+    private List<Integer> distributeRound(List<Integer> indexes, String gasPerAccount, BatchReport report) {
+        long startTime = System.currentTimeMillis();
+        ReceiptWatcher watcher = web3jMainAccount.getReceiptWatcher();
+        Map<Integer, String> hashes = new LinkedHashMap<>();
+        Map<Integer, CompletableFuture<TransactionReceipt>> futures = new LinkedHashMap<>();
+        List<Integer> retry = new ArrayList<>();
+        for (int index : indexes) {
+            String address = accountPool.getAddress(index);
+            // 向钱包发送gas，nonce在本地分配，不等待上一笔确认
             try {
                 String hash = web3jMainAccount.sendEther(address, gasPerAccount);
-                if (web3jMainAccount.blockTransactionUtilComplete(hash, 60000)) {
+                hashes.put(index, hash);
+                futures.put(index, watcher.watch(hash, waitTime));
+            } catch (UnknownBroadcastException e) {
+                // 节点可能已收到转账，按已发送等待回执，超时后再确认是否需要重发
+                log.info(String.format("主账户向%s发送gas结果未知, 等待回执: %s", address, e.getHash()));
+                hashes.put(index, e.getHash());
+                futures.put(index, watcher.watch(e.getHash(), waitTime));
+            } catch (Exception e) {
+                // 节点明确拒绝或确认未收到交易，可以重发
+                log.info(String.format("主账户向%s发送gas失败: %s", address, e.getMessage()));
+                report.set(index, BatchReport.AccountResult.failure(address, null, e, startTime));
+                retry.add(index);
+            }
+        }
+        // 所有转账一起等待确认
+        List<Integer> timeout = new ArrayList<>();
+        for (Map.Entry<Integer, CompletableFuture<TransactionReceipt>> entry : futures.entrySet()) {
+            int index = entry.getKey();
+            String address = accountPool.getAddress(index);
+            String hash = hashes.get(index);
+            try {
+                TransactionReceipt receipt = entry.getValue().get();
+                if ("0x1".equals(receipt.getStatus())) {
                     log.info(String.format("主账户向%s成功发送%s ether gas , 交易hash: %s", address, gasPerAccount, hash));
+                    report.set(index, BatchReport.AccountResult.success(address, hash, startTime));
                 } else {
                     log.info(String.format("主账户向%s发送gas失败 , 交易hash: %s", address, hash));
+                    report.set(index, BatchReport.AccountResult.failure(address, hash, new Exception("error: 交易执行失败"), startTime));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                report.set(index, BatchReport.AccountResult.failure(address, hash, e, startTime));
+            } catch (ExecutionException e) {
+                report.set(index, BatchReport.AccountResult.failure(address, hash, e.getCause(), startTime));
+                if (e.getCause() instanceof TimeoutException) {
+                    timeout.add(index);
                 }
-            } catch (Exception e) {
-                log.info(String.format("主账户向%s发送gas失败", address));
-                e.printStackTrace();
             }
         }
+        // 超时的交易仍在交易池中时不重发，避免重复转账
+        List<String> timeoutHashes = new ArrayList<>();
+        for (int index : timeout) {
+            timeoutHashes.add(hashes.get(index));
+        }
+        List<String> dropped = watcher.getDropped(timeoutHashes);
+        for (int index : timeout) {
+            if (dropped.contains(hashes.get(index))) {
+                retry.add(index);
+            } else {
+                log.info("交易仍在等待打包，不重发: " + hashes.get(index));
+            }
+        }
+        return retry;
     }
 
     /**
      * 向主账户发送GAS
+     * 一次批量请求读取所有账户的余额和nonce，使用共同的gasPrice在本地计算可发送的数量，
+     * 并行签名后通过批量请求广播，统一等待确认，余额不足以支付gas的账户跳过
      *
+     * @return 执行报告，跳过的账户记为成功且没有交易hash
      * @throws Exception 与节点交互失败
      */
-    public void collectGas() throws Exception {
-        for (String privateKey : privateKeyList) {
-            Web3jUtil web3j = new Web3jUtil(chainInfo, privateKey);
-            web3j.setGasPriceLimit(gasPrice, gasPrice);
-            String balance = web3j.getBalance();
-            // 向主钱包发送gas
+    public BatchReport collectGas() throws Exception {
+        BatchReport report = new BatchReport(accountPool.size());
+        String mainAddress = web3jMainAccount.getOwnerAddress();
+        List<Web3jUtil> accountList = accountPool.getAccounts();
+        // 所有账户共用gasPrice和gasLimit，gasLimit不加余量，保证余额全部转出
+        BigInteger price = web3jMainAccount.getGasPriceWithLimit();
+        BigInteger gasLimit = web3jMainAccount.estimateGasLimit(mainAddress, "");
+        BigInteger fee = price.multiply(gasLimit);
+        // 签名前先解析chainId，避免并行签名时重复查询
+        web3jMainAccount.getChainContext().getChainId();
+        BigInteger[][] state = readBalanceAndNonce(accountList);
+
+        // 并行签名
+        long startTime = System.currentTimeMillis();
+        Map<Integer, CompletableFuture<String>> signed = new LinkedHashMap<>();
+        Map<Integer, BigInteger> nonces = new LinkedHashMap<>();
+        for (int i = 0; i < accountList.size(); i++) {
+            Web3jUtil account = accountList.get(i);
+            BigInteger value = state[0][i].subtract(fee);
+            if (value.signum() <= 0) {
+                log.info(String.format("%s 余额不足以支付gas, 跳过", account.getOwnerAddress()));
+                report.set(i, BatchReport.AccountResult.success(account.getOwnerAddress(), null, startTime));
+                continue;
+            }
+            NonceManager nonceManager = account.getNonceManager();
+            nonceManager.sync(state[1][i]);
+            BigInteger nonce = nonceManager.acquire();
+            nonces.put(i, nonce);
+            signed.put(i, Web3jUtil.supplyAsync(() -> account.signTransaction(nonce, price, gasLimit, mainAddress, value, "")));
+        }
+        List<Integer> indexes = new ArrayList<>();
+        List<String> rawTransactions = new ArrayList<>();
+        for (Map.Entry<Integer, CompletableFuture<String>> entry : signed.entrySet()) {
+            String address = accountList.get(entry.getKey()).getOwnerAddress();
+            try {
+                rawTransactions.add(entry.getValue().get());
+                indexes.add(entry.getKey());
+            } catch (ExecutionException e) {
+                log.info(String.format("%s 签名失败: %s", address, e.getCause().getMessage()));
+                accountList.get(entry.getKey()).getNonceManager().release(nonces.get(entry.getKey()));
+                report.set(entry.getKey(), BatchReport.AccountResult.failure(address, null, e.getCause(), startTime));
+            }
+        }
+
+        // 批量广播
+        ReceiptWatcher watcher = web3jMainAccount.getReceiptWatcher();
+        Map<Integer, String> hashes = new LinkedHashMap<>();
+        Map<Integer, CompletableFuture<TransactionReceipt>> futures = new LinkedHashMap<>();
+        for (int from = 0; from < indexes.size(); from += BATCH_SIZE) {
+            int to = Math.min(from + BATCH_SIZE, indexes.size());
+            List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                requests.add(web3jMainAccount.getWeb3().ethSendRawTransaction(rawTransactions.get(i)));
+            }
+            List<Response<?>> responses;
             try {
-                String hash = web3j.sendAllEther(web3jMainAccount.getOwnerAddress());
-                if (web3j.blockTransactionUtilComplete(hash, 60000)) {
-                    log.info(String.format("%s向主账户成功发送%s ether gas , 交易hash: %s", web3j.getOwnerAddress(), balance, hash));
+                responses = web3jMainAccount.sendBatch(requests);
+            } catch (IOException e) {
+                // 无法确认节点是否收到交易，按已发送处理：用本地计算的hash等待回执，超时后再确认是否被丢弃
+                log.info("批量广播失败, 无法确认节点是否已收到交易, 等待回执: " + e.getMessage());
+                for (int i = from; i < to; i++) {
+                    String hash = Hash.sha3(rawTransactions.get(i));
+                    hashes.put(indexes.get(i), hash);
+                    futures.put(indexes.get(i), watcher.watch(hash, waitTime));
+                }
+                continue;
+            }
+            for (int i = from; i < to; i++) {
+                int index = indexes.get(i);
+                Web3jUtil account = accountList.get(index);
+                EthSendTransaction response = (EthSendTransaction) responses.get(i - from);
+                if (response.hasError() && NonceManager.isAlreadyKnown(response.getError().getMessage())) {
+                    // 节点已持有这笔交易，按广播成功处理
+                    response = new EthSendTransaction();
+                    response.setResult(Hash.sha3(rawTransactions.get(i)));
+                }
+                if (response.hasError()) {
+                    String message = response.getError().getMessage();
+                    log.info(String.format("%s向主账户发送gas失败: %s", account.getOwnerAddress(), message));
+                    if (NonceManager.isNonceError(message)) {
+                        account.getNonceManager().resync();
+                    } else {
+                        account.getNonceManager().release(nonces.get(index));
+                    }
+                    report.set(index, BatchReport.AccountResult.failure(account.getOwnerAddress(), null, new Exception("error: " + message), startTime));
+                    continue;
+                }
+                hashes.put(index, response.getTransactionHash());
+                futures.put(index, watcher.watch(response.getTransactionHash(), waitTime));
+            }
+        }
+
+        // 所有交易一起等待确认
+        List<Integer> timeout = new ArrayList<>();
+        for (Map.Entry<Integer, CompletableFuture<TransactionReceipt>> entry : futures.entrySet()) {
+            int index = entry.getKey();
+            String address = accountList.get(index).getOwnerAddress();
+            String hash = hashes.get(index);
+            try {
+                TransactionReceipt receipt = entry.getValue().get();
+                if ("0x1".equals(receipt.getStatus())) {
+                    log.info(String.format("%s向主账户成功发送%s ether gas , 交易hash: %s", address,
+                            Convert.fromWei(new BigDecimal(state[0][index].subtract(fee)), Convert.Unit.ETHER).toPlainString(), hash));
+                    report.set(index, BatchReport.AccountResult.success(address, hash, startTime));
                 } else {
-                    log.info(String.format("%s向主账户发送gas失败 , 交易hash: %s", web3j.getOwnerAddress(), hash));
+                    log.info(String.format("%s向主账户发送gas失败 , 交易hash: %s", address, hash));
+                    report.set(index, BatchReport.AccountResult.failure(address, hash, new Exception("error: 交易执行失败"), startTime));
                 }
-            } catch (Exception e) {
-                log.info(String.format("%s向主账户发送gas失败", web3j.getOwnerAddress()));
-                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                report.set(index, BatchReport.AccountResult.failure(address, hash, e, startTime));
+            } catch (ExecutionException e) {
+                report.set(index, BatchReport.AccountResult.failure(address, hash, e.getCause(), startTime));
+                if (e.getCause() instanceof TimeoutException) {
+                    timeout.add(index);
+                }
+            }
+        }
+        // 超时的交易中只有节点已不认识的才确定失败，其nonce留下空洞，重新同步
+        List<String> timeoutHashes = new ArrayList<>();
+        for (int index : timeout) {
+            timeoutHashes.add(hashes.get(index));
+        }
+        List<String> dropped = watcher.getDropped(timeoutHashes);
+        for (int index : timeout) {
+            String hash = hashes.get(index);
+            Web3jUtil account = accountList.get(index);
+            if (dropped.contains(hash)) {
+                log.info(String.format("%s向主账户发送gas的交易已被丢弃: %s", account.getOwnerAddress(), hash));
+                account.getNonceManager().resync();
+                report.set(index, BatchReport.AccountResult.failure(account.getOwnerAddress(), hash, new Exception("error: 交易已被节点丢弃"), startTime));
+            } else {
+                log.info("交易仍在等待打包: " + hash);
+            }
+        }
+        report.finish();
+        log.info("归集gas完成, " + report);
+        return report;
+    }
+
+    /**
+     * 批量读取账户的余额和pending状态下的交易数
+     *
+     * @param accountList 账户
+     * @return [余额(单位wei), 交易数]
+     * @throws IOException 与节点交互失败
+     */
+    private BigInteger[][] readBalanceAndNonce(List<Web3jUtil> accountList) throws IOException {
+        BigInteger[][] state = new BigInteger[2][accountList.size()];
+        // 每个账户两个请求
+        int step = BATCH_SIZE / 2;
+        for (int from = 0; from < accountList.size(); from += step) {
+            int to = Math.min(from + step, accountList.size());
+            List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                String address = accountList.get(i).getOwnerAddress();
+                requests.add(web3jMainAccount.getWeb3().ethGetBalance(address, DefaultBlockParameterName.PENDING));
+                requests.add(web3jMainAccount.getWeb3().ethGetTransactionCount(address, DefaultBlockParameterName.PENDING));
+            }
+            List<Response<?>> responses = web3jMainAccount.sendBatch(requests);
+            for (int i = from; i < to; i++) {
+                EthGetBalance balance = (EthGetBalance) responses.get((i - from) * 2);
+                EthGetTransactionCount count = (EthGetTransactionCount) responses.get((i - from) * 2 + 1);
+                if (balance.hasError() || count.hasError()) {
+                    throw new IOException("error: " + (balance.hasError() ? balance.getError() : count.getError()).getMessage());
+                }
+                state[0][i] = balance.getBalance();
+                state[1][i] = count.getTransactionCount();
             }
         }
+        return state;
+    }
+
+    /**
+     * 获取批量账户池
+     *
+     * @return 账户池
+     */
+    public AccountPool getAccountPool() {
+        return accountPool;
+    }
+
+    /**
+     * 关闭批量账户池
+     */
+    @Override
+    public void close() {
+        accountPool.close();
     }
 
-    interface AccountListener {
-        void doSameThing(Web3jUtil web3j);
+    public interface AccountListener {
+        void doSameThing(Web3jUtil web3j) throws Exception;
     }
 }
@@ -0,0 +1,437 @@
+package com.oxthink.web3;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 通过Multicall3合约批量读取合约状态
+ * 多个(合约, 函数)调用合并为aggregate3调用，按节点的gas上限分块，
+ * 所有分块在同一个区块上执行，并通过一次JSON-RPC批量请求发送
+ * 网络上没有部署Multicall3时，退化为逐个eth_call的批量请求
+ */
+@Slf4j
+public class MulticallUtil {
+
+    /**
+     * Multicall3在各条链上的部署地址
+     */
+    public static final String MULTICALL3_ADDRESS = "0xcA11bde05977b3631167028862bE2a173976CA11";
+
+    /**
+     * aggregate3((address,bool,bytes)[])的函数选择器
+     */
+    private static final String AGGREGATE3_SELECTOR = "82ad56cb";
+
+    /**
+     * getBlockNumber()的函数选择器
+     */
+    private static final String GET_BLOCK_NUMBER_SELECTOR = "0x42cbb15c";
+
+    private final Web3jUtil web3;
+
+    /**
+     * Multicall3合约地址
+     */
+    private String multicallAddress = MULTICALL3_ADDRESS;
+
+    /**
+     * 节点eth_call的gas上限
+     */
+    private long gasCap = 50_000_000L;
+
+    /**
+     * 预估每个调用消耗的gas，用于计算分块大小
+     */
+    private long gasPerCall = 100_000L;
+
+    /**
+     * 等待执行的调用
+     */
+    private final List<Function> functions = new ArrayList<>();
+
+    private final List<String> targets = new ArrayList<>();
+
+    public MulticallUtil(Web3jUtil web3) {
+        this.web3 = web3;
+    }
+
+    /**
+     * 设置Multicall3合约地址
+     *
+     * @param multicallAddress 合约地址
+     */
+    public void setMulticallAddress(String multicallAddress) {
+        this.multicallAddress = multicallAddress;
+    }
+
+    /**
+     * 设置分块参数，每块的调用数量为 gasCap / gasPerCall
+     *
+     * @param gasCap     节点eth_call的gas上限
+     * @param gasPerCall 预估每个调用消耗的gas
+     */
+    public void setGasLimit(long gasCap, long gasPerCall) {
+        this.gasCap = gasCap;
+        this.gasPerCall = gasPerCall;
+    }
+
+    /**
+     * 添加一个读取调用
+     *
+     * @param contractAddress 合约地址
+     * @param functionName    合约函数名称
+     * @param input           输入参数和类型
+     * @param output          输出类型
+     * @return 调用的序号，与execute返回结果的下标一致
+     */
+    public int addCall(String contractAddress, String functionName, List<Type> input, List<TypeReference<?>> output) {
+        functions.add(new Function(functionName, input, output));
+        targets.add(contractAddress);
+        return functions.size() - 1;
+    }
+
+    /**
+     * 已添加的调用数量
+     *
+     * @return 调用数量
+     */
+    public int size() {
+        return functions.size();
+    }
+
+    /**
+     * 执行所有已添加的调用，执行后清空调用列表
+     *
+     * @return 每个调用的结果，顺序与添加顺序一致
+     * @throws Exception 与节点交互失败
+     */
+    public Result execute() throws Exception {
+        return execute(null);
+    }
+
+    /**
+     * 在指定区块上执行所有已添加的调用，执行后清空调用列表
+     *
+     * @param blockNumber 区块高度，为空时使用最新区块
+     * @return 每个调用的结果，顺序与添加顺序一致
+     * @throws Exception 与节点交互失败
+     */
+    public Result execute(BigInteger blockNumber) throws Exception {
+        List<Function> calls = new ArrayList<>(functions);
+        List<String> to = new ArrayList<>(targets);
+        functions.clear();
+        targets.clear();
+        if (calls.isEmpty()) {
+            return new Result(blockNumber == null ? BigInteger.ZERO : blockNumber, Collections.emptyList());
+        }
+        int chunkSize = (int) Math.max(1, gasCap / gasPerCall);
+        // 只有一块时，把getBlockNumber放在同一次调用中，一次交互即可得到区块高度
+        if (blockNumber == null && calls.size() <= chunkSize - 1) {
+            List<byte[]> returnData = aggregate(to, calls, DefaultBlockParameterName.LATEST, true);
+            if (returnData != null && returnData.get(0) != null) {
+                return new Result(Numeric.toBigInt(returnData.get(0)), decode(calls, returnData.subList(1, returnData.size())));
+            }
+            return fallback(to, calls, DefaultBlockParameterName.LATEST, null);
+        }
+        // 多块时先固定区块高度，保证所有分块读取同一个区块
+        if (blockNumber == null) {
+            EthBlockNumber ethBlockNumber = web3.getWeb3().ethBlockNumber().send();
+            if (ethBlockNumber.hasError()) {
+                throw new Exception("error: " + ethBlockNumber.getError().getMessage());
+            }
+            blockNumber = ethBlockNumber.getBlockNumber();
+        }
+        DefaultBlockParameter block = DefaultBlockParameter.valueOf(blockNumber);
+        List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+        for (int from = 0; from < calls.size(); from += chunkSize) {
+            int end = Math.min(from + chunkSize, calls.size());
+            requests.add(aggregateRequest(to.subList(from, end), calls.subList(from, end), block, false));
+        }
+        List<Response<?>> responses = web3.sendBatch(requests);
+        List<CallResult> results = new ArrayList<>(calls.size());
+        for (int i = 0, from = 0; from < calls.size(); i++, from += chunkSize) {
+            int end = Math.min(from + chunkSize, calls.size());
+            List<byte[]> returnData = decodeAggregate((EthCall) responses.get(i), end - from);
+            if (returnData == null) {
+                return fallback(to, calls, block, blockNumber);
+            }
+            results.addAll(decode(calls.subList(from, end), returnData));
+        }
+        return new Result(blockNumber, results);
+    }
+
+    /**
+     * 发送一次aggregate3调用
+     *
+     * @param to             合约地址列表
+     * @param calls          调用列表
+     * @param block          执行的区块
+     * @param withBlockNumber 是否在第一个调用中读取区块高度
+     * @return 每个调用的返回数据(失败的调用为null)，Multicall3不可用返回null
+     * @throws Exception 与节点交互失败
+     */
+    private List<byte[]> aggregate(List<String> to, List<Function> calls, DefaultBlockParameter block, boolean withBlockNumber) throws Exception {
+        EthCall response = aggregateRequest(to, calls, block, withBlockNumber).send();
+        return decodeAggregate(response, calls.size() + (withBlockNumber ? 1 : 0));
+    }
+
+    /**
+     * 组建aggregate3的eth_call请求
+     *
+     * @param to              合约地址列表
+     * @param calls           调用列表
+     * @param block           执行的区块
+     * @param withBlockNumber 是否在第一个调用中读取区块高度
+     * @return eth_call请求
+     */
+    private Request<?, EthCall> aggregateRequest(List<String> to, List<Function> calls, DefaultBlockParameter block, boolean withBlockNumber) {
+        List<String> addresses = new ArrayList<>();
+        List<String> data = new ArrayList<>();
+        if (withBlockNumber) {
+            addresses.add(multicallAddress);
+            data.add(GET_BLOCK_NUMBER_SELECTOR);
+        }
+        for (int i = 0; i < calls.size(); i++) {
+            addresses.add(to.get(i));
+            data.add(FunctionEncoder.encode(calls.get(i)));
+        }
+        String callData = "0x" + AGGREGATE3_SELECTOR + Numeric.toHexStringNoPrefix(encodeAggregate3(addresses, data));
+        return web3.getWeb3().ethCall(Transaction.createEthCallTransaction(null, multicallAddress, callData), block);
+    }
+
+    /**
+     * 节点不支持或未部署Multicall3时，改为逐个eth_call，通过一次JSON-RPC批量请求发送
+     *
+     * @param to          合约地址列表
+     * @param calls       调用列表
+     * @param block       执行的区块
+     * @param blockNumber 区块高度，可以为空
+     * @return 每个调用的结果
+     * @throws Exception 与节点交互失败
+     */
+    private Result fallback(List<String> to, List<Function> calls, DefaultBlockParameter block, BigInteger blockNumber) throws Exception {
+        log.warn("Multicall3不可用: {}，改为逐个调用", multicallAddress);
+        List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            requests.add(web3.getWeb3().ethCall(
+                    Transaction.createEthCallTransaction(null, to.get(i), FunctionEncoder.encode(calls.get(i))), block));
+        }
+        List<Response<?>> responses = web3.sendBatch(requests);
+        List<byte[]> returnData = new ArrayList<>();
+        for (Response<?> response : responses) {
+            EthCall ethCall = (EthCall) response;
+            returnData.add(ethCall.hasError() || ethCall.isReverted() ? null : Numeric.hexStringToByteArray(ethCall.getValue()));
+        }
+        return new Result(blockNumber, decode(calls, returnData));
+    }
+
+    /**
+     * 将返回数据解码为调用方的输出类型
+     *
+     * @param calls      调用列表
+     * @param returnData 每个调用的返回数据
+     * @return 每个调用的结果
+     */
+    private static List<CallResult> decode(List<Function> calls, List<byte[]> returnData) {
+        List<CallResult> results = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            Function function = calls.get(i);
+            byte[] data = returnData.get(i);
+            if (data == null) {
+                results.add(new CallResult(false, Collections.emptyList(), function.getName() + " 调用失败"));
+                continue;
+            }
+            try {
+                List<Type> values = FunctionReturnDecoder.decode(Numeric.toHexString(data), function.getOutputParameters());
+                if (values.size() < function.getOutputParameters().size()) {
+                    results.add(new CallResult(false, values, function.getName() + " 返回数据为空"));
+                } else {
+                    results.add(new CallResult(true, values, null));
+                }
+            } catch (Exception e) {
+                results.add(new CallResult(false, Collections.emptyList(), function.getName() + " 解码失败: " + e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * ABI编码aggregate3的参数 (address target, bool allowFailure, bytes callData)[]
+     *
+     * @param addresses 合约地址列表
+     * @param data      调用数据列表
+     * @return 编码后的参数(不含函数选择器)
+     */
+    private static byte[] encodeAggregate3(List<String> addresses, List<String> data) {
+        int n = addresses.size();
+        List<byte[]> tuples = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            byte[] callData = Numeric.hexStringToByteArray(data.get(i));
+            ByteArrayOutputStream tuple = new ByteArrayOutputStream();
+            writeWord(tuple, Numeric.toBigInt(addresses.get(i)));
+            // allowFailure = true
+            writeWord(tuple, BigInteger.ONE);
+            // bytes在元组中的偏移
+            writeWord(tuple, BigInteger.valueOf(96));
+            writeWord(tuple, BigInteger.valueOf(callData.length));
+            tuple.writeBytes(callData);
+            tuple.writeBytes(new byte[(32 - callData.length % 32) % 32]);
+            tuples.add(tuple.toByteArray());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // 数组的偏移
+        writeWord(out, BigInteger.valueOf(32));
+        writeWord(out, BigInteger.valueOf(n));
+        // 每个元组相对于偏移区起点的偏移
+        long offset = 32L * n;
+        for (byte[] tuple : tuples) {
+            writeWord(out, BigInteger.valueOf(offset));
+            offset += tuple.length;
+        }
+        for (byte[] tuple : tuples) {
+            out.writeBytes(tuple);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * ABI解码aggregate3的返回值 (bool success, bytes returnData)[]
+     *
+     * @param response eth_call返回结果
+     * @param expected 期望的调用数量
+     * @return 每个调用的返回数据(失败的调用为null)，Multicall3不可用返回null
+     */
+    private static List<byte[]> decodeAggregate(EthCall response, int expected) {
+        if (response.hasError() || response.getValue() == null) {
+            return null;
+        }
+        byte[] data = Numeric.hexStringToByteArray(response.getValue());
+        if (data.length < 64) {
+            return null;
+        }
+        int arrayStart = readInt(data, 0);
+        int n = readInt(data, arrayStart);
+        if (n != expected) {
+            return null;
+        }
+        int offsetsStart = arrayStart + 32;
+        List<byte[]> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int tupleStart = offsetsStart + readInt(data, offsetsStart + 32 * i);
+            boolean success = readInt(data, tupleStart) != 0;
+            int bytesStart = tupleStart + readInt(data, tupleStart + 32);
+            int length = readInt(data, bytesStart);
+            byte[] returnData = new byte[length];
+            System.arraycopy(data, bytesStart + 32, returnData, 0, length);
+            result.add(success ? returnData : null);
+        }
+        return result;
+    }
+
+    /**
+     * 写入一个32字节的字
+     *
+     * @param out   输出流
+     * @param value 数值
+     */
+    private static void writeWord(ByteArrayOutputStream out, BigInteger value) {
+        out.writeBytes(Numeric.toBytesPadded(value, 32));
+    }
+
+    /**
+     * 读取一个32字节的字并转换为int
+     *
+     * @param data   数据
+     * @param offset 偏移
+     * @return 数值
+     */
+    private static int readInt(byte[] data, int offset) {
+        byte[] word = new byte[32];
+        System.arraycopy(data, offset, word, 0, 32);
+        return new BigInteger(1, word).intValueExact();
+    }
+
+    /**
+     * 一次批量读取的结果
+     */
+    @Getter
+    public static class Result {
+
+        /**
+         * 读取时的区块高度，逐个调用且未固定区块时为null
+         */
+        private final BigInteger blockNumber;
+
+        /**
+         * 每个调用的结果，顺序与添加顺序一致
+         */
+        private final List<CallResult> results;
+
+        Result(BigInteger blockNumber, List<CallResult> results) {
+            this.blockNumber = blockNumber;
+            this.results = results;
+        }
+
+        /**
+         * 获取某个调用的返回值
+         *
+         * @param index 调用的序号
+         * @return 返回值
+         * @throws Exception 调用失败
+         */
+        public List<Type> get(int index) throws Exception {
+            CallResult result = results.get(index);
+            if (!result.isSuccess()) {
+                throw new Exception(result.getError());
+            }
+            return result.getValues();
+        }
+    }
+
+    /**
+     * 单个调用的结果
+     */
+    @Getter
+    public static class CallResult {
+
+        /**
+         * 调用是否成功
+         */
+        private final boolean success;
+
+        /**
+         * 按调用方的输出类型解码的返回值
+         */
+        private final List<Type> values;
+
+        /**
+         * 失败原因
+         */
+        private final String error;
+
+        CallResult(boolean success, List<Type> values, String error) {
+            this.success = success;
+            this.values = values;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.oxthink.web3;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthGetTransactionCount;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地维护的账户nonce
+ * 首次使用时与链上pending交易数同步一次，之后在本地原子递增分配，
+ * 未广播成功的nonce归还后优先重新分配，节点返回nonce错误或检测到nonce空洞时才重新与链上同步
+ */
+@Slf4j
+public class NonceManager {
+
+    /**
+     * 未同步的标记
+     */
+    private static final long UNSYNCED = -1;
+
+    /**
+     * 检查nonce空洞的最小间隔 单位:ms
+     */
+    private static final long GAP_CHECK_INTERVAL = 10000;
+
+    /**
+     * 所有账户的nonce管理器 key: 节点链接|账户地址
+     */
+    private static final Map<String, NonceManager> MANAGERS = new ConcurrentHashMap<>();
+
+    /**
+     * provide对象
+     */
+    private final Web3j web3;
+
+    /**
+     * 管理的账户地址
+     */
+    @Getter
+    private final String address;
+
+    /**
+     * 下一个可分配的nonce
+     */
+    private final AtomicLong nextNonce = new AtomicLong(UNSYNCED);
+
+    /**
+     * 已归还、等待重新分配的nonce
+     */
+    private final NavigableSet<Long> released = new ConcurrentSkipListSet<>();
+
+    /**
+     * 上次检查空洞的时间
+     */
+    private final AtomicLong lastGapCheck = new AtomicLong();
+
+    /**
+     * 上次检查空洞时链上的pending交易数
+     */
+    private volatile long lastPendingCount = UNSYNCED;
+
+    public NonceManager(Web3j web3, String address) {
+        this.web3 = web3;
+        this.address = address;
+    }
+
+    /**
+     * 获取某个账户的nonce管理器，同一节点上的同一账户共用一个管理器
+     *
+     * @param nodeUrl 节点链接
+     * @param web3    provide对象
+     * @param address 账户地址
+     * @return nonce管理器
+     */
+    public static NonceManager of(String nodeUrl, Web3j web3, String address) {
+        String key = nodeUrl + "|" + address.toLowerCase();
+        return MANAGERS.computeIfAbsent(key, k -> new NonceManager(web3, address));
+    }
+
+    /**
+     * 分配下一个nonce，已同步时不与节点交互
+     *
+     * @return nonce
+     * @throws IOException 与节点交互失败
+     */
+    public BigInteger acquire() throws IOException {
+        // 优先使用归还的nonce，填补空洞
+        Long reused = released.pollFirst();
+        if (reused != null) {
+            return BigInteger.valueOf(reused);
+        }
+        while (true) {
+            long current = nextNonce.get();
+            if (current == UNSYNCED) {
+                sync(fetchPendingCount());
+                continue;
+            }
+            if (nextNonce.compareAndSet(current, current + 1)) {
+                return BigInteger.valueOf(current);
+            }
+        }
+    }
+
+    /**
+     * 用链上的交易数同步本地nonce，仅在未同步时生效
+     *
+     * @param pendingCount 账户pending状态下的交易数
+     */
+    public void sync(BigInteger pendingCount) {
+        nextNonce.compareAndSet(UNSYNCED, pendingCount.longValue());
+    }
+
+    /**
+     * 本地nonce是否已经与链上同步
+     *
+     * @return 已同步返回true
+     */
+    public boolean isSynced() {
+        return nextNonce.get() != UNSYNCED;
+    }
+
+    /**
+     * 强制指定下一个分配的nonce，若小于链上交易数则取链上交易数
+     *
+     * @param nonce 下一个分配的nonce
+     * @throws IOException 与节点交互失败
+     */
+    public void set(BigInteger nonce) throws IOException {
+        released.clear();
+        nextNonce.set(nonce.max(fetchPendingCount()).longValue());
+    }
+
+    /**
+     * 归还未广播成功的nonce
+     * 若之后没有分配过新的nonce则直接回退，否则记录下来，下次分配时优先使用，
+     * 不与链上重新同步，避免其他线程已分配但还未到达节点的nonce被重复分配
+     *
+     * @param nonce 未使用的nonce
+     */
+    public void release(BigInteger nonce) {
+        long value = nonce.longValue();
+        if (!nextNonce.compareAndSet(value + 1, value)) {
+            log.info("{} nonce {} 未被使用，下次分配时优先使用", address, value);
+            released.add(value);
+        }
+    }
+
+    /**
+     * 丢弃本地nonce，下次分配前重新与链上同步，只应在节点返回nonce错误或出现空洞时使用
+     */
+    public void resync() {
+        released.clear();
+        lastPendingCount = UNSYNCED;
+        nextNonce.set(UNSYNCED);
+    }
+
+    /**
+     * 是否需要检查nonce空洞，已同步且距上次检查超过间隔时返回true，同一时间只有一个调用方会得到true
+     * 调用方在下一次与节点交互时顺带查询pending交易数，再调用checkGap
+     *
+     * @return 需要检查返回true
+     */
+    public boolean isGapCheckDue() {
+        long last = lastGapCheck.get();
+        long now = System.currentTimeMillis();
+        return isSynced() && now - last >= GAP_CHECK_INTERVAL && lastGapCheck.compareAndSet(last, now);
+    }
+
+    /**
+     * 用链上的pending交易数检查nonce空洞
+     * 本地分配的nonce领先于链上，且两次检查之间链上的pending交易数没有增长时，
+     * 说明有nonce未到达节点，之后的交易都卡在交易池中，重新与链上同步
+     *
+     * @param pendingCount 账户pending状态下的交易数
+     */
+    public void checkGap(BigInteger pendingCount) {
+        long pending = pendingCount.longValue();
+        long previous = lastPendingCount;
+        lastPendingCount = pending;
+        long next = nextNonce.get();
+        if (next == UNSYNCED || pending >= next) {
+            return;
+        }
+        if (pending == previous && !released.contains(pending)) {
+            log.warn("{} 链上pending交易数停留在{}，本地已分配到{}，nonce出现空洞，重新同步", address, pending, next - 1);
+            resync();
+        }
+    }
+
+    /**
+     * 根据节点返回的错误信息判断是否为nonce错误
+     *
+     * @param message 错误信息
+     * @return nonce过低、过高或已被交易池中的其他交易占用返回true
+     */
+    public static boolean isNonceError(String message) {
+        if (message == null) {
+            return false;
+        }
+        String lower = message.toLowerCase();
+        return lower.contains("nonce too low") || lower.contains("nonce too high")
+                || lower.contains("replacement transaction underpriced");
+    }
+
+    /**
+     * 根据节点返回的错误信息判断节点是否已持有同一笔交易，此时交易已广播，不是nonce错误
+     *
+     * @param message 错误信息
+     * @return 节点已收到这笔交易返回true
+     */
+    public static boolean isAlreadyKnown(String message) {
+        return message != null && message.toLowerCase().contains("already known");
+    }
+
+    /**
+     * 查询账户pending状态下的交易数
+     *
+     * @return 交易数
+     * @throws IOException 与节点交互失败
+     */
+    private BigInteger fetchPendingCount() throws IOException {
+        EthGetTransactionCount ethGetTransactionCount = web3.ethGetTransactionCount(
+                address, DefaultBlockParameterName.PENDING).send();
+        if (ethGetTransactionCount.hasError()) {
+            throw new IOException("error: " + ethGetTransactionCount.getError().getMessage());
+        }
+        return ethGetTransactionCount.getTransactionCount();
+    }
+}
@@ -0,0 +1,200 @@
+package com.oxthink.web3;
+
+import org.bouncycastle.crypto.digests.KeccakDigest;
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * 本地计算Uniswap V2 pair地址
+ * pair由工厂合约通过CREATE2部署，地址 = keccak256(0xff ++ factory ++ keccak256(token0 ++ token1) ++ initCodeHash)[12:]
+ * 只依赖工厂地址、排序后的两种代币和pair合约的init code hash，不需要与节点交互
+ */
+public class PairAddressUtil {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 批量计算时超过这个数量使用多线程
+     */
+    private static final int PARALLEL_THRESHOLD = 10000;
+
+    /**
+     * 每个线程复用的哈希对象和缓冲区，批量计算时不产生额外对象
+     */
+    private static final ThreadLocal<Hasher> HASHER = ThreadLocal.withInitial(Hasher::new);
+
+    private PairAddressUtil() {
+    }
+
+    /**
+     * 计算pair地址
+     *
+     * @param factory      工厂地址
+     * @param initCodeHash pair合约的init code hash
+     * @param tokenA       代币地址
+     * @param tokenB       代币地址
+     * @return pair地址(小写)
+     */
+    public static String computePairAddress(String factory, String initCodeHash, String tokenA, String tokenB) {
+        Hasher hasher = HASHER.get();
+        hasher.init(Numeric.hexStringToByteArray(factory), Numeric.hexStringToByteArray(initCodeHash));
+        return hasher.compute(Numeric.hexStringToByteArray(tokenA), Numeric.hexStringToByteArray(tokenB));
+    }
+
+    /**
+     * 批量计算同一个工厂下的pair地址
+     *
+     * @param factory      工厂地址
+     * @param initCodeHash pair合约的init code hash
+     * @param tokensA      代币地址
+     * @param tokensB      代币地址，与tokensA一一对应
+     * @return pair地址(小写)，顺序与输入一致
+     */
+    public static List<String> computePairAddresses(String factory, String initCodeHash, List<String> tokensA, List<String> tokensB) {
+        if (tokensA.size() != tokensB.size()) {
+            throw new IllegalArgumentException("tokensA和tokensB的数量不一致");
+        }
+        byte[] factoryBytes = Numeric.hexStringToByteArray(factory);
+        byte[] initCodeHashBytes = Numeric.hexStringToByteArray(initCodeHash);
+        String[] result = new String[tokensA.size()];
+        IntStream range = IntStream.range(0, result.length);
+        // 数量较多时分给多个线程计算，每个线程使用自己的哈希对象
+        if (result.length >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(i -> {
+            Hasher hasher = HASHER.get();
+            hasher.init(factoryBytes, initCodeHashBytes);
+            result[i] = hasher.compute(Numeric.hexStringToByteArray(tokensA.get(i)), Numeric.hexStringToByteArray(tokensB.get(i)));
+        });
+        return Arrays.asList(result);
+    }
+
+    /**
+     * 计算一个代币与多个代币组成的pair地址，eg: 扫描某个代币在常用中间币上的所有pair
+     *
+     * @param factory      工厂地址
+     * @param initCodeHash pair合约的init code hash
+     * @param token        代币地址
+     * @param others       另一种代币地址
+     * @return pair地址(小写)，顺序与others一致
+     */
+    public static List<String> computePairAddresses(String factory, String initCodeHash, String token, List<String> others) {
+        return computePairAddresses(factory, initCodeHash, Collections.nCopies(others.size(), token), others);
+    }
+
+    /**
+     * 计算Uniswap V3 pool地址，与V2的区别在于salt = keccak256(abi.encode(token0, token1, fee))
+     *
+     * @param factory      工厂地址
+     * @param initCodeHash pool合约的init code hash
+     * @param tokenA       代币地址
+     * @param tokenB       代币地址
+     * @param fee          手续费等级，eg: 500、3000
+     * @return pool地址(小写)
+     */
+    public static String computePoolAddress(String factory, String initCodeHash, String tokenA, String tokenB, int fee) {
+        String[] tokens = sortTokens(tokenA, tokenB);
+        byte[] salt = new byte[96];
+        System.arraycopy(Numeric.hexStringToByteArray(tokens[0]), 0, salt, 12, 20);
+        System.arraycopy(Numeric.hexStringToByteArray(tokens[1]), 0, salt, 44, 20);
+        salt[93] = (byte) (fee >>> 16);
+        salt[94] = (byte) (fee >>> 8);
+        salt[95] = (byte) fee;
+        byte[] create2 = new byte[85];
+        create2[0] = (byte) 0xff;
+        System.arraycopy(Numeric.hexStringToByteArray(factory), 0, create2, 1, 20);
+        System.arraycopy(Hash.sha3(salt), 0, create2, 21, 32);
+        System.arraycopy(Numeric.hexStringToByteArray(initCodeHash), 0, create2, 53, 32);
+        byte[] hash = Hash.sha3(create2);
+        return Numeric.toHexString(hash, 12, 20, true);
+    }
+
+    /**
+     * 按地址大小排序两种代币，返回值的第一个为token0
+     *
+     * @param tokenA 代币地址
+     * @param tokenB 代币地址
+     * @return [token0, token1]
+     */
+    public static String[] sortTokens(String tokenA, String tokenB) {
+        return tokenA.toLowerCase().compareTo(tokenB.toLowerCase()) < 0
+                ? new String[]{tokenA, tokenB} : new String[]{tokenB, tokenA};
+    }
+
+    /**
+     * 计算pair地址的哈希对象，factory和initCodeHash固定后可以重复计算
+     */
+    private static class Hasher {
+
+        private final KeccakDigest digest = new KeccakDigest(256);
+
+        /**
+         * 0xff ++ factory(20) ++ salt(32) ++ initCodeHash(32)
+         */
+        private final byte[] create2 = new byte[85];
+
+        /**
+         * token0(20) ++ token1(20)
+         */
+        private final byte[] tokens = new byte[40];
+
+        private final byte[] hash = new byte[32];
+
+        private final char[] address = new char[42];
+
+        private byte[] factory;
+
+        private byte[] initCodeHash;
+
+        private void init(byte[] factory, byte[] initCodeHash) {
+            if (this.factory == factory && this.initCodeHash == initCodeHash) {
+                return;
+            }
+            if (factory.length != 20 || initCodeHash.length != 32) {
+                throw new IllegalArgumentException("工厂地址或init code hash格式错误");
+            }
+            this.factory = factory;
+            this.initCodeHash = initCodeHash;
+            create2[0] = (byte) 0xff;
+            System.arraycopy(factory, 0, create2, 1, 20);
+            System.arraycopy(initCodeHash, 0, create2, 53, 32);
+            address[0] = '0';
+            address[1] = 'x';
+        }
+
+        private String compute(byte[] tokenA, byte[] tokenB) {
+            if (tokenA.length != 20 || tokenB.length != 20) {
+                throw new IllegalArgumentException("代币地址格式错误");
+            }
+            boolean aFirst = compare(tokenA, tokenB) < 0;
+            System.arraycopy(aFirst ? tokenA : tokenB, 0, tokens, 0, 20);
+            System.arraycopy(aFirst ? tokenB : tokenA, 0, tokens, 20, 20);
+            digest.update(tokens, 0, tokens.length);
+            digest.doFinal(create2, 21);
+            digest.update(create2, 0, create2.length);
+            digest.doFinal(hash, 0);
+            for (int i = 0; i < 20; i++) {
+                int b = hash[12 + i] & 0xff;
+                address[2 + 2 * i] = HEX[b >>> 4];
+                address[3 + 2 * i] = HEX[b & 0x0f];
+            }
+            return new String(address);
+        }
+
+        private static int compare(byte[] a, byte[] b) {
+            for (int i = 0; i < a.length; i++) {
+                int diff = (a[i] & 0xff) - (b[i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        }
+    }
+}
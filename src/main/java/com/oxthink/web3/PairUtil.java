@@ -5,17 +5,21 @@ import org.web3j.abi.TypeReference;
 import org.web3j.abi.datatypes.Address;
 import org.web3j.abi.datatypes.Type;
 import org.web3j.abi.datatypes.generated.Uint112;
+import org.web3j.abi.datatypes.generated.Uint256;
 import org.web3j.abi.datatypes.generated.Uint32;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class PairUtil {
 
     private final Web3jUtil web3;
 
+    private final MetadataCache metadataCache = MetadataCache.getInstance();
+
     private final TokenUtil tokenUtil;
 
     public PairUtil(Web3jUtil web3jUtil) {
@@ -42,6 +46,15 @@ public class PairUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public Map<String, BigInteger> getPairReserves(String pairAddress) throws Exception {
+        // pair在存储量镜像中时直接读取本地数据
+        ReserveMirror mirror = web3.getReserveMirror();
+        ReserveCache.Reserves reserves = mirror.isLive() ? mirror.getReserves(pairAddress) : null;
+        if (reserves != null) {
+            Map<String, BigInteger> info = new HashMap<>(4);
+            info.put("token0", reserves.getReserve0());
+            info.put("token1", reserves.getReserve1());
+            return info;
+        }
         List<TypeReference<?>> output = Arrays.asList(new TypeReference<Uint112>() {
         }, new TypeReference<Uint112>() {
         }, new TypeReference<Uint32>() {
@@ -53,6 +66,15 @@ public class PairUtil {
         return info;
     }
 
+    /**
+     * 注册到存储量镜像，之后通过Sync事件同步pair的存储量
+     *
+     * @param pairAddresses pair地址
+     */
+    public void mirrorReserves(String... pairAddresses) {
+        web3.getReserveMirror().register(pairAddresses);
+    }
+
     /**
      * 获取Token0地址
      *
@@ -61,11 +83,13 @@ public class PairUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public String getToken0(String pairAddress) throws Exception {
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+        return metadataCache.get(web3, pairAddress, "token0", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+            });
+            List<Type> result = web3.readContract(pairAddress, "token0", new ArrayList<>(), output);
+            Address token0 = (Address) result.get(0);
+            return token0.getValue();
         });
-        List<Type> result = web3.readContract(pairAddress, "token0", new ArrayList<>(), output);
-        Address token0 = (Address) result.get(0);
-        return token0.getValue();
     }
 
     /**
@@ -76,11 +100,13 @@ public class PairUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public String getToken1(String pairAddress) throws Exception {
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+        return metadataCache.get(web3, pairAddress, "token1", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+            });
+            List<Type> result = web3.readContract(pairAddress, "token1", new ArrayList<>(), output);
+            Address token0 = (Address) result.get(0);
+            return token0.getValue();
         });
-        List<Type> result = web3.readContract(pairAddress, "token1", new ArrayList<>(), output);
-        Address token0 = (Address) result.get(0);
-        return token0.getValue();
     }
 
 
@@ -93,10 +119,20 @@ public class PairUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public Map<String, BigInteger> getTwoTokenAmount(String pairAddress, BigInteger pairAmount) throws Exception {
-        Map<String, BigInteger> map = getPairReserves(pairAddress);
-        BigDecimal factor = new BigDecimal(pairAmount).divide(new BigDecimal(tokenUtil.getTotalSupply(pairAddress)), 18, RoundingMode.FLOOR);
-        BigInteger token0Amount = factor.multiply(new BigDecimal(map.get("token0"))).toBigInteger();
-        BigInteger token1Amount = factor.multiply(new BigDecimal(map.get("token1"))).toBigInteger();
+        // 存储量和总供应量在同一个区块中读取
+        MulticallUtil multicall = new MulticallUtil(web3);
+        multicall.addCall(pairAddress, "getReserves", new ArrayList<>(), Arrays.asList(new TypeReference<Uint112>() {
+        }, new TypeReference<Uint112>() {
+        }, new TypeReference<Uint32>() {
+        }));
+        multicall.addCall(pairAddress, "totalSupply", new ArrayList<>(), Collections.singletonList(new TypeReference<Uint256>() {
+        }));
+        MulticallUtil.Result result = multicall.execute();
+        List<Type> reserves = result.get(0);
+        BigInteger totalSupply = (BigInteger) result.get(1).get(0).getValue();
+        BigDecimal factor = new BigDecimal(pairAmount).divide(new BigDecimal(totalSupply), 18, RoundingMode.FLOOR);
+        BigInteger token0Amount = factor.multiply(new BigDecimal((BigInteger) reserves.get(0).getValue())).toBigInteger();
+        BigInteger token1Amount = factor.multiply(new BigDecimal((BigInteger) reserves.get(1).getValue())).toBigInteger();
         Map<String, BigInteger> info = new HashMap<>(4);
         info.put("token0Amount", token0Amount);
         info.put("token1Amount", token1Amount);
@@ -111,11 +147,13 @@ public class PairUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public String getPairFactory(String pairAddress) throws Exception {
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+        return metadataCache.get(web3, pairAddress, "factory", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+            });
+            List<Type> result = web3.readContract(pairAddress, "factory", new ArrayList<>(), output);
+            Address token0 = (Address) result.get(0);
+            return token0.getValue();
         });
-        List<Type> result = web3.readContract(pairAddress, "factory", new ArrayList<>(), output);
-        Address token0 = (Address) result.get(0);
-        return token0.getValue();
     }
 
     /**
@@ -135,4 +173,71 @@ public class PairUtil {
         return lp.getValue();
     }
 
+    /**
+     * 异步获取LPPair中两种代币的存储量
+     *
+     * @param pairAddress Pair地址
+     * @return token0: token0数量，单位wei
+     * token1: token1数量，单位wei
+     */
+    public CompletableFuture<Map<String, BigInteger>> getPairReservesAsync(String pairAddress) {
+        List<TypeReference<?>> output = Arrays.asList(new TypeReference<Uint112>() {
+        }, new TypeReference<Uint112>() {
+        }, new TypeReference<Uint32>() {
+        });
+        return web3.readContractAsync(pairAddress, "getReserves", new ArrayList<>(), output)
+                .thenApply(result -> {
+                    Map<String, BigInteger> info = new HashMap<>(4);
+                    info.put("token0", (BigInteger) result.get(0).getValue());
+                    info.put("token1", (BigInteger) result.get(1).getValue());
+                    return info;
+                });
+    }
+
+    /**
+     * 异步获取Token0地址
+     *
+     * @param pairAddress Pair地址
+     * @return Token0地址
+     */
+    public CompletableFuture<String> getToken0Async(String pairAddress) {
+        return metadataCache.getAsync(web3, pairAddress, "token0", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+            });
+            return web3.readContractAsync(pairAddress, "token0", new ArrayList<>(), output)
+                    .thenApply(result -> ((Address) result.get(0)).getValue());
+        });
+    }
+
+    /**
+     * 异步获取Token1地址
+     *
+     * @param pairAddress Pair地址
+     * @return Token1地址
+     */
+    public CompletableFuture<String> getToken1Async(String pairAddress) {
+        return metadataCache.getAsync(web3, pairAddress, "token1", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+            });
+            return web3.readContractAsync(pairAddress, "token1", new ArrayList<>(), output)
+                    .thenApply(result -> ((Address) result.get(0)).getValue());
+        });
+    }
+
+    /**
+     * 异步获取两种Token组合成的Pair地址
+     *
+     * @param factory pair工厂地址
+     * @param token0  token0
+     * @param token1  token1
+     * @return Pair地址
+     */
+    public CompletableFuture<String> getPairAsync(String factory, String token0, String token1) {
+        List<Type> input = Arrays.asList(new Address(token0), new Address(token1));
+        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
+        });
+        return web3.readContractAsync(factory, "getPair", input, output)
+                .thenApply(result -> ((Address) result.get(0)).getValue());
+    }
+
 }
@@ -0,0 +1,297 @@
+package com.oxthink.web3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
+import org.web3j.protocol.core.methods.response.EthTransaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网络共用的交易回执监听器
+ * 每出一个新区块，用一次批量请求查询所有等待中的交易回执，结果通过CompletableFuture返回
+ * 交易所在区块达到确认数后才认为交易完成，被回滚的回执会继续等待
+ */
+@Slf4j
+public class ReceiptWatcher {
+
+    /**
+     * 所有节点的回执监听器 key: 节点链接
+     */
+    private static final Map<String, ReceiptWatcher> WATCHERS = new ConcurrentHashMap<>();
+
+    /**
+     * 一次批量请求中最多查询的回执数量
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * 用于发送批量请求
+     */
+    private final Web3jUtil web3;
+
+    /**
+     * 等待中的交易 hash -> 等待信息
+     */
+    private final Map<String, Watch> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 需要的确认数，0表示交易被打包即完成
+     */
+    private volatile int confirmations = 0;
+
+    /**
+     * 检查新区块的间隔 单位:ms
+     */
+    private volatile long intervalMillis = 1000;
+
+    /**
+     * 上一次查询回执时的区块高度
+     */
+    private BigInteger lastBlock = BigInteger.valueOf(-1);
+
+    /**
+     * 后台轮询线程
+     */
+    private ScheduledExecutorService scheduler;
+
+    public ReceiptWatcher(Web3jUtil web3) {
+        this.web3 = web3;
+    }
+
+    /**
+     * 获取某个节点的回执监听器，同一节点共用一个
+     *
+     * @param web3 web3对象
+     * @return 回执监听器
+     */
+    public static ReceiptWatcher of(Web3jUtil web3) {
+        return WATCHERS.computeIfAbsent(web3.getNodeUrl(), k -> new ReceiptWatcher(web3));
+    }
+
+    /**
+     * 设置需要的确认数
+     *
+     * @param confirmations 确认数，0表示交易被打包即完成
+     */
+    public void setConfirmations(int confirmations) {
+        this.confirmations = confirmations;
+    }
+
+    /**
+     * 设置检查新区块的间隔，建议与出块时间一致，重启后生效
+     *
+     * @param intervalMillis 间隔 单位:ms
+     */
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * 监听交易回执
+     *
+     * @param hash 交易hash
+     * @return 达到确认数后完成的回执
+     */
+    public CompletableFuture<TransactionReceipt> watch(String hash) {
+        return watch(hash, Long.MAX_VALUE);
+    }
+
+    /**
+     * 监听交易回执，超时后不再等待
+     *
+     * @param hash          交易hash
+     * @param timeoutMillis 最大等待时间 单位:ms
+     * @return 达到确认数后完成的回执，超时则以TimeoutException结束
+     */
+    public CompletableFuture<TransactionReceipt> watch(String hash, long timeoutMillis) {
+        start();
+        long now = System.currentTimeMillis();
+        long deadline = timeoutMillis >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeoutMillis;
+        Watch watch = pending.compute(hash, (k, old) -> {
+            if (old == null) {
+                return new Watch(deadline);
+            }
+            // 多个等待者时，以最晚的超时时间为准
+            old.deadline = Math.max(old.deadline, deadline);
+            return old;
+        });
+        // 每个等待者有自己的超时，不影响其他等待者
+        CompletableFuture<TransactionReceipt> future = watch.future.copy();
+        if (deadline != Long.MAX_VALUE) {
+            future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * 等待中的交易数量
+     *
+     * @return 交易数量
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 找出已被节点丢弃的交易，用于判断等待超时的交易能否安全重发
+     * 仍在交易池中或查询失败的交易不算丢弃，重发会导致交易重复执行
+     *
+     * @param hashes 交易hash
+     * @return 节点已查询不到的交易hash
+     */
+    public List<String> getDropped(List<String> hashes) {
+        List<String> dropped = new ArrayList<>();
+        for (int from = 0; from < hashes.size(); from += BATCH_SIZE) {
+            List<String> chunk = hashes.subList(from, Math.min(from + BATCH_SIZE, hashes.size()));
+            List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+            for (String hash : chunk) {
+                requests.add(web3.getWeb3().ethGetTransactionByHash(hash));
+            }
+            try {
+                List<Response<?>> responses = web3.sendBatch(requests);
+                for (int i = 0; i < chunk.size(); i++) {
+                    EthTransaction response = (EthTransaction) responses.get(i);
+                    if (!response.hasError() && !response.getTransaction().isPresent()) {
+                        dropped.add(chunk.get(i));
+                    }
+                }
+            } catch (IOException e) {
+                log.info("查询交易是否被丢弃失败: " + e.getMessage());
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * 启动后台轮询
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "receipt-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (Exception e) {
+                log.warn("查询交易回执失败: {}", e.getMessage());
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台轮询
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 出现新区块时批量查询所有等待中的回执
+     *
+     * @throws IOException 与节点交互失败
+     */
+    private void poll() throws IOException {
+        // 清理所有等待者都已超时的交易
+        long now = System.currentTimeMillis();
+        pending.values().removeIf(watch -> watch.future.isDone() || now > watch.deadline);
+        if (pending.isEmpty()) {
+            return;
+        }
+        EthBlockNumber blockNumber = web3.getWeb3().ethBlockNumber().send();
+        if (blockNumber.hasError()) {
+            throw new IOException("error: " + blockNumber.getError().getMessage());
+        }
+        BigInteger currentBlock = blockNumber.getBlockNumber();
+        if (currentBlock.compareTo(lastBlock) <= 0) {
+            return;
+        }
+        List<String> hashes = new ArrayList<>(pending.keySet());
+        boolean failed = false;
+        for (int from = 0; from < hashes.size(); from += BATCH_SIZE) {
+            List<String> chunk = hashes.subList(from, Math.min(from + BATCH_SIZE, hashes.size()));
+            List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+            for (String hash : chunk) {
+                requests.add(web3.getWeb3().ethGetTransactionReceipt(hash));
+            }
+            List<Response<?>> responses = web3.sendBatch(requests);
+            for (int i = 0; i < chunk.size(); i++) {
+                EthGetTransactionReceipt response = (EthGetTransactionReceipt) responses.get(i);
+                if (response.hasError()) {
+                    failed = true;
+                    continue;
+                }
+                Optional<TransactionReceipt> receipt = response.getTransactionReceipt();
+                if (receipt.isPresent() && isConfirmed(receipt.get(), currentBlock)) {
+                    complete(chunk.get(i), receipt.get());
+                }
+            }
+        }
+        // 所有回执都查询成功后才记录区块高度，查询失败时下次轮询重新查询，不必等到下一个区块
+        if (!failed) {
+            lastBlock = currentBlock;
+        }
+    }
+
+    /**
+     * 回执所在区块是否达到确认数
+     *
+     * @param receipt      交易回执
+     * @param currentBlock 当前区块高度
+     * @return 达到确认数返回true
+     */
+    private boolean isConfirmed(TransactionReceipt receipt, BigInteger currentBlock) {
+        if (receipt.getBlockNumberRaw() == null) {
+            return false;
+        }
+        BigInteger depth = currentBlock.subtract(receipt.getBlockNumber());
+        return depth.compareTo(BigInteger.valueOf(confirmations)) >= 0;
+    }
+
+    /**
+     * 交易完成，通知等待者
+     *
+     * @param hash    交易hash
+     * @param receipt 交易回执
+     */
+    private void complete(String hash, TransactionReceipt receipt) {
+        web3.getGasLimitCache().onReceipt(receipt);
+        Watch watch = pending.remove(hash);
+        if (watch != null) {
+            watch.future.complete(receipt);
+        }
+    }
+
+    /**
+     * 一笔交易的等待信息
+     */
+    private static class Watch {
+        private final CompletableFuture<TransactionReceipt> future = new CompletableFuture<>();
+        private volatile long deadline;
+
+        private Watch(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.oxthink.web3;
+
+import lombok.Getter;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uniswap V2 pair存储量缓存
+ * 记录每个pair的存储量和读取时的区块高度，供本地报价使用，超过有效期的数据视为过期
+ * 节点上启动了存储量镜像时，镜像中的pair直接使用镜像的数据
+ */
+public class ReserveCache {
+
+    /**
+     * 所有节点的存储量缓存 key: 节点链接
+     */
+    private static final Map<String, ReserveCache> CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * pair地址(小写) -> 存储量
+     */
+    private final Map<String, Reserves> reserves = new ConcurrentHashMap<>();
+
+    /**
+     * 有效期 单位:ms
+     */
+    private volatile long maxAgeMillis = 3000;
+
+    /**
+     * 存储量镜像，正常同步时优先使用镜像中的数据
+     */
+    private volatile ReserveMirror mirror;
+
+    /**
+     * 获取某个节点的存储量缓存，同一节点共用一个
+     *
+     * @param nodeUrl 节点链接
+     * @return 存储量缓存
+     */
+    public static ReserveCache of(String nodeUrl) {
+        return CACHES.computeIfAbsent(nodeUrl, k -> new ReserveCache());
+    }
+
+    /**
+     * 设置有效期，建议与出块时间一致
+     *
+     * @param maxAgeMillis 有效期 单位:ms
+     */
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * 设置存储量镜像
+     *
+     * @param mirror 存储量镜像
+     */
+    void setMirror(ReserveMirror mirror) {
+        this.mirror = mirror;
+    }
+
+    /**
+     * 获取pair的存储量
+     *
+     * @param pairAddress pair地址
+     * @return 存储量，没有缓存返回null
+     */
+    public Reserves get(String pairAddress) {
+        Reserves mirrored = getMirrored(pairAddress);
+        return mirrored != null ? mirrored : reserves.get(pairAddress.toLowerCase());
+    }
+
+    /**
+     * 获取未过期的存储量
+     *
+     * @param pairAddress pair地址
+     * @return 存储量，没有缓存或已过期返回null
+     */
+    public Reserves getFresh(String pairAddress) {
+        // 镜像正常同步时，数据一直是最新的
+        Reserves mirrored = getMirrored(pairAddress);
+        if (mirrored != null) {
+            return mirrored;
+        }
+        Reserves value = reserves.get(pairAddress.toLowerCase());
+        if (value == null || System.currentTimeMillis() - value.updateTime > maxAgeMillis) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * 更新pair的存储量，区块高度低于缓存时忽略
+     *
+     * @param pairAddress pair地址
+     * @param reserve0    token0存储量
+     * @param reserve1    token1存储量
+     * @param blockNumber 读取时的区块高度
+     */
+    public void put(String pairAddress, BigInteger reserve0, BigInteger reserve1, BigInteger blockNumber) {
+        Reserves value = new Reserves(reserve0, reserve1, blockNumber, System.currentTimeMillis());
+        reserves.merge(pairAddress.toLowerCase(), value, (old, now) ->
+                old.blockNumber != null && now.blockNumber != null && old.blockNumber.compareTo(now.blockNumber) > 0 ? old : now);
+    }
+
+    /**
+     * 删除pair的存储量
+     *
+     * @param pairAddress pair地址
+     */
+    public void remove(String pairAddress) {
+        reserves.remove(pairAddress.toLowerCase());
+    }
+
+    /**
+     * 镜像中的存储量，区块高度为镜像已同步到的区块，即数据有效的区块，而不是存储量最后一次变化的区块
+     */
+    private Reserves getMirrored(String pairAddress) {
+        ReserveMirror current = mirror;
+        if (current == null || !current.isLive()) {
+            return null;
+        }
+        // 先读区块高度，存储量只会比它新
+        BigInteger blockNumber = current.getBlockNumber();
+        Reserves value = current.getReserves(pairAddress);
+        if (value == null) {
+            return null;
+        }
+        return new Reserves(value.reserve0, value.reserve1, blockNumber, value.updateTime);
+    }
+
+    /**
+     * 某个时刻的pair存储量
+     */
+    @Getter
+    public static class Reserves {
+
+        private final BigInteger reserve0;
+
+        private final BigInteger reserve1;
+
+        /**
+         * 数据有效的区块高度，即读取时的区块高度
+         */
+        private final BigInteger blockNumber;
+
+        /**
+         * 本地更新时间 单位:ms
+         */
+        private final long updateTime;
+
+        public Reserves(BigInteger reserve0, BigInteger reserve1, BigInteger blockNumber, long updateTime) {
+            this.reserve0 = reserve0;
+            this.reserve1 = reserve1;
+            this.blockNumber = blockNumber;
+            this.updateTime = updateTime;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.oxthink.web3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.generated.Uint112;
+import org.web3j.abi.datatypes.generated.Uint32;
+import org.web3j.crypto.Hash;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * pair存储量镜像
+ * 对注册的pair先在已确认的区块上读取一次存储量，之后每出一个新区块通过eth_getLogs拉取Sync事件增量更新，
+ * 读取时直接返回本地数据并带有区块高度
+ * 未达到确认数的更新按区块保存，检测到区块重组时从最后确认的状态重新拉取，在另一份数据上重建完成后整体替换
+ * 新注册的pair只拉取自己的事件，不影响已同步的pair
+ */
+@Slf4j
+public class ReserveMirror {
+
+    /**
+     * 所有节点的存储量镜像 key: 节点链接
+     */
+    private static final Map<String, ReserveMirror> MIRRORS = new ConcurrentHashMap<>();
+
+    /**
+     * Sync(uint112,uint112)事件的topic
+     */
+    public static final String SYNC_TOPIC = Hash.sha3String("Sync(uint112,uint112)");
+
+    /**
+     * 一次eth_getLogs中最多包含的地址数量
+     */
+    private static final int ADDRESS_BATCH_SIZE = 500;
+
+    private final Web3jUtil web3;
+
+    /**
+     * 已同步的pair(小写)
+     */
+    private final Set<String> pairs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 新注册，等待读取初始存储量的pair(小写)
+     */
+    private final Set<String> newPairs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已确认区块上的存储量
+     */
+    private final Map<String, ReserveCache.Reserves> confirmed = new HashMap<>();
+
+    /**
+     * 未确认的更新 区块高度 -> (pair -> 存储量)
+     */
+    private TreeMap<BigInteger, Map<String, ReserveCache.Reserves>> unconfirmed = new TreeMap<>();
+
+    /**
+     * 当前的存储量，即已确认的存储量加上未确认的更新，重组后整体替换
+     */
+    private volatile Map<String, ReserveCache.Reserves> current = new ConcurrentHashMap<>();
+
+    /**
+     * 已确认的区块高度
+     */
+    private BigInteger confirmedBlock;
+
+    /**
+     * 已处理的区块高度和hash，用于检测区块重组
+     */
+    private volatile BigInteger lastBlock;
+
+    private String lastBlockHash;
+
+    /**
+     * 最后一次同步成功的时间 单位:ms
+     */
+    private volatile long lastSyncTime;
+
+    /**
+     * 检测到重组后还未重建完成，此时当前的存储量不可用
+     */
+    private volatile boolean stale;
+
+    /**
+     * 确认数，回滚最多回到当前区块之前这么多个区块
+     */
+    private volatile int confirmations = 12;
+
+    /**
+     * 检查新区块的间隔 单位:ms
+     */
+    private volatile long intervalMillis = 1000;
+
+    /**
+     * 一次eth_getLogs最多查询的区块数量
+     */
+    private volatile int maxBlockRange = 1000;
+
+    /**
+     * 后台轮询线程
+     */
+    private ScheduledExecutorService scheduler;
+
+    public ReserveMirror(Web3jUtil web3) {
+        this.web3 = web3;
+    }
+
+    /**
+     * 获取某个节点的存储量镜像，同一节点共用一个
+     *
+     * @param web3 web3对象
+     * @return 存储量镜像
+     */
+    public static ReserveMirror of(Web3jUtil web3) {
+        return MIRRORS.computeIfAbsent(web3.getNodeUrl(), k -> {
+            ReserveMirror mirror = new ReserveMirror(web3);
+            web3.getReserveCache().setMirror(mirror);
+            return mirror;
+        });
+    }
+
+    /**
+     * 设置确认数，重组深度超过确认数时无法正确回滚
+     *
+     * @param confirmations 确认数
+     */
+    public void setConfirmations(int confirmations) {
+        this.confirmations = confirmations;
+    }
+
+    /**
+     * 设置检查新区块的间隔，建议与出块时间一致，重启后生效
+     *
+     * @param intervalMillis 间隔 单位:ms
+     */
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * 设置一次eth_getLogs最多查询的区块数量，需要小于节点的限制
+     *
+     * @param maxBlockRange 区块数量
+     */
+    public void setMaxBlockRange(int maxBlockRange) {
+        this.maxBlockRange = maxBlockRange;
+    }
+
+    /**
+     * 注册需要同步的pair，并启动后台同步
+     *
+     * @param pairAddresses pair地址
+     */
+    public void register(Collection<String> pairAddresses) {
+        for (String pair : pairAddresses) {
+            String key = pair.toLowerCase();
+            if (!pairs.contains(key)) {
+                newPairs.add(key);
+            }
+        }
+        start();
+    }
+
+    /**
+     * 注册需要同步的pair，并启动后台同步
+     *
+     * @param pairAddresses pair地址
+     */
+    public void register(String... pairAddresses) {
+        register(Arrays.asList(pairAddresses));
+    }
+
+    /**
+     * 取消同步某个pair
+     *
+     * @param pairAddress pair地址
+     */
+    public synchronized void unregister(String pairAddress) {
+        String key = pairAddress.toLowerCase();
+        pairs.remove(key);
+        newPairs.remove(key);
+        confirmed.remove(key);
+        current.remove(key);
+        for (Map<String, ReserveCache.Reserves> updates : unconfirmed.values()) {
+            updates.remove(key);
+        }
+    }
+
+    /**
+     * 获取pair当前的存储量
+     *
+     * @param pairAddress pair地址
+     * @return 存储量和最后一次变化的区块高度，未注册或未同步完成返回null
+     */
+    public ReserveCache.Reserves getReserves(String pairAddress) {
+        return current.get(pairAddress.toLowerCase());
+    }
+
+    /**
+     * 获取已同步到的区块高度
+     *
+     * @return 区块高度，未同步返回null
+     */
+    public BigInteger getBlockNumber() {
+        return lastBlock;
+    }
+
+    /**
+     * 镜像是否在正常同步，最近几个轮询周期内同步成功过
+     *
+     * @return 正常同步返回true
+     */
+    public boolean isLive() {
+        return !stale && lastBlock != null && System.currentTimeMillis() - lastSyncTime <= 3 * intervalMillis;
+    }
+
+    /**
+     * 是否在同步某个pair
+     *
+     * @param pairAddress pair地址
+     * @return 同步中返回true
+     */
+    public boolean contains(String pairAddress) {
+        return pairs.contains(pairAddress.toLowerCase());
+    }
+
+    /**
+     * 启动后台同步
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "reserve-mirror");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (Exception e) {
+                log.warn("同步pair存储量失败: {}", e.getMessage());
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台同步
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 同步到最新区块
+     *
+     * @throws Exception 与节点交互失败
+     */
+    public synchronized void sync() throws Exception {
+        // 一次批量请求同时获取最新区块和已处理区块的hash
+        List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+        requests.add(web3.getWeb3().ethGetBlockByNumber(DefaultBlockParameterName.LATEST, false));
+        if (lastBlock != null) {
+            requests.add(web3.getWeb3().ethGetBlockByNumber(DefaultBlockParameter.valueOf(lastBlock), false));
+        }
+        List<Response<?>> responses = web3.sendBatch(requests);
+        EthBlock.Block head = getBlock(responses.get(0));
+        if (head == null) {
+            throw new IOException("error: 获取最新区块失败");
+        }
+        BigInteger headNumber = head.getNumber();
+        if (lastBlock == null) {
+            confirmedBlock = headNumber.subtract(BigInteger.valueOf(confirmations)).max(BigInteger.ZERO);
+            lastBlock = confirmedBlock;
+        } else {
+            EthBlock.Block last = getBlock(responses.get(1));
+            if (stale || lastBlockHash != null && (last == null || !lastBlockHash.equals(last.getHash()))) {
+                log.warn("区块{}发生重组，从已确认区块{}重新同步", lastBlock, confirmedBlock);
+                // 重建完成前不再对外提供数据，重建失败时下次同步继续
+                stale = true;
+                rebuild(head);
+                stale = false;
+            }
+        }
+        if (!newPairs.isEmpty()) {
+            addNewPairs();
+        }
+        if (headNumber.compareTo(lastBlock) > 0) {
+            applyLogs(fetchLogs(pairs, lastBlock.add(BigInteger.ONE), headNumber), unconfirmed, current);
+            lastBlock = headNumber;
+            lastBlockHash = head.getHash();
+            confirm(headNumber.subtract(BigInteger.valueOf(confirmations)));
+        }
+        lastSyncTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 在已确认区块上读取新pair的初始存储量，再只拉取这些pair从已确认区块到已处理区块的事件
+     * 全部成功后才加入同步，失败时下次同步重试
+     */
+    private void addNewPairs() throws Exception {
+        List<String> list = new ArrayList<>(newPairs);
+        MulticallUtil multicall = new MulticallUtil(web3);
+        for (String pair : list) {
+            multicall.addCall(pair, "getReserves", new ArrayList<>(), Arrays.asList(new TypeReference<Uint112>() {
+            }, new TypeReference<Uint112>() {
+            }, new TypeReference<Uint32>() {
+            }));
+        }
+        MulticallUtil.Result result = multicall.execute(confirmedBlock);
+        long now = System.currentTimeMillis();
+        Map<String, ReserveCache.Reserves> initial = new HashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            MulticallUtil.CallResult callResult = result.getResults().get(i);
+            String pair = list.get(i);
+            if (!callResult.isSuccess()) {
+                log.warn("{} 不是有效的pair: {}", pair, callResult.getError());
+                newPairs.remove(pair);
+                continue;
+            }
+            initial.put(pair, new ReserveCache.Reserves((BigInteger) callResult.getValues().get(0).getValue(),
+                    (BigInteger) callResult.getValues().get(1).getValue(), confirmedBlock, now));
+        }
+        // Sync事件记录的是绝对值，拉取已确认区块之后的事件即可得到新pair的最新状态
+        List<Log> logs = lastBlock.compareTo(confirmedBlock) > 0
+                ? fetchLogs(initial.keySet(), confirmedBlock.add(BigInteger.ONE), lastBlock)
+                : new ArrayList<>();
+        confirmed.putAll(initial);
+        current.putAll(initial);
+        pairs.addAll(initial.keySet());
+        newPairs.removeAll(initial.keySet());
+        applyLogs(logs, unconfirmed, current);
+    }
+
+    /**
+     * 从已确认的状态重新拉取事件到最新区块，在另一份数据上重建，完成后整体替换当前的存储量
+     *
+     * @param head 最新区块
+     * @throws IOException 与节点交互失败，当前的数据不变
+     */
+    private void rebuild(EthBlock.Block head) throws IOException {
+        TreeMap<BigInteger, Map<String, ReserveCache.Reserves>> replayed = new TreeMap<>();
+        Map<String, ReserveCache.Reserves> state = new ConcurrentHashMap<>(confirmed);
+        if (head.getNumber().compareTo(confirmedBlock) > 0) {
+            applyLogs(fetchLogs(pairs, confirmedBlock.add(BigInteger.ONE), head.getNumber()), replayed, state);
+        }
+        unconfirmed = replayed;
+        current = state;
+        lastBlock = head.getNumber().max(confirmedBlock);
+        lastBlockHash = head.getHash();
+    }
+
+    /**
+     * 将已确认区块之前的更新合并到已确认状态
+     *
+     * @param block 新的已确认区块高度
+     */
+    private void confirm(BigInteger block) {
+        if (block.compareTo(confirmedBlock) <= 0) {
+            return;
+        }
+        Map<BigInteger, Map<String, ReserveCache.Reserves>> settled = unconfirmed.headMap(block, true);
+        for (Map<String, ReserveCache.Reserves> updates : settled.values()) {
+            confirmed.putAll(updates);
+        }
+        settled.clear();
+        confirmedBlock = block;
+    }
+
+    /**
+     * 按区块顺序应用Sync事件
+     *
+     * @param logs        Sync事件
+     * @param unconfirmed 保存未确认更新的位置
+     * @param current     保存当前存储量的位置
+     */
+    private void applyLogs(List<Log> logs, TreeMap<BigInteger, Map<String, ReserveCache.Reserves>> unconfirmed,
+                           Map<String, ReserveCache.Reserves> current) {
+        long now = System.currentTimeMillis();
+        for (Log event : logs) {
+            if (event.isRemoved() || event.getData() == null) {
+                continue;
+            }
+            String pair = event.getAddress().toLowerCase();
+            if (!pairs.contains(pair)) {
+                continue;
+            }
+            byte[] data = Numeric.hexStringToByteArray(event.getData());
+            if (data.length < 64) {
+                continue;
+            }
+            BigInteger reserve0 = new BigInteger(1, Arrays.copyOfRange(data, 0, 32));
+            BigInteger reserve1 = new BigInteger(1, Arrays.copyOfRange(data, 32, 64));
+            ReserveCache.Reserves reserves = new ReserveCache.Reserves(reserve0, reserve1, event.getBlockNumber(), now);
+            // 同一区块内的多次Sync，以最后一次为准
+            unconfirmed.computeIfAbsent(event.getBlockNumber(), k -> new HashMap<>()).put(pair, reserves);
+            current.put(pair, reserves);
+        }
+    }
+
+    /**
+     * 拉取区块范围内pair的Sync事件，按区块和地址分批，通过一次批量请求发送
+     *
+     * @param pairList pair地址
+     * @param from     起始区块
+     * @param to       结束区块
+     * @return 按区块顺序排列的事件
+     * @throws IOException 与节点交互失败
+     */
+    private List<Log> fetchLogs(Collection<String> pairList, BigInteger from, BigInteger to) throws IOException {
+        List<String> addresses = new ArrayList<>(new LinkedHashSet<>(pairList));
+        List<Log> logs = new ArrayList<>();
+        if (addresses.isEmpty()) {
+            return logs;
+        }
+        List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+        BigInteger range = BigInteger.valueOf(maxBlockRange);
+        for (BigInteger start = from; start.compareTo(to) <= 0; start = start.add(range)) {
+            BigInteger end = start.add(range).subtract(BigInteger.ONE).min(to);
+            for (int i = 0; i < addresses.size(); i += ADDRESS_BATCH_SIZE) {
+                EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(start), DefaultBlockParameter.valueOf(end),
+                        addresses.subList(i, Math.min(i + ADDRESS_BATCH_SIZE, addresses.size())));
+                filter.addSingleTopic(SYNC_TOPIC);
+                requests.add(web3.getWeb3().ethGetLogs(filter));
+            }
+        }
+        for (Response<?> response : web3.sendBatch(requests)) {
+            EthLog ethLog = (EthLog) response;
+            if (ethLog.hasError()) {
+                throw new IOException("error: " + ethLog.getError().getMessage());
+            }
+            for (EthLog.LogResult<?> result : ethLog.getLogs()) {
+                logs.add((Log) result.get());
+            }
+        }
+        // 不同地址分批查询，需要重新按区块和日志序号排序
+        logs.sort((a, b) -> {
+            int compare = a.getBlockNumber().compareTo(b.getBlockNumber());
+            return compare != 0 ? compare : a.getLogIndex().compareTo(b.getLogIndex());
+        });
+        return logs;
+    }
+
+    private static EthBlock.Block getBlock(Response<?> response) {
+        EthBlock ethBlock = (EthBlock) response;
+        return ethBlock.hasError() ? null : ethBlock.getBlock();
+    }
+}
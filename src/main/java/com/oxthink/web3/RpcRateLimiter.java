@@ -0,0 +1,128 @@
+package com.oxthink.web3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 节点请求限速
+ * 同一节点链接上的所有Web3jUtil共用一个令牌桶，每个HTTP请求（包括批量请求）消耗一个令牌，
+ * 默认不限速，批量账户并发操作时按节点的限额设置，避免被节点返回429
+ */
+@Slf4j
+public class RpcRateLimiter {
+
+    /**
+     * 所有节点的限速器 key: 节点链接
+     */
+    private static final Map<String, RpcRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    /**
+     * 每秒允许的请求数，小于等于0表示不限速
+     */
+    private volatile double permitsPerSecond;
+
+    /**
+     * 空闲时允许突发的请求数
+     */
+    private volatile int burst = 1;
+
+    /**
+     * 下一个令牌可用的时间 单位:ns，初始时令牌桶是满的
+     */
+    private long nextFreeNanos = System.nanoTime() - TimeUnit.HOURS.toNanos(1);
+
+    /**
+     * 获取某个节点的限速器，同一节点共用一个
+     *
+     * @param nodeUrl 节点链接
+     * @return 限速器
+     */
+    public static RpcRateLimiter of(String nodeUrl) {
+        return LIMITERS.computeIfAbsent(nodeUrl, k -> new RpcRateLimiter());
+    }
+
+    /**
+     * 创建经过限速的节点服务
+     *
+     * @param nodeUrl 节点链接
+     * @return 节点服务
+     */
+    public static HttpService newHttpService(String nodeUrl) {
+        RpcRateLimiter limiter = of(nodeUrl);
+        return new HttpService(nodeUrl) {
+            @Override
+            protected InputStream performIO(String request) throws IOException {
+                limiter.acquire();
+                return super.performIO(request);
+            }
+        };
+    }
+
+    /**
+     * 设置限速
+     *
+     * @param permitsPerSecond 每秒允许的请求数，小于等于0表示不限速
+     * @param burst            空闲时允许突发的请求数
+     */
+    public void setRate(double permitsPerSecond, int burst) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+    }
+
+    /**
+     * 设置限速，突发数量为1秒的请求数
+     *
+     * @param permitsPerSecond 每秒允许的请求数，小于等于0表示不限速
+     */
+    public void setRate(double permitsPerSecond) {
+        setRate(permitsPerSecond, (int) Math.max(1, permitsPerSecond));
+    }
+
+    /**
+     * 获取限速
+     *
+     * @return 每秒允许的请求数，小于等于0表示不限速
+     */
+    public double getRate() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * 获取一个令牌，没有可用令牌时阻塞等待
+     *
+     * @throws InterruptedIOException 等待时线程被中断
+     */
+    public void acquire() throws InterruptedIOException {
+        double rate = permitsPerSecond;
+        if (rate <= 0) {
+            return;
+        }
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // 空闲期间最多积攒burst个令牌
+            long earliest = now - interval * (burst - 1);
+            if (nextFreeNanos - earliest < 0) {
+                nextFreeNanos = earliest;
+            }
+            waitNanos = nextFreeNanos - now;
+            nextFreeNanos += interval;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待节点限速时被中断");
+            }
+        }
+    }
+}
@@ -12,12 +12,18 @@ import org.web3j.abi.datatypes.generated.Uint8;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class TokenUtil {
 
     private final Web3jUtil web3;
 
+    private final MetadataCache metadataCache = MetadataCache.getInstance();
+
     public TokenUtil(Web3jUtil web3jUtil) {
         web3 = web3jUtil;
     }
@@ -38,10 +44,12 @@ public class TokenUtil {
      * @throws Exception 与合约交互出现异常
      */
     public String getName(String tokenAddress) throws Exception {
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Utf8String>() {
+        return metadataCache.get(web3, tokenAddress, "name", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Utf8String>() {
+            });
+            List<Type> result = web3.readContract(tokenAddress, "name", new ArrayList<>(), output);
+            return result.get(0).toString();
         });
-        List<Type> result = web3.readContract(tokenAddress, "name", new ArrayList<>(), output);
-        return result.get(0).toString();
     }
 
     /**
@@ -52,10 +60,12 @@ public class TokenUtil {
      * @throws Exception 与合约交互出现异常
      */
     public String getSymbol(String tokenAddress) throws Exception {
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Utf8String>() {
+        return metadataCache.get(web3, tokenAddress, "symbol", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Utf8String>() {
+            });
+            List<Type> result = web3.readContract(tokenAddress, "symbol", new ArrayList<>(), output);
+            return result.get(0).toString();
         });
-        List<Type> result = web3.readContract(tokenAddress, "symbol", new ArrayList<>(), output);
-        return result.get(0).toString();
     }
 
     /**
@@ -66,11 +76,13 @@ public class TokenUtil {
      * @throws Exception 与合约交互出现异常
      */
     public String getDecimals(String tokenAddress) throws Exception {
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Uint8>() {
+        return metadataCache.get(web3, tokenAddress, "decimals", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Uint8>() {
+            });
+            List<Type> result = web3.readContract(tokenAddress, "decimals", new ArrayList<>(), output);
+            BigInteger decimals = (BigInteger) result.get(0).getValue();
+            return decimals.toString();
         });
-        List<Type> result = web3.readContract(tokenAddress, "decimals", new ArrayList<>(), output);
-        BigInteger decimals = (BigInteger) result.get(0).getValue();
-        return decimals.toString();
     }
 
     /**
@@ -104,5 +116,131 @@ public class TokenUtil {
         return balance.getValue().toString();
     }
 
+    /**
+     * 通过一次Multicall获取Token的名称、标志、精度和总供应量
+     *
+     * @param tokenAddress token地址
+     * @return name: 名称 symbol: 标志 decimals: 精度 totalSupply: 总供应量，单位wei
+     * @throws Exception 与合约交互出现异常
+     */
+    public Map<String, String> getTokenInfo(String tokenAddress) throws Exception {
+        MulticallUtil multicall = new MulticallUtil(web3);
+        multicall.addCall(tokenAddress, "name", new ArrayList<>(), Collections.singletonList(new TypeReference<Utf8String>() {
+        }));
+        multicall.addCall(tokenAddress, "symbol", new ArrayList<>(), Collections.singletonList(new TypeReference<Utf8String>() {
+        }));
+        multicall.addCall(tokenAddress, "decimals", new ArrayList<>(), Collections.singletonList(new TypeReference<Uint8>() {
+        }));
+        multicall.addCall(tokenAddress, "totalSupply", new ArrayList<>(), Collections.singletonList(new TypeReference<Uint256>() {
+        }));
+        MulticallUtil.Result result = multicall.execute();
+        Map<String, String> info = new HashMap<>(8);
+        info.put("name", result.get(0).get(0).toString());
+        info.put("symbol", result.get(1).get(0).toString());
+        info.put("decimals", result.get(2).get(0).getValue().toString());
+        info.put("totalSupply", result.get(3).get(0).getValue().toString());
+        long chainId = web3.getChainContext().getChainId();
+        metadataCache.put(chainId, tokenAddress, "name", info.get("name"));
+        metadataCache.put(chainId, tokenAddress, "symbol", info.get("symbol"));
+        metadataCache.put(chainId, tokenAddress, "decimals", info.get("decimals"));
+        return info;
+    }
+
+    /**
+     * 通过Multicall批量获取多个地址的代币余额
+     *
+     * @param tokenAddress 代币合约地址
+     * @param addresses    查询地址列表
+     * @return 地址 -> 余额，单位wei
+     * @throws Exception 与合约交互出现异常
+     */
+    public Map<String, BigInteger> balanceOf(String tokenAddress, List<String> addresses) throws Exception {
+        MulticallUtil multicall = new MulticallUtil(web3);
+        for (String address : addresses) {
+            multicall.addCall(tokenAddress, "balanceOf", Collections.singletonList(new Address(address)),
+                    Collections.singletonList(new TypeReference<Uint256>() {
+                    }));
+        }
+        MulticallUtil.Result result = multicall.execute();
+        Map<String, BigInteger> balances = new LinkedHashMap<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            balances.put(addresses.get(i), (BigInteger) result.get(i).get(0).getValue());
+        }
+        return balances;
+    }
+
+    /**
+     * 异步获取Token名称
+     *
+     * @param tokenAddress token地址
+     * @return Token名称
+     */
+    public CompletableFuture<String> getNameAsync(String tokenAddress) {
+        return metadataCache.getAsync(web3, tokenAddress, "name", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Utf8String>() {
+            });
+            return web3.readContractAsync(tokenAddress, "name", new ArrayList<>(), output)
+                    .thenApply(result -> result.get(0).toString());
+        });
+    }
+
+    /**
+     * 异步获取Token标志
+     *
+     * @param tokenAddress token地址
+     * @return Token标志
+     */
+    public CompletableFuture<String> getSymbolAsync(String tokenAddress) {
+        return metadataCache.getAsync(web3, tokenAddress, "symbol", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Utf8String>() {
+            });
+            return web3.readContractAsync(tokenAddress, "symbol", new ArrayList<>(), output)
+                    .thenApply(result -> result.get(0).toString());
+        });
+    }
+
+    /**
+     * 异步获取Token精度
+     *
+     * @param tokenAddress token地址
+     * @return Token精度
+     */
+    public CompletableFuture<String> getDecimalsAsync(String tokenAddress) {
+        return metadataCache.getAsync(web3, tokenAddress, "decimals", () -> {
+            List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Uint8>() {
+            });
+            return web3.readContractAsync(tokenAddress, "decimals", new ArrayList<>(), output)
+                    .thenApply(result -> result.get(0).getValue().toString());
+        });
+    }
+
+    /**
+     * 异步获取代币总供应量
+     *
+     * @param tokenAddress token地址
+     * @return token总供应量, 单位Wei
+     */
+    public CompletableFuture<BigInteger> getTotalSupplyAsync(String tokenAddress) {
+        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Uint256>() {
+        });
+        return web3.readContractAsync(tokenAddress, "totalSupply", new ArrayList<>(), output)
+                .thenApply(result -> (BigInteger) result.get(0).getValue());
+    }
+
+    /**
+     * 异步获取某个代币的余额
+     *
+     * @param tokenAddress 代币合约地址
+     * @param address      查询地址
+     * @return 某种代币的余额，单位wei
+     */
+    public CompletableFuture<String> balanceOfAsync(String tokenAddress, String address) {
+        List<Type> input = Collections.singletonList(new Address(address));
+        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Uint256>() {
+        });
+        return web3.readContractAsync(tokenAddress, "balanceOf", input, output)
+                .thenApply(result -> ((Uint256) result.get(0)).getValue().toString());
+    }
+
 
 }
@@ -0,0 +1,25 @@
+package com.oxthink.web3;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * 广播交易时与节点交互失败，且无法确认节点是否已收到交易
+ * 交易hash由签名数据在本地计算，nonce不归还，调用方应按已发送处理：等待回执，超时后通过ReceiptWatcher.getDropped确认是否需要重发
+ */
+@Getter
+public class UnknownBroadcastException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 本地计算的交易hash
+     */
+    private final String hash;
+
+    public UnknownBroadcastException(String hash, IOException cause) {
+        super("error: 无法确认交易是否已广播, 交易hash: " + hash + ", " + cause.getMessage(), cause);
+        this.hash = hash;
+    }
+}
@@ -21,19 +21,24 @@ import org.web3j.abi.datatypes.Type;
 import org.web3j.abi.datatypes.generated.Uint256;
 import org.web3j.crypto.*;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
 import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.methods.request.Transaction;
 import org.web3j.protocol.core.methods.response.*;
 import org.web3j.protocol.http.HttpService;
+import org.web3j.utils.Async;
 import org.web3j.utils.Convert;
 import org.web3j.utils.Numeric;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.math.RoundingMode;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class Web3jUtil {
@@ -43,6 +48,10 @@ public class Web3jUtil {
      */
     @Getter
     private final Web3j web3;
+    /**
+     * 节点服务
+     */
+    private final HttpService httpService;
     /**
      * 凭证对象
      */
@@ -65,17 +74,70 @@ public class Web3jUtil {
     /**
      * 本地维护的nonce
      */
-    private BigInteger nonce = new BigInteger("-1");
+    private NonceManager nonceManager;
     /**
      * gasLimit
      */
     private BigInteger gasLimit = new BigInteger("0");
 
+    /**
+     * 网络信息缓存，chainId、WETH地址、工厂地址只解析一次
+     */
+    @Getter
+    private final ChainContext chainContext;
+
+    /**
+     * 是否缓存gasLimit
+     */
+    private boolean gasLimitCacheEnabled = true;
+
+    /**
+     * 交易打包速度，决定从gas预言机中取哪一档gasPrice
+     */
+    private GasOracle.Speed gasSpeed = GasOracle.Speed.NORMAL;
+
+    /**
+     * 是否使用EIP-1559交易，为空时根据ChainInfo决定
+     */
+    private Boolean eip1559;
+
+    /**
+     * EIP-1559交易的maxFeePerGas上限，为空时使用maxGasPrice
+     */
+    private BigInteger maxFeePerGasCap;
+
+    /**
+     * EIP-1559交易的maxPriorityFeePerGas上限，为空时使用maxGasPrice
+     */
+    private BigInteger maxPriorityFeePerGasCap;
+
     /**
      * 关联的网络信息
      */
     private ChainInfo chainInfo;
 
+    /**
+     * 异步操作使用的线程池，所有实例共用
+     * 只限制本地的步骤：解码、签名、处理返回结果以及supplyAsync提交的任务
+     * 网络请求通过sendAsync在web3j自带的Async线程池（不限线程数）中执行，对节点的并发由RpcRateLimiter限制
+     */
+    private static volatile Executor asyncExecutor = newAsyncExecutor(32, 10000);
+
+    /**
+     * 只读实例 key: 网络信息，同一条链共用一个连接
+     */
+    private static final Map<ChainInfo, Web3jUtil> SHARED = new ConcurrentHashMap<>();
+
+    /**
+     * 获取某条链共用的只读实例，不能发送交易，用于报价等只读操作
+     *
+     * @param chainInfo 网络信息
+     * @return 只读实例
+     */
+    public static Web3jUtil of(ChainInfo chainInfo) {
+        return SHARED.computeIfAbsent(chainInfo, Web3jUtil::new);
+    }
+
     /**
      * 初始化Web3j变量和凭证
      *
@@ -85,11 +147,15 @@ public class Web3jUtil {
     public Web3jUtil(ChainInfo chainInfo, String privateKey) {
         this.chainInfo = chainInfo;
         // 根据RPCurl生成web3j对象
-        this.web3 = Web3j.build(new HttpService(chainInfo.getNodeUrl()));
+        this.httpService = RpcRateLimiter.newHttpService(chainInfo.getNodeUrl());
+        this.web3 = Web3j.build(httpService);
         // 根据私钥创建凭证对象
         this.credentials = Credentials.create(privateKey);
         // 私钥对应的地址
         this.ownerAddress = credentials.getAddress();
+        // 同一节点上的同一账户共用nonce
+        this.nonceManager = NonceManager.of(chainInfo.getNodeUrl(), web3, ownerAddress);
+        this.chainContext = ChainContext.of(chainInfo.getNodeUrl(), web3, chainInfo);
         // 默认gasPrice的范围
         setGasPriceLimit("1", "10");
     }
@@ -102,11 +168,15 @@ public class Web3jUtil {
      */
     public Web3jUtil(String rpcUrl, String privateKey) {
         // 根据RPCurl生成web3j对象
-        this.web3 = Web3j.build(new HttpService(rpcUrl));
+        this.httpService = RpcRateLimiter.newHttpService(rpcUrl);
+        this.web3 = Web3j.build(httpService);
         // 根据私钥创建凭证对象
         this.credentials = Credentials.create(privateKey);
         // 私钥对应的地址
         this.ownerAddress = credentials.getAddress();
+        // 同一节点上的同一账户共用nonce
+        this.nonceManager = NonceManager.of(rpcUrl, web3, ownerAddress);
+        this.chainContext = ChainContext.of(rpcUrl, web3, null);
         // 默认gasPrice的范围
         setGasPriceLimit("1", "10");
     }
@@ -118,14 +188,34 @@ public class Web3jUtil {
      */
     public Web3jUtil(String RPCurl) {
         // 根据RPCurl生成web3j对象
-        web3 = Web3j.build(new HttpService(RPCurl));
-
+        httpService = RpcRateLimiter.newHttpService(RPCurl);
+        web3 = Web3j.build(httpService);
+        chainContext = ChainContext.of(RPCurl, web3, null);
     }
 
     public Web3jUtil(ChainInfo chainInfo) {
         this.chainInfo = chainInfo;
         // 根据RPCurl生成web3j对象
-        this.web3 = Web3j.build(new HttpService(chainInfo.getNodeUrl()));
+        this.httpService = RpcRateLimiter.newHttpService(chainInfo.getNodeUrl());
+        this.web3 = Web3j.build(httpService);
+        this.chainContext = ChainContext.of(chainInfo.getNodeUrl(), web3, chainInfo);
+    }
+
+    /**
+     * 与已有实例共用节点连接，只创建新的凭证，用于批量账户
+     *
+     * @param transport   提供节点连接的实例
+     * @param credentials 凭证对象
+     */
+    public Web3jUtil(Web3jUtil transport, Credentials credentials) {
+        this.chainInfo = transport.chainInfo;
+        this.httpService = transport.httpService;
+        this.web3 = transport.web3;
+        this.chainContext = transport.chainContext;
+        this.credentials = credentials;
+        this.ownerAddress = credentials.getAddress();
+        this.nonceManager = NonceManager.of(getNodeUrl(), web3, ownerAddress);
+        setGasPriceLimit("1", "10");
     }
 
     /**
@@ -160,29 +250,12 @@ public class Web3jUtil {
      * @throws Exception 与节点交互出现异常
      */
     public String sendEther(String address, String amount) throws Exception {
-        // 估算gasLimit
-        BigInteger gasLimit = estimateGasLimit(address, "");
-        // 获取gasPrice
-        BigInteger gasPrice = getGasPriceWithLimit();
-        // 获取chainId
-        long chainId = web3.ethChainId().send().getChainId().longValue();
-        // 组建请求的参数
-        RawTransaction rawTransaction = RawTransaction.createEtherTransaction(getNonce(),
-                gasPrice,
-                gasLimit,
-                address,
-                Convert.toWei(amount, Convert.Unit.ETHER).toBigInteger());
-        // 签名数据
-        byte[] signedMessage = TransactionEncoder.signMessage(rawTransaction, chainId, credentials);
-        String hexValue = Numeric.toHexString(signedMessage);
-        // 发送数据
-        EthSendTransaction response = web3.ethSendRawTransaction(hexValue).send();
-        // 查看是否有错误
-        if (response.hasError()) {
-            throw new Exception("trade hash: " + response.getTransactionHash() +
-                    "\nerror: " + response.getError().getMessage());
-        }
-        log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(gasLimit.multiply(gasPrice)), Convert.Unit.ETHER));
+        BigInteger valueWei = Convert.toWei(amount, Convert.Unit.ETHER).toBigInteger();
+        // 一次批量请求获取gasLimit、gasPrice、chainId、nonce
+        TxParam param = prepareTransaction(address, "", valueWei, GasLimitCache.key(address, "", null));
+        // 组建请求的参数，签名并发送数据
+        EthSendTransaction response = signAndSend(param, address, valueWei, "");
+        log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(param.gasLimit.multiply(param.feePerGas())), Convert.Unit.ETHER));
         log.info("Trade Hash: {}", response.getTransactionHash());
         return response.getTransactionHash();
     }
@@ -195,17 +268,29 @@ public class Web3jUtil {
      * @throws Exception 与节点交互出现异常
      */
     public String sendAllEther(String address) throws Exception {
-        // 估算gasLimit
-        BigInteger gasLimit = estimateGasLimit(address, "");
-        // 获取gasPrice
-        BigInteger gasPrice = getGasPriceWithLimit();
-        // 计算消耗的gas(gasPrice的单位是GWEI),单位转换为ether
-        BigDecimal costEth = new BigDecimal(gasPrice.multiply(gasLimit)).divide(BigDecimal.valueOf(Math.pow(10, 18)), 18, RoundingMode.HALF_UP);
-        // 地址的eth余额
-        String balance = getBalance();
-        // 计算需要发送的ether
-        String amount = new BigDecimal(balance).subtract(costEth).toString();
-        return sendEther(address, amount);
+        // 先准备交易参数，与sendEther使用同一个gasLimit缓存
+        TxParam param = prepareTransaction(address, "", BigInteger.ZERO, GasLimitCache.key(address, "", null));
+        // 按签名时实际使用的每单位gas最高费用预留，EIP-1559交易为maxFeePerGas
+        BigInteger cost = param.gasLimit.multiply(param.feePerGas());
+        BigInteger valueWei;
+        try {
+            // 地址的eth余额
+            BigInteger balance = Convert.toWei(getBalance(), Convert.Unit.ETHER).toBigInteger();
+            // 计算需要发送的数量
+            valueWei = balance.subtract(cost);
+            if (valueWei.signum() <= 0) {
+                throw new Exception(String.format("error: 余额不足以支付gas, 需要 %s ether",
+                        Convert.fromWei(new BigDecimal(cost), Convert.Unit.ETHER).toPlainString()));
+            }
+        } catch (Exception e) {
+            // 交易未发送，归还nonce
+            nonceManager.release(param.nonce);
+            throw e;
+        }
+        EthSendTransaction response = signAndSend(param, address, valueWei, "");
+        log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(cost), Convert.Unit.ETHER));
+        log.info("Trade Hash: {}", response.getTransactionHash());
+        return response.getTransactionHash();
     }
 
     /**
@@ -253,26 +338,12 @@ public class Web3jUtil {
         // 生成需要调用函数的data
         Function function = new Function(functionName, input, output);
         String data = FunctionEncoder.encode(function);
-        // 估算gasLimit
-        BigInteger gasLimit = estimateGasLimit(contractAddress, data, valueWei);
-        // 获取gasPrice
-        BigInteger gasPrice = getGasPriceWithLimit();
-        // 获取chainId
-        long chainId = web3.ethChainId().send().getChainId().longValue();
-        // 正式请求
-        RawTransaction rawTransaction = RawTransaction.createTransaction(getNonce(), gasPrice, gasLimit, contractAddress, valueWei, data);
-        // 签名数据
-        byte[] signedMessage = TransactionEncoder.signMessage(rawTransaction, chainId, credentials);
-        String hexValue = Numeric.toHexString(signedMessage);
-        // 发送数据
-        EthSendTransaction response = web3.ethSendRawTransaction(hexValue).send();
-        // 查看是否有错误
-        if (response.hasError()) {
-            throw new Exception("trade hash: " + response.getTransactionHash() +
-                    "\nerror: " + response.getError().getMessage());
-        }
+        // 一次批量请求获取gasLimit、gasPrice、chainId、nonce
+        TxParam param = prepareTransaction(contractAddress, data, valueWei, GasLimitCache.key(contractAddress, data, input));
+        // 正式请求，签名并发送数据
+        EthSendTransaction response = signAndSend(param, contractAddress, valueWei, data);
         log.info("function: {} data: {}", functionName, data);
-        log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(gasLimit.multiply(gasPrice)), Convert.Unit.ETHER));
+        log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(param.gasLimit.multiply(param.feePerGas())), Convert.Unit.ETHER));
         log.info("Trade Hash: {}", response.getTransactionHash());
         return response.getTransactionHash();
     }
@@ -287,26 +358,26 @@ public class Web3jUtil {
      * @throws Exception 与节点交互出现异常
      */
     public String writeContract(String contractAddress, String data) throws Exception {
-        // 估算gasLimit
-        BigInteger gasLimit = estimateGasLimit(contractAddress, data);
-        // 获取gasPrice
-        BigInteger gasPrice = getGasPriceWithLimit();
-        // 获取chainId
-        long chainId = web3.ethChainId().send().getChainId().longValue();
-        // 正式请求
-        RawTransaction rawTransaction = RawTransaction.createTransaction(getNonce(), gasPrice, gasLimit, contractAddress, data);
-        // 签名数据
-        byte[] signedMessage = TransactionEncoder.signMessage(rawTransaction, chainId, credentials);
-        String hexValue = Numeric.toHexString(signedMessage);
-        // 发送数据
-        EthSendTransaction response = web3.ethSendRawTransaction(hexValue).send();
-        // 查看是否有错误
-        if (response.hasError()) {
-            throw new Exception("trade hash: " + response.getTransactionHash() +
-                    "\nerror: " + response.getError().getMessage());
-        }
+        return writeContract(contractAddress, data, "0");
+    }
+
+    /**
+     * 直接发送data模拟请求
+     *
+     * @param contractAddress 交互合约地址
+     * @param data            交互数据
+     * @param value           携带的eth数量(单位Ether)
+     * @return 交易hash
+     * @throws Exception 与节点交互出现异常
+     */
+    public String writeContract(String contractAddress, String data, String value) throws Exception {
+        BigInteger valueWei = Convert.toWei(value, Convert.Unit.ETHER).toBigInteger();
+        // 一次批量请求获取gasLimit、gasPrice、chainId、nonce
+        TxParam param = prepareTransaction(contractAddress, data, valueWei, GasLimitCache.key(contractAddress, data, null));
+        // 正式请求，签名并发送数据
+        EthSendTransaction response = signAndSend(param, contractAddress, valueWei, data);
         log.info("data: {}", data);
-        log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(gasLimit.multiply(gasPrice)), Convert.Unit.ETHER));
+        log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(param.gasLimit.multiply(param.feePerGas())), Convert.Unit.ETHER));
         log.info("Trade Hash: {}", response.getTransactionHash());
         return response.getTransactionHash();
     }
@@ -323,6 +394,7 @@ public class Web3jUtil {
         Optional<TransactionReceipt> optional = web3.ethGetTransactionReceipt(hash).send().getTransactionReceipt();
         if (optional.isPresent()) {
             TransactionReceipt transactionReceipt = optional.get();
+            getGasLimitCache().onReceipt(transactionReceipt);
             if (transactionReceipt.getStatus() == null) {
                 return 0;
             }
@@ -345,30 +417,64 @@ public class Web3jUtil {
      * @throws Exception 与节点交互出现异常
      */
     public boolean blockTransactionUtilComplete(String hash, int waitTime) throws Exception {
-        long endTime = System.currentTimeMillis() + waitTime;
-        while (System.currentTimeMillis() <= endTime) {
-            int status = getTransactionStatus(hash);
-            if (status == 1) {
-                return true;
-            }
-            if (status == -1) {
+        // 由网络共用的回执监听器在出新区块时批量查询
+        try {
+            TransactionReceipt receipt = getReceiptWatcher().watch(hash, waitTime).get();
+            return "0x1".equals(receipt.getStatus());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
                 return false;
             }
-            // 0.5s检查一次交易是否完成
-            Thread.sleep(500);
+            throw e;
         }
-        return false;
+    }
+
+    /**
+     * 获取当前节点共用的交易回执监听器
+     *
+     * @return 交易回执监听器
+     */
+    public ReceiptWatcher getReceiptWatcher() {
+        return ReceiptWatcher.of(this);
+    }
+
+    /**
+     * 获取节点链接
+     *
+     * @return 节点链接
+     */
+    public String getNodeUrl() {
+        return httpService.getUrl();
     }
 
     /**
      * 获取当期的gasPrice,如果超过最大的限制，取最大限制
+     * gasPrice取自后台刷新的gas预言机，不与节点交互
      *
      * @return 在区间内的gasPrice
      * @throws IOException 与节点交互出现异常
      */
     public BigInteger getGasPriceWithLimit() throws IOException {
-        // 获取近几个区块的gasPrice,得到的gasPrice偏高
-        BigInteger gasPrice = web3.ethGasPrice().send().getGasPrice();
+        // 根据近几个区块的小费分位数计算的gasPrice
+        return limitGasPrice(getGasOracle().getSuggestion().getGasPrice(gasSpeed));
+    }
+
+    /**
+     * 获取当前节点共用的gas预言机
+     *
+     * @return gas预言机
+     */
+    public GasOracle getGasOracle() {
+        return GasOracle.of(getNodeUrl(), web3, httpService);
+    }
+
+    /**
+     * 将gasPrice限制在设置的区间内
+     *
+     * @param gasPrice 节点返回的gasPrice
+     * @return 在区间内的gasPrice
+     */
+    private BigInteger limitGasPrice(BigInteger gasPrice) {
         log.info("Gas price: {} Gwei, Min gas price: {} Gwei, Max gas price: {} Gwei",
                 Convert.fromWei(String.valueOf(gasPrice), Convert.Unit.GWEI),
                 Convert.fromWei(String.valueOf(minGasPrice), Convert.Unit.GWEI),
@@ -395,6 +501,48 @@ public class Web3jUtil {
         maxGasPrice = Convert.toWei(maxGwei, Convert.Unit.GWEI).toBigInteger();
     }
 
+    /**
+     * 设置交易打包速度，默认为NORMAL
+     *
+     * @param gasSpeed 打包速度
+     */
+    public void setGasSpeed(GasOracle.Speed gasSpeed) {
+        this.gasSpeed = gasSpeed;
+    }
+
+    /**
+     * 设置是否使用EIP-1559(type 2)交易，不设置时根据ChainInfo决定
+     *
+     * @param eip1559 是否使用EIP-1559交易
+     */
+    public void setEip1559(boolean eip1559) {
+        this.eip1559 = eip1559;
+    }
+
+    /**
+     * 是否使用EIP-1559(type 2)交易
+     *
+     * @return 使用EIP-1559交易返回true
+     */
+    public boolean isEip1559() {
+        if (eip1559 != null) {
+            return eip1559;
+        }
+        ChainInfo info = getChainInfo();
+        return info != null && info.isEip1559();
+    }
+
+    /**
+     * 设置EIP-1559交易的费用上限，默认与最大的gasPrice一致
+     *
+     * @param maxPriorityFeeGwei 最大的小费
+     * @param maxFeeGwei         最大的总费用
+     */
+    public void setFeeCap(String maxPriorityFeeGwei, String maxFeeGwei) {
+        maxPriorityFeePerGasCap = Convert.toWei(maxPriorityFeeGwei, Convert.Unit.GWEI).toBigInteger();
+        maxFeePerGasCap = Convert.toWei(maxFeeGwei, Convert.Unit.GWEI).toBigInteger();
+    }
+
     /**
      * 设置交易所需的gasLimit，该值为0则自动估计gasLimit
      *
@@ -405,12 +553,49 @@ public class Web3jUtil {
     }
 
     /**
-     * 设置交易所需的nonce,r若nonce没有交易笔数大则取交易笔数作为nonce
+     * 设置是否缓存gasLimit，关闭后每笔交易都调用eth_estimateGas
+     *
+     * @param enabled 是否缓存
+     */
+    public void setGasLimitCacheEnabled(boolean enabled) {
+        this.gasLimitCacheEnabled = enabled;
+    }
+
+    /**
+     * 获取当前节点共用的gasLimit缓存
+     *
+     * @return gasLimit缓存
+     */
+    public GasLimitCache getGasLimitCache() {
+        return GasLimitCache.of(getNodeUrl());
+    }
+
+    /**
+     * 获取当前节点共用的pair存储量缓存
+     *
+     * @return 存储量缓存
+     */
+    public ReserveCache getReserveCache() {
+        return ReserveCache.of(getNodeUrl());
+    }
+
+    /**
+     * 获取当前节点共用的pair存储量镜像
+     *
+     * @return 存储量镜像
+     */
+    public ReserveMirror getReserveMirror() {
+        return ReserveMirror.of(this);
+    }
+
+    /**
+     * 设置下一笔交易所需的nonce,若nonce没有交易笔数大则取交易笔数作为nonce
      *
-     * @param nonce gasLimit
+     * @param nonce nonce
+     * @throws IOException 与节点交互失败
      */
-    public void setNonce(String nonce) {
-        this.nonce = new BigInteger(nonce);
+    public void setNonce(String nonce) throws IOException {
+        nonceManager.set(new BigInteger(nonce));
     }
 
     /**
@@ -470,20 +655,395 @@ public class Web3jUtil {
     }
 
     /**
-     * 获取本地维护的nonce
+     * 获取本地维护的nonce，只在首次使用或nonce异常后与节点同步
      *
      * @return nonce
      * @throws IOException 与节点交互失败
      */
     public BigInteger getNonce() throws IOException {
-        nonce = nonce.add(BigInteger.valueOf(1));
-        // 查询交易笔数
-        BigInteger count = getTransactionCount();
-        // 如果交易笔数大于本地维护的nonce，则同步nonce
-        if (count.compareTo(nonce) > 0) {
-            nonce = count;
+        return nonceManager.acquire();
+    }
+
+    /**
+     * 获取账户的nonce管理器
+     *
+     * @return nonce管理器
+     */
+    public NonceManager getNonceManager() {
+        return nonceManager;
+    }
+
+    /**
+     * 使用指定的参数签名一笔legacy交易，不发送，chainId已解析时不与节点交互
+     *
+     * @param nonce    nonce
+     * @param gasPrice gasPrice(单位wei)
+     * @param gasLimit gasLimit
+     * @param to       发送的地址
+     * @param value    携带的eth数量(单位wei)
+     * @param data     发送的数据
+     * @return 签名后的交易数据
+     * @throws IOException 与节点交互失败
+     */
+    public String signTransaction(BigInteger nonce, BigInteger gasPrice, BigInteger gasLimit, String to, BigInteger value, String data) throws IOException {
+        RawTransaction rawTransaction = RawTransaction.createTransaction(nonce, gasPrice, gasLimit, to, value, data);
+        return Numeric.toHexString(TransactionEncoder.signMessage(rawTransaction, chainContext.getChainId(), credentials));
+    }
+
+    /**
+     * 准备交易所需的gasLimit、gasPrice、chainId、nonce
+     * gasPrice取自gas预言机，gasLimit优先使用缓存，已缓存的值直接使用，其余的请求合并为一次JSON-RPC批量请求
+     *
+     * @param to       发送的地址
+     * @param data     发送的数据
+     * @param value    携带的eth数量(单位wei)
+     * @param cacheKey gasLimit缓存的key
+     * @return 交易参数
+     * @throws Exception 与节点交互失败
+     */
+    private TxParam prepareTransaction(String to, String data, BigInteger value, String cacheKey) throws Exception {
+        TxParam param = newTxParam(to, data, value, cacheKey, getGasOracle().getSuggestion());
+        return completeTxParam(param, sendBatch(param.requests));
+    }
+
+    /**
+     * 异步准备交易参数，与prepareTransaction一致，批量请求通过sendAsync发送
+     *
+     * @param to       发送的地址
+     * @param data     发送的数据
+     * @param value    携带的eth数量(单位wei)
+     * @param cacheKey gasLimit缓存的key
+     * @return 交易参数
+     */
+    private CompletableFuture<TxParam> prepareTransactionAsync(String to, String data, BigInteger value, String cacheKey) {
+        // 预言机只在首次使用时与节点交互，与其它网络请求一样放在web3j的线程中
+        return Async.run(() -> getGasOracle().getSuggestion())
+                .thenCompose(suggestion -> {
+                    TxParam param = newTxParam(to, data, value, cacheKey, suggestion);
+                    return sendBatchAsync(param.requests)
+                            .thenApplyAsync(responses -> {
+                                try {
+                                    return completeTxParam(param, responses);
+                                } catch (Exception e) {
+                                    throw new CompletionException(e);
+                                }
+                            }, asyncExecutor);
+                });
+    }
+
+    /**
+     * 根据缓存和gas建议填充交易参数，缺少的数据生成对应的请求
+     */
+    private TxParam newTxParam(String to, String data, BigInteger value, String cacheKey, GasOracle.Suggestion suggestion) {
+        TxParam param = new TxParam();
+        // gasLimit为0时优先使用缓存，没有缓存再估算gasLimit
+        if (gasLimit.signum() == 0) {
+            param.cacheKey = gasLimitCacheEnabled ? cacheKey : null;
+            param.gasLimit = param.cacheKey != null ? getGasLimitCache().get(param.cacheKey) : null;
+        } else {
+            param.gasLimit = gasLimit;
+        }
+        if (param.gasLimit == null) {
+            Transaction testTransaction = Transaction.createFunctionCallTransaction(ownerAddress, null, null, null, to, value, data);
+            param.estimateRequest = web3.ethEstimateGas(testTransaction);
+            param.requests.add(param.estimateRequest);
+        }
+        // gas费用从gas预言机中读取
+        if (isEip1559() && suggestion.isEip1559()) {
+            BigInteger feeCap = maxFeePerGasCap != null ? maxFeePerGasCap : maxGasPrice;
+            BigInteger priorityCap = maxPriorityFeePerGasCap != null ? maxPriorityFeePerGasCap : maxGasPrice;
+            // 与普通交易一致，minGasPrice作为小费和总费用的下限，上限优先
+            param.maxFeePerGas = suggestion.getMaxFeePerGas(gasSpeed).max(minGasPrice).min(feeCap);
+            param.maxPriorityFeePerGas = suggestion.getMaxPriorityFeePerGas(gasSpeed).max(minGasPrice).min(priorityCap).min(param.maxFeePerGas);
+            if (param.maxFeePerGas.compareTo(suggestion.getBaseFee()) < 0) {
+                log.warn("maxFeePerGas: {} Gwei 低于当前基础费用: {} Gwei，交易可能无法被打包",
+                        Convert.fromWei(String.valueOf(param.maxFeePerGas), Convert.Unit.GWEI),
+                        Convert.fromWei(String.valueOf(suggestion.getBaseFee()), Convert.Unit.GWEI));
+            }
+        } else {
+            param.gasPrice = limitGasPrice(suggestion.getGasPrice(gasSpeed));
+        }
+        // chainId只查询一次
+        if (!chainContext.isChainIdResolved()) {
+            param.chainIdRequest = web3.ethChainId();
+            param.requests.add(param.chainIdRequest);
+        }
+        // nonce未同步或需要检查空洞时查询交易数
+        if (!nonceManager.isSynced() || nonceManager.isGapCheckDue()) {
+            param.countRequest = web3.ethGetTransactionCount(ownerAddress, DefaultBlockParameterName.PENDING);
+            param.requests.add(param.countRequest);
+        }
+        return param;
+    }
+
+    /**
+     * 处理批量请求的返回结果并分配nonce
+     */
+    private TxParam completeTxParam(TxParam param, List<Response<?>> responses) throws Exception {
+        int index = 0;
+        if (param.estimateRequest != null) {
+            EthEstimateGas response = (EthEstimateGas) checkResponse(responses.get(index++));
+            param.gasLimit = response.getAmountUsed();
+            if (param.cacheKey != null) {
+                getGasLimitCache().putEstimate(param.cacheKey, param.gasLimit);
+            }
+        }
+        if (param.chainIdRequest != null) {
+            EthChainId response = (EthChainId) checkResponse(responses.get(index++));
+            chainContext.setChainId(response.getChainId().longValue());
+        }
+        param.chainId = chainContext.getChainId();
+        if (param.countRequest != null) {
+            EthGetTransactionCount response = (EthGetTransactionCount) checkResponse(responses.get(index));
+            nonceManager.checkGap(response.getTransactionCount());
+            nonceManager.sync(response.getTransactionCount());
         }
-        return nonce;
+        param.nonce = nonceManager.acquire();
+        return param;
+    }
+
+    /**
+     * 将多个请求合并为一次JSON-RPC批量请求发送，只有一个请求时直接发送
+     * 节点返回的结果与请求对应不上时，改为逐个发送
+     *
+     * @param requests 请求列表
+     * @return 与请求顺序一致的返回结果
+     * @throws IOException 与节点交互失败
+     */
+    public List<Response<?>> sendBatch(List<Request<?, ? extends Response<?>>> requests) throws IOException {
+        List<Response<?>> responses = new ArrayList<>(requests.size());
+        if (requests.isEmpty()) {
+            return responses;
+        }
+        if (requests.size() == 1) {
+            responses.add(requests.get(0).send());
+            return responses;
+        }
+        BatchRequest batch = web3.newBatch();
+        requests.forEach(batch::add);
+        List<? extends Response<?>> batchResponses = batch.send().getResponses();
+        boolean matched = batchResponses.size() == requests.size();
+        for (int i = 0; matched && i < requests.size(); i++) {
+            matched = batchResponses.get(i).getId() == requests.get(i).getId();
+        }
+        if (matched) {
+            responses.addAll(batchResponses);
+            return responses;
+        }
+        log.warn("批量请求的返回结果与请求不对应，改为逐个发送");
+        for (Request<?, ? extends Response<?>> request : requests) {
+            responses.add(request.send());
+        }
+        return responses;
+    }
+
+    /**
+     * 异步发送批量请求，与sendBatch一致，返回结果对应不上时改为逐个发送
+     *
+     * @param requests 请求列表
+     * @return 与请求顺序一致的返回结果
+     */
+    public CompletableFuture<List<Response<?>>> sendBatchAsync(List<Request<?, ? extends Response<?>>> requests) {
+        if (requests.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        if (requests.size() == 1) {
+            return requests.get(0).sendAsync().thenApply(response -> new ArrayList<>(Collections.singletonList(response)));
+        }
+        BatchRequest batch = web3.newBatch();
+        requests.forEach(batch::add);
+        return batch.sendAsync().thenCompose(batchResponse -> {
+            List<? extends Response<?>> batchResponses = batchResponse.getResponses();
+            boolean matched = batchResponses.size() == requests.size();
+            for (int i = 0; matched && i < requests.size(); i++) {
+                matched = batchResponses.get(i).getId() == requests.get(i).getId();
+            }
+            if (matched) {
+                return CompletableFuture.completedFuture(new ArrayList<>(batchResponses));
+            }
+            log.warn("批量请求的返回结果与请求不对应，改为逐个发送");
+            List<CompletableFuture<? extends Response<?>>> futures = new ArrayList<>();
+            for (Request<?, ? extends Response<?>> request : requests) {
+                futures.add(request.sendAsync());
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+                List<Response<?>> responses = new ArrayList<>(futures.size());
+                futures.forEach(future -> responses.add(future.join()));
+                return responses;
+            });
+        });
+    }
+
+    /**
+     * 检查节点返回的结果是否有错误
+     *
+     * @param response 节点返回的结果
+     * @return 没有错误的结果
+     * @throws Exception 节点返回错误
+     */
+    private static Response<?> checkResponse(Response<?> response) throws Exception {
+        if (response.hasError()) {
+            throw new Exception("error: " + response.getError().getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * 签名并广播交易，根据交易参数选择普通交易或EIP-1559交易
+     * 节点返回错误时归还nonce，节点返回nonce过低或过高时重新与链上同步
+     * 与节点交互失败时用本地计算的hash查询节点是否已收到交易：已收到按成功处理，确认未收到才归还nonce，
+     * 无法确认时抛出UnknownBroadcastException
+     *
+     * @param param 交易参数
+     * @param to    发送的地址
+     * @param value 携带的eth数量(单位wei)
+     * @param data  发送的数据
+     * @return 节点的返回结果
+     * @throws Exception 与节点交互出现异常
+     */
+    private EthSendTransaction signAndSend(TxParam param, String to, BigInteger value, String data) throws Exception {
+        String hexValue;
+        try {
+            hexValue = sign(param, to, value, data);
+        } catch (RuntimeException e) {
+            nonceManager.release(param.nonce);
+            throw e;
+        }
+        // 发送数据
+        EthSendTransaction response;
+        try {
+            response = web3.ethSendRawTransaction(hexValue).send();
+        } catch (IOException e) {
+            String hash = Hash.sha3(hexValue);
+            EthTransaction lookup;
+            try {
+                lookup = web3.ethGetTransactionByHash(hash).send();
+            } catch (IOException lookupError) {
+                lookup = null;
+            }
+            response = onSendFailure(param, hash, e, lookup);
+        }
+        return onSent(param, hexValue, response);
+    }
+
+    /**
+     * 异步签名并广播交易，签名在异步线程池中执行，广播通过sendAsync发送
+     *
+     * @param param 交易参数
+     * @param to    发送的地址
+     * @param value 携带的eth数量(单位wei)
+     * @param data  发送的数据
+     * @return 节点的返回结果
+     */
+    private CompletableFuture<EthSendTransaction> signAndSendAsync(TxParam param, String to, BigInteger value, String data) {
+        return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return sign(param, to, value, data);
+                    } catch (RuntimeException e) {
+                        // 签名失败时交易未发送，归还nonce
+                        nonceManager.release(param.nonce);
+                        throw e;
+                    }
+                }, asyncExecutor)
+                .thenCompose(hexValue -> web3.ethSendRawTransaction(hexValue).sendAsync()
+                        .handle((response, error) -> {
+                            if (error == null) {
+                                return CompletableFuture.completedFuture(response);
+                            }
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                            if (!(cause instanceof IOException)) {
+                                return CompletableFuture.<EthSendTransaction>failedFuture(cause);
+                            }
+                            // 与节点交互失败时查询节点是否已收到交易
+                            String hash = Hash.sha3(hexValue);
+                            return web3.ethGetTransactionByHash(hash).sendAsync()
+                                    .handle((lookup, lookupError) -> {
+                                        try {
+                                            return onSendFailure(param, hash, (IOException) cause, lookup);
+                                        } catch (IOException e) {
+                                            throw new CompletionException(e);
+                                        }
+                                    });
+                        })
+                        .thenCompose(future -> future)
+                        .thenApplyAsync(response -> {
+                            try {
+                                return onSent(param, hexValue, response);
+                            } catch (Exception e) {
+                                throw new CompletionException(e);
+                            }
+                        }, asyncExecutor));
+    }
+
+    /**
+     * 签名交易
+     */
+    private String sign(TxParam param, String to, BigInteger value, String data) {
+        byte[] signedMessage;
+        if (param.maxFeePerGas != null) {
+            signedMessage = new Eip1559Transaction(param.chainId, param.nonce, param.maxPriorityFeePerGas,
+                    param.maxFeePerGas, param.gasLimit, to, value, data).sign(credentials);
+        } else {
+            RawTransaction rawTransaction = RawTransaction.createTransaction(param.nonce, param.gasPrice, param.gasLimit, to, value, data);
+            signedMessage = TransactionEncoder.signMessage(rawTransaction, param.chainId, credentials);
+        }
+        return Numeric.toHexString(signedMessage);
+    }
+
+    /**
+     * 广播交易与节点交互失败，根据节点是否已收到交易决定如何处理
+     *
+     * @param param  交易参数
+     * @param hash   本地计算的交易hash
+     * @param e      广播时的异常
+     * @param lookup 按hash查询交易的结果，查询失败为null
+     * @return 节点已收到交易时返回与广播成功一致的结果
+     * @throws IOException 节点未收到交易或无法确认
+     */
+    private EthSendTransaction onSendFailure(TxParam param, String hash, IOException e, EthTransaction lookup) throws IOException {
+        if (lookup == null || lookup.hasError()) {
+            // 无法确认节点是否已收到，nonce不归还，由调用方等待回执后确认
+            log.warn("广播交易失败且无法确认节点是否已收到, 交易hash: {}", hash);
+            throw new UnknownBroadcastException(hash, e);
+        }
+        if (!lookup.getTransaction().isPresent()) {
+            // 节点确认未收到交易，归还nonce
+            nonceManager.release(param.nonce);
+            throw e;
+        }
+        log.info("广播交易时与节点交互失败，但节点已收到交易: {}", hash);
+        EthSendTransaction response = new EthSendTransaction();
+        response.setResult(hash);
+        return response;
+    }
+
+    /**
+     * 处理节点广播交易的返回结果
+     * 节点返回already known说明已持有这笔签名完全相同的交易，按广播成功处理，交易hash在本地计算
+     */
+    private EthSendTransaction onSent(TxParam param, String hexValue, EthSendTransaction response) throws Exception {
+        if (response.hasError() && NonceManager.isAlreadyKnown(response.getError().getMessage())) {
+            String hash = Hash.sha3(hexValue);
+            log.info("节点已收到该交易: {}", hash);
+            response = new EthSendTransaction();
+            response.setResult(hash);
+        }
+        // 查看是否有错误
+        if (response.hasError()) {
+            String message = response.getError().getMessage();
+            if (NonceManager.isNonceError(message)) {
+                nonceManager.resync();
+            } else {
+                nonceManager.release(param.nonce);
+            }
+            throw new Exception("trade hash: " + response.getTransactionHash() +
+                    "\nerror: " + message);
+        }
+        // 收到回执后用实际消耗的gas更新缓存
+        if (param.cacheKey != null) {
+            getGasLimitCache().track(response.getTransactionHash(), param.cacheKey, param.gasLimit);
+        }
+        return response;
     }
 
     /**
@@ -509,6 +1069,187 @@ public class Web3jUtil {
                 response.getValue(), function.getOutputParameters());
     }
 
+    /**
+     * 异步读取合约状态
+     *
+     * @param contractAddress 合约地址
+     * @param functionName    合约函数名称
+     * @param input           输入参数和类型
+     * @param output          输出类型
+     * @return 合约函数返回值
+     */
+    public CompletableFuture<List<Type>> readContractAsync(String contractAddress, String functionName, List<Type> input, List<TypeReference<?>> output) {
+        // 生成需要调用函数的data
+        Function function = new Function(functionName, input, output);
+        String data = FunctionEncoder.encode(function);
+        return web3.ethCall(
+                        Transaction.createEthCallTransaction(ownerAddress, contractAddress, data),
+                        DefaultBlockParameterName.LATEST)
+                .sendAsync()
+                .thenApplyAsync(response -> {
+                    if (response.hasError()) {
+                        throw new CompletionException(new Exception("error: " + response.getError().getMessage()));
+                    }
+                    return FunctionReturnDecoder.decode(response.getValue(), function.getOutputParameters());
+                }, asyncExecutor);
+    }
+
+    /**
+     * 异步与合约交互
+     *
+     * @param contractAddress 交互合约地址
+     * @param functionName    交互函数名称
+     * @param value           携带的eth数量(单位Ether)
+     * @param input           输入参数
+     * @param output          输出参数类型
+     * @return 交易hash
+     */
+    public CompletableFuture<String> writeContractAsync(String contractAddress, String functionName, String value, List<Type> input, List<TypeReference<?>> output) {
+        BigInteger valueWei = Convert.toWei(value, Convert.Unit.ETHER).toBigInteger();
+        String data = FunctionEncoder.encode(new Function(functionName, input, output));
+        return prepareTransactionAsync(contractAddress, data, valueWei, GasLimitCache.key(contractAddress, data, input))
+                .thenCompose(param -> signAndSendAsync(param, contractAddress, valueWei, data)
+                        .thenApply(response -> {
+                            log.info("function: {} data: {}", functionName, data);
+                            log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(param.gasLimit.multiply(param.feePerGas())), Convert.Unit.ETHER));
+                            log.info("Trade Hash: {}", response.getTransactionHash());
+                            return response.getTransactionHash();
+                        }));
+    }
+
+    /**
+     * 异步直接发送data
+     *
+     * @param contractAddress 交互合约地址
+     * @param data            交互数据
+     * @param value           携带的eth数量(单位Ether)
+     * @return 交易hash
+     */
+    public CompletableFuture<String> writeContractAsync(String contractAddress, String data, String value) {
+        BigInteger valueWei = Convert.toWei(value, Convert.Unit.ETHER).toBigInteger();
+        return prepareTransactionAsync(contractAddress, data, valueWei, GasLimitCache.key(contractAddress, data, null))
+                .thenCompose(param -> signAndSendAsync(param, contractAddress, valueWei, data)
+                        .thenApply(response -> {
+                            log.info("data: {}", data);
+                            log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(param.gasLimit.multiply(param.feePerGas())), Convert.Unit.ETHER));
+                            log.info("Trade Hash: {}", response.getTransactionHash());
+                            return response.getTransactionHash();
+                        }));
+    }
+
+    /**
+     * 异步与合约交互
+     *
+     * @param contractAddress 交互合约地址
+     * @param functionName    交互函数名称
+     * @param input           输入参数
+     * @param output          输出参数类型
+     * @return 交易hash
+     */
+    public CompletableFuture<String> writeContractAsync(String contractAddress, String functionName, List<Type> input, List<TypeReference<?>> output) {
+        return writeContractAsync(contractAddress, functionName, "0", input, output);
+    }
+
+    /**
+     * 异步发送主网代币
+     *
+     * @param address 发送的地址
+     * @param amount  数量 单位：ether
+     * @return 交易hash
+     */
+    public CompletableFuture<String> sendEtherAsync(String address, String amount) {
+        BigInteger valueWei = Convert.toWei(amount, Convert.Unit.ETHER).toBigInteger();
+        return prepareTransactionAsync(address, "", valueWei, GasLimitCache.key(address, "", null))
+                .thenCompose(param -> signAndSendAsync(param, address, valueWei, "")
+                        .thenApply(response -> {
+                            log.info("Gas fee: {} ETH", Convert.fromWei(String.valueOf(param.gasLimit.multiply(param.feePerGas())), Convert.Unit.ETHER));
+                            log.info("Trade Hash: {}", response.getTransactionHash());
+                            return response.getTransactionHash();
+                        }));
+    }
+
+    /**
+     * 异步获取主网代币余额
+     *
+     * @param address 某个地址
+     * @return 主网余额 单位：ether
+     */
+    public CompletableFuture<String> getBalanceAsync(String address) {
+        return web3.ethGetBalance(address, DefaultBlockParameterName.LATEST)
+                .sendAsync()
+                .thenApplyAsync(ethGetBalance -> Convert.fromWei(new BigDecimal(ethGetBalance.getBalance()), Convert.Unit.ETHER).toPlainString(),
+                        asyncExecutor);
+    }
+
+    /**
+     * 异步获取某个代币的余额
+     *
+     * @param contractAddress 代币合约地址
+     * @param address         查询地址
+     * @return 余额：单位ether
+     */
+    public CompletableFuture<String> balanceOfAsync(String contractAddress, String address) {
+        List<Type> input = Collections.singletonList(new Address(address));
+        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Uint256>() {
+        });
+        return readContractAsync(contractAddress, "balanceOf", input, output)
+                .thenApply(o -> Convert.fromWei(((Uint256) o.get(0)).getValue().toString(), Convert.Unit.ETHER).toString());
+    }
+
+    /**
+     * 在异步线程池中执行会阻塞的操作
+     *
+     * @param callable 具体操作
+     * @param <T>      返回值类型
+     * @return 操作结果
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Callable<T> callable) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return callable.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, asyncExecutor);
+    }
+
+    /**
+     * 获取异步操作使用的线程池
+     *
+     * @return 线程池
+     */
+    public static Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * 设置异步操作使用的线程池，只影响本地步骤，不限制sendAsync的网络请求
+     *
+     * @param executor 线程池
+     */
+    public static void setAsyncExecutor(Executor executor) {
+        asyncExecutor = executor;
+    }
+
+    /**
+     * 创建有界的异步线程池，任务队列满时由提交任务的线程执行
+     *
+     * @param threads   线程数量
+     * @param queueSize 任务队列长度
+     * @return 线程池
+     */
+    public static ExecutorService newAsyncExecutor(int threads, int queueSize) {
+        AtomicInteger index = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize),
+                r -> {
+                    Thread thread = new Thread(r, "web3j-async-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
     /**
      * 授权操作(授权数量为2^256-1wei)
      *
@@ -526,6 +1267,23 @@ public class Web3jUtil {
         return writeContract(contractAddress, "approve", input, output);
     }
 
+    /**
+     * 授权指定数量
+     *
+     * @param contractAddress 代币合约地址
+     * @param spender         被授权的地址
+     * @param amount          授权数量 单位：wei
+     * @return 交易hash
+     * @throws Exception 与节点交互出现异常
+     */
+    public String approve(String contractAddress, String spender, String amount) throws Exception {
+        List input = Arrays.asList(new Address(spender)
+                , new Uint256(new BigInteger(amount, 10)));
+        List output = Arrays.asList(new TypeReference<Bool>() {
+        });
+        return writeContract(contractAddress, "approve", input, output);
+    }
+
     /**
      * 转账操作
      *
@@ -677,16 +1435,16 @@ public class Web3jUtil {
     }
 
     /**
-     * 返回绑定网络的信息
+     * 返回绑定网络的信息，通过RPC链接创建时根据chainId匹配
      *
      * @return ChainInfo枚举类
      */
     public ChainInfo getChainInfo() {
-        return chainInfo;
+        return chainInfo != null ? chainInfo : chainContext.getChainInfo();
     }
 
     /**
-     * 通过私钥获取公钥
+     * 通过私钥获取公钥，每次调用都会解析私钥，批量账户使用AccountPool
      *
      * @param privateKey 私钥
      * @return 公钥地址
@@ -695,4 +1453,30 @@ public class Web3jUtil {
         Credentials credentials = Credentials.create(privateKey);
         return credentials.getAddress();
     }
+
+    /**
+     * 发送一笔交易所需的参数
+     */
+    private static class TxParam {
+        private BigInteger gasLimit;
+        private BigInteger gasPrice;
+        private BigInteger maxFeePerGas;
+        private BigInteger maxPriorityFeePerGas;
+        private long chainId;
+        private BigInteger nonce;
+        private String cacheKey;
+        private final List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+        private Request<?, EthEstimateGas> estimateRequest;
+        private Request<?, EthChainId> chainIdRequest;
+        private Request<?, EthGetTransactionCount> countRequest;
+
+        /**
+         * 每单位gas最多支付的费用
+         *
+         * @return 普通交易为gasPrice，EIP-1559交易为maxFeePerGas
+         */
+        private BigInteger feePerGas() {
+            return maxFeePerGas != null ? maxFeePerGas : gasPrice;
+        }
+    }
 }
@@ -0,0 +1,689 @@
+package com.oxthink.web3.swap;
+
+import com.oxthink.constant.RouterInfo;
+import com.oxthink.web3.MulticallUtil;
+import com.oxthink.web3.ReserveCache;
+import com.oxthink.web3.Web3jUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint112;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint32;
+import org.web3j.crypto.Hash;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthBlockNumber;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工厂合约下所有pair组成的代币图
+ * 首次使用时通过allPairsLength/allPairs枚举所有pair，之后通过PairCreated事件增量更新，结果保存在本地文件中，重启后不需要重新枚举
+ * 代币和pair都用int编号，邻接表为int数组；在缓存的存储量上搜索不超过k跳的最优兑换路径
+ */
+@Slf4j
+public class PairGraph {
+
+    /**
+     * 所有router的代币图 key: router
+     */
+    private static final Map<RouterInfo, PairGraph> GRAPHS = new ConcurrentHashMap<>();
+
+    /**
+     * PairCreated(address,address,address,uint256)事件的topic
+     */
+    private static final String PAIR_CREATED_TOPIC = Hash.sha3String("PairCreated(address,address,address,uint256)");
+
+    /**
+     * 本地文件格式版本
+     */
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * 枚举pair时每次Multicall查询的数量
+     */
+    private static final int ENUMERATE_BATCH_SIZE = 5000;
+
+    private final Web3jUtil web3;
+
+    private final RouterInfo routerInfo;
+
+    private final ReserveCache reserveCache;
+
+    /**
+     * 工厂地址
+     */
+    @Getter
+    private String factory;
+
+    /**
+     * 代币地址(小写) -> 编号
+     */
+    private final Map<String, Integer> tokenIndex = new HashMap<>();
+
+    /**
+     * 代币地址，按编号顺序每个20字节
+     */
+    private byte[] tokenAddress = new byte[20 * 1024];
+
+    private int tokenCount;
+
+    /**
+     * pair地址，按编号顺序每个20字节，编号与工厂的allPairs下标一致
+     */
+    private byte[] pairAddress = new byte[20 * 1024];
+
+    private int[] pairToken0 = new int[1024];
+
+    private int[] pairToken1 = new int[1024];
+
+    private int pairCount;
+
+    /**
+     * 邻接表 代币编号 -> 相连的pair编号
+     */
+    private int[][] adjacency = new int[1024][];
+
+    private int[] degree = new int[1024];
+
+    /**
+     * 搜索时从存储量缓存读取的存储量，按pair编号，同一次搜索中每个pair只读取一次
+     */
+    private double[] reserve0 = new double[1024];
+
+    private double[] reserve1 = new double[1024];
+
+    /**
+     * 每个pair的存储量是在哪一次搜索中读取的
+     */
+    private int[] reserveEpoch = new int[1024];
+
+    private int searchEpoch;
+
+    /**
+     * 已处理到的区块高度
+     */
+    @Getter
+    private long lastBlock;
+
+    /**
+     * 本地文件所在目录
+     */
+    private Path directory = Paths.get(System.getProperty("user.home"), ".web3jutils");
+
+    /**
+     * 一次eth_getLogs最多查询的区块数量
+     */
+    private volatile int maxBlockRange = 5000;
+
+    /**
+     * 自动拉取存储量时，每个代币最多拉取的pair数量
+     */
+    private volatile int maxPrefetchPerToken = 2000;
+
+    private ScheduledExecutorService scheduler;
+
+    public PairGraph(Web3jUtil web3, RouterInfo routerInfo) {
+        this.web3 = web3;
+        this.routerInfo = routerInfo;
+        this.reserveCache = web3.getReserveCache();
+    }
+
+    /**
+     * 获取某个router的代币图，同一router共用一个，首次获取时从本地文件加载
+     *
+     * @param web3       web3对象
+     * @param routerInfo router信息
+     * @return 代币图
+     */
+    public static PairGraph of(Web3jUtil web3, RouterInfo routerInfo) {
+        return GRAPHS.computeIfAbsent(routerInfo, k -> {
+            PairGraph graph = new PairGraph(web3, routerInfo);
+            graph.load();
+            return graph;
+        });
+    }
+
+    /**
+     * 设置本地文件所在目录，并从新目录加载
+     *
+     * @param directory 目录
+     */
+    public synchronized void setDirectory(String directory) {
+        this.directory = Paths.get(directory);
+        load();
+    }
+
+    /**
+     * 设置一次eth_getLogs最多查询的区块数量，需要小于节点的限制
+     *
+     * @param maxBlockRange 区块数量
+     */
+    public void setMaxBlockRange(int maxBlockRange) {
+        this.maxBlockRange = maxBlockRange;
+    }
+
+    /**
+     * 设置搜索时每个代币最多自动拉取存储量的pair数量
+     *
+     * @param maxPrefetchPerToken pair数量
+     */
+    public void setMaxPrefetchPerToken(int maxPrefetchPerToken) {
+        this.maxPrefetchPerToken = maxPrefetchPerToken;
+    }
+
+    /**
+     * 已知的代币数量
+     *
+     * @return 代币数量
+     */
+    public synchronized int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * 已知的pair数量
+     *
+     * @return pair数量
+     */
+    public synchronized int getPairCount() {
+        return pairCount;
+    }
+
+    /**
+     * 获取某个代币所在的所有pair
+     *
+     * @param token 代币地址
+     * @return pair地址
+     */
+    public synchronized List<String> getPairs(String token) {
+        Integer id = tokenIndex.get(token.toLowerCase());
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        List<String> pairs = new ArrayList<>(degree[id]);
+        for (int i = 0; i < degree[id]; i++) {
+            pairs.add(pairAddressOf(adjacency[id][i]));
+        }
+        return pairs;
+    }
+
+    /**
+     * 同步到最新区块：已有数据时通过PairCreated事件增量更新，否则(或事件不连续时)通过allPairs枚举
+     *
+     * @throws Exception 与节点交互失败
+     */
+    public synchronized void update() throws Exception {
+        if (factory == null) {
+            factory = routerInfo.getFactoryAddress().isEmpty()
+                    ? web3.getChainContext().getFactoryAddress(routerInfo.getRouterAddress()) : routerInfo.getFactoryAddress();
+        }
+        EthBlockNumber ethBlockNumber = web3.getWeb3().ethBlockNumber().send();
+        if (ethBlockNumber.hasError()) {
+            throw new Exception("error: " + ethBlockNumber.getError().getMessage());
+        }
+        long head = ethBlockNumber.getBlockNumber().longValue();
+        int before = pairCount;
+        boolean complete = lastBlock > 0 && applyPairCreatedLogs(lastBlock + 1, head);
+        if (!complete) {
+            enumerate();
+        }
+        lastBlock = head;
+        if (pairCount != before) {
+            log.info("{} 新增{}个pair，共{}个pair，{}个代币", routerInfo.getRouterName(), pairCount - before, pairCount, tokenCount);
+        }
+        save();
+    }
+
+    /**
+     * 启动后台增量更新
+     *
+     * @param intervalMillis 更新间隔 单位:ms
+     */
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pair-graph");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                update();
+            } catch (Exception e) {
+                log.warn("更新{}代币图失败: {}", routerInfo.getRouterName(), e.getMessage());
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台增量更新
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 通过一次Multicall拉取pair的存储量，同时写入存储量缓存
+     *
+     * @param pairs pair地址
+     * @throws Exception 与节点交互失败
+     */
+    public void prefetchReserves(Collection<String> pairs) throws Exception {
+        List<String> list = new ArrayList<>(pairs);
+        MulticallUtil multicall = new MulticallUtil(web3);
+        for (String pair : list) {
+            multicall.addCall(pair, "getReserves", new ArrayList<>(), Arrays.asList(new TypeReference<Uint112>() {
+            }, new TypeReference<Uint112>() {
+            }, new TypeReference<Uint32>() {
+            }));
+        }
+        MulticallUtil.Result result = multicall.execute();
+        for (int i = 0; i < list.size(); i++) {
+            MulticallUtil.CallResult callResult = result.getResults().get(i);
+            if (callResult.isSuccess()) {
+                List<Type> values = callResult.getValues();
+                reserveCache.put(list.get(i), (BigInteger) values.get(0).getValue(), (BigInteger) values.get(1).getValue(), result.getBlockNumber());
+            }
+        }
+    }
+
+    /**
+     * 在缓存的存储量上搜索不超过maxHops跳的最优兑换路径
+     * 输入和输出代币相连但还没有存储量的pair会先通过一次Multicall拉取；中间代币只使用已缓存的存储量
+     * 搜索使用浮点数，结果路径需要用V2Quoter重新精确计算
+     *
+     * @param tokenIn  输入代币
+     * @param amountIn 输入数量，单位wei
+     * @param tokenOut 输出代币
+     * @param maxHops  最大跳数
+     * @return 最优路径，没有可用路径返回null
+     * @throws Exception 与节点交互失败
+     */
+    public List<String> findBestPath(String tokenIn, BigInteger amountIn, String tokenOut, int maxHops) throws Exception {
+        prefetchEndpoints(tokenIn, tokenOut);
+        synchronized (this) {
+            Integer in = tokenIndex.get(tokenIn.toLowerCase());
+            Integer out = tokenIndex.get(tokenOut.toLowerCase());
+            if (in == null || out == null) {
+                return null;
+            }
+            searchEpoch++;
+            return search(in, out, amountIn.doubleValue(), maxHops);
+        }
+    }
+
+    /**
+     * 逐层松弛：第h层记录恰好h跳能到达每个代币的最大数量及前驱pair，路径中不重复经过同一个代币
+     */
+    private List<String> search(int in, int out, double amountIn, int maxHops) {
+        double feeFactor = (double) (routerInfo.getFeeBase() - routerInfo.getSwapFee()) / routerInfo.getFeeBase();
+        List<Map<Integer, double[]>> layers = new ArrayList<>();
+        Map<Integer, double[]> first = new HashMap<>();
+        // value: [数量, 前驱pair编号, 前驱代币编号]
+        first.put(in, new double[]{amountIn, -1, -1});
+        layers.add(first);
+        double bestOut = 0;
+        int bestLayer = -1;
+        for (int h = 1; h <= maxHops; h++) {
+            Map<Integer, double[]> previous = layers.get(h - 1);
+            Map<Integer, double[]> next = new HashMap<>();
+            boolean last = h == maxHops;
+            for (Map.Entry<Integer, double[]> entry : previous.entrySet()) {
+                int token = entry.getKey();
+                if (token == out) {
+                    continue;
+                }
+                double amount = entry.getValue()[0];
+                for (int i = 0; i < degree[token]; i++) {
+                    int pair = adjacency[token][i];
+                    boolean zeroForOne = pairToken0[pair] == token;
+                    int other = zeroForOne ? pairToken1[pair] : pairToken0[pair];
+                    // 最后一跳只需要到达输出代币
+                    if (other == in || (last && other != out)) {
+                        continue;
+                    }
+                    loadReserves(pair);
+                    double reserveIn = zeroForOne ? reserve0[pair] : reserve1[pair];
+                    double reserveOut = zeroForOne ? reserve1[pair] : reserve0[pair];
+                    if (reserveIn <= 0 || reserveOut <= 0) {
+                        continue;
+                    }
+                    double amountInWithFee = amount * feeFactor;
+                    double amountOut = amountInWithFee * reserveOut / (reserveIn + amountInWithFee);
+                    double[] current = next.get(other);
+                    if ((current == null || amountOut > current[0]) && !visited(layers, h - 1, token, other)) {
+                        next.put(other, new double[]{amountOut, pair, token});
+                    }
+                }
+            }
+            layers.add(next);
+            double[] reached = next.get(out);
+            if (reached != null && reached[0] > bestOut) {
+                bestOut = reached[0];
+                bestLayer = h;
+            }
+            if (next.isEmpty()) {
+                break;
+            }
+        }
+        if (bestLayer < 0) {
+            return null;
+        }
+        List<String> path = new ArrayList<>();
+        int token = out;
+        for (int h = bestLayer; h >= 0; h--) {
+            path.add(tokenAddressOf(token));
+            token = (int) layers.get(h).get(token)[2];
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * 第h层到达token的路径上是否已经经过target
+     */
+    private static boolean visited(List<Map<Integer, double[]>> layers, int h, int token, int target) {
+        for (int i = h; i >= 0 && token >= 0; i--) {
+            if (token == target) {
+                return true;
+            }
+            token = (int) layers.get(i).get(token)[2];
+        }
+        return false;
+    }
+
+    /**
+     * 拉取输入和输出代币相连的pair中还没有存储量的部分
+     */
+    private void prefetchEndpoints(String tokenIn, String tokenOut) throws Exception {
+        List<String> missing = new ArrayList<>();
+        for (String token : Arrays.asList(tokenIn, tokenOut)) {
+            List<String> pairs = getPairs(token);
+            int count = 0;
+            for (String pair : pairs) {
+                if (count >= maxPrefetchPerToken) {
+                    break;
+                }
+                if (reserveCache.get(pair) == null) {
+                    missing.add(pair);
+                    count++;
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            prefetchReserves(missing);
+        }
+    }
+
+    /**
+     * 从存储量缓存读取pair的存储量，没有缓存时为0
+     */
+    private void loadReserves(int pair) {
+        if (reserveEpoch[pair] == searchEpoch) {
+            return;
+        }
+        reserveEpoch[pair] = searchEpoch;
+        ReserveCache.Reserves reserves = reserveCache.get(pairAddressOf(pair));
+        reserve0[pair] = reserves == null ? 0 : reserves.getReserve0().doubleValue();
+        reserve1[pair] = reserves == null ? 0 : reserves.getReserve1().doubleValue();
+    }
+
+    /**
+     * 应用区块范围内的PairCreated事件
+     *
+     * @return 事件连续且全部应用返回true，需要重新枚举返回false
+     */
+    private boolean applyPairCreatedLogs(long from, long to) throws Exception {
+        if (from > to) {
+            return true;
+        }
+        List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+        for (long start = from; start <= to; start += maxBlockRange) {
+            long end = Math.min(start + maxBlockRange - 1, to);
+            EthFilter filter = new EthFilter(DefaultBlockParameter.valueOf(BigInteger.valueOf(start)),
+                    DefaultBlockParameter.valueOf(BigInteger.valueOf(end)), factory);
+            filter.addSingleTopic(PAIR_CREATED_TOPIC);
+            requests.add(web3.getWeb3().ethGetLogs(filter));
+        }
+        List<Log> logs = new ArrayList<>();
+        for (Response<?> response : web3.sendBatch(requests)) {
+            EthLog ethLog = (EthLog) response;
+            if (ethLog.hasError()) {
+                log.warn("拉取PairCreated事件失败: {}，改为枚举", ethLog.getError().getMessage());
+                return false;
+            }
+            for (EthLog.LogResult<?> result : ethLog.getLogs()) {
+                logs.add((Log) result.get());
+            }
+        }
+        for (Log event : logs) {
+            if (event.isRemoved() || event.getTopics().size() < 3) {
+                continue;
+            }
+            byte[] data = Numeric.hexStringToByteArray(event.getData());
+            if (data.length < 64) {
+                continue;
+            }
+            // data: pair地址, allPairs.length
+            int index = new BigInteger(1, Arrays.copyOfRange(data, 32, 64)).intValueExact() - 1;
+            if (index < pairCount) {
+                continue;
+            }
+            if (index > pairCount) {
+                return false;
+            }
+            addPair(Arrays.copyOfRange(data, 12, 32),
+                    Numeric.hexStringToByteArray(event.getTopics().get(1).substring(26)),
+                    Numeric.hexStringToByteArray(event.getTopics().get(2).substring(26)));
+        }
+        return true;
+    }
+
+    /**
+     * 通过allPairsLength/allPairs枚举还未加载的pair，每批保存一次，中断后可以继续
+     */
+    private void enumerate() throws Exception {
+        MulticallUtil multicall = new MulticallUtil(web3);
+        multicall.addCall(factory, "allPairsLength", new ArrayList<>(), Collections.singletonList(new TypeReference<Uint256>() {
+        }));
+        int length = ((BigInteger) multicall.execute().get(0).get(0).getValue()).intValueExact();
+        while (pairCount < length) {
+            int from = pairCount;
+            int end = Math.min(from + ENUMERATE_BATCH_SIZE, length);
+            for (int i = from; i < end; i++) {
+                multicall.addCall(factory, "allPairs", Collections.singletonList(new Uint256(i)),
+                        Collections.singletonList(new TypeReference<Address>() {
+                        }));
+            }
+            MulticallUtil.Result pairs = multicall.execute();
+            List<String> addresses = new ArrayList<>(end - from);
+            for (int i = 0; i < end - from; i++) {
+                String pair = ((Address) pairs.get(i).get(0)).getValue();
+                addresses.add(pair);
+                multicall.addCall(pair, "token0", new ArrayList<>(), Collections.singletonList(new TypeReference<Address>() {
+                }));
+                multicall.addCall(pair, "token1", new ArrayList<>(), Collections.singletonList(new TypeReference<Address>() {
+                }));
+            }
+            MulticallUtil.Result tokens = multicall.execute();
+            for (int i = 0; i < addresses.size(); i++) {
+                addPair(Numeric.hexStringToByteArray(addresses.get(i)),
+                        Numeric.hexStringToByteArray(((Address) tokens.get(2 * i).get(0)).getValue()),
+                        Numeric.hexStringToByteArray(((Address) tokens.get(2 * i + 1).get(0)).getValue()));
+            }
+            log.info("{} 已枚举{}/{}个pair", routerInfo.getRouterName(), pairCount, length);
+            save();
+        }
+    }
+
+    /**
+     * 添加一个pair，编号为当前pair数量
+     */
+    private void addPair(byte[] pair, byte[] token0, byte[] token1) {
+        if (pairCount == pairToken0.length) {
+            int capacity = pairCount * 2;
+            pairToken0 = Arrays.copyOf(pairToken0, capacity);
+            pairToken1 = Arrays.copyOf(pairToken1, capacity);
+            pairAddress = Arrays.copyOf(pairAddress, capacity * 20);
+            reserve0 = Arrays.copyOf(reserve0, capacity);
+            reserve1 = Arrays.copyOf(reserve1, capacity);
+            reserveEpoch = Arrays.copyOf(reserveEpoch, capacity);
+        }
+        int id = pairCount++;
+        System.arraycopy(pair, 0, pairAddress, id * 20, 20);
+        pairToken0[id] = tokenId(token0);
+        pairToken1[id] = tokenId(token1);
+        addEdge(pairToken0[id], id);
+        addEdge(pairToken1[id], id);
+    }
+
+    private int tokenId(byte[] token) {
+        String key = Numeric.toHexString(token);
+        Integer id = tokenIndex.get(key);
+        if (id != null) {
+            return id;
+        }
+        if (tokenCount == degree.length) {
+            int capacity = tokenCount * 2;
+            degree = Arrays.copyOf(degree, capacity);
+            adjacency = Arrays.copyOf(adjacency, capacity);
+            tokenAddress = Arrays.copyOf(tokenAddress, capacity * 20);
+        }
+        id = tokenCount++;
+        System.arraycopy(token, 0, tokenAddress, id * 20, 20);
+        adjacency[id] = new int[2];
+        tokenIndex.put(key, id);
+        return id;
+    }
+
+    private void addEdge(int token, int pair) {
+        if (degree[token] == adjacency[token].length) {
+            adjacency[token] = Arrays.copyOf(adjacency[token], degree[token] * 2);
+        }
+        adjacency[token][degree[token]++] = pair;
+    }
+
+    private String pairAddressOf(int pair) {
+        return Numeric.toHexString(pairAddress, pair * 20, 20, true);
+    }
+
+    private String tokenAddressOf(int token) {
+        return Numeric.toHexString(tokenAddress, token * 20, 20, true);
+    }
+
+    private Path file() throws IOException {
+        return directory.resolve(String.format("pairs-%d-%s.bin", web3.getChainContext().getChainId(), factory.toLowerCase()));
+    }
+
+    /**
+     * 保存到本地文件
+     * 格式: 版本, 已处理区块, 代币数量, 代币地址..., pair数量, (pair地址, token0编号, token1编号)...
+     */
+    private void save() {
+        try {
+            Path file = file();
+            Files.createDirectories(directory);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_VERSION);
+                out.writeLong(lastBlock);
+                out.writeInt(tokenCount);
+                out.write(tokenAddress, 0, tokenCount * 20);
+                out.writeInt(pairCount);
+                for (int i = 0; i < pairCount; i++) {
+                    out.write(pairAddress, i * 20, 20);
+                    out.writeInt(pairToken0[i]);
+                    out.writeInt(pairToken1[i]);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("保存{}代币图失败: {}", routerInfo.getRouterName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 从本地文件加载，文件不存在时为空图
+     */
+    private synchronized void load() {
+        try {
+            if (factory == null) {
+                factory = routerInfo.getFactoryAddress().isEmpty()
+                        ? web3.getChainContext().getFactoryAddress(routerInfo.getRouterAddress()) : routerInfo.getFactoryAddress();
+            }
+            Path file = file();
+            if (!Files.exists(file)) {
+                return;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != FILE_VERSION) {
+                    return;
+                }
+                long block = in.readLong();
+                int tokens = in.readInt();
+                byte[] addresses = new byte[tokens * 20];
+                in.readFully(addresses);
+                int pairs = in.readInt();
+                clear();
+                for (int i = 0; i < tokens; i++) {
+                    tokenId(Arrays.copyOfRange(addresses, i * 20, i * 20 + 20));
+                }
+                byte[] pair = new byte[20];
+                for (int i = 0; i < pairs; i++) {
+                    in.readFully(pair);
+                    int token0 = in.readInt();
+                    int token1 = in.readInt();
+                    addPair(pair, Arrays.copyOfRange(addresses, token0 * 20, token0 * 20 + 20),
+                            Arrays.copyOfRange(addresses, token1 * 20, token1 * 20 + 20));
+                }
+                lastBlock = block;
+            }
+            log.info("从{}加载了{}个pair", file, pairCount);
+        } catch (Exception e) {
+            log.warn("加载{}代币图失败: {}", routerInfo.getRouterName(), e.getMessage());
+            clear();
+        }
+    }
+
+    private void clear() {
+        tokenIndex.clear();
+        tokenCount = 0;
+        pairCount = 0;
+        lastBlock = 0;
+        Arrays.fill(degree, 0);
+    }
+}
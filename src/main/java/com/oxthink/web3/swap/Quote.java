@@ -0,0 +1,115 @@
+package com.oxthink.web3.swap;
+
+import com.oxthink.constant.RouterInfo;
+import lombok.Getter;
+import org.web3j.utils.Convert;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * 兑换报价
+ * 记录选定的router、路径和输出数量，在有效期内可以直接用于兑换，不需要再次报价
+ * 有效期由时间和区块数共同决定，任意一个超过即过期
+ */
+@Getter
+public class Quote {
+
+    /**
+     * 报价的router
+     */
+    private final RouterInfo routerInfo;
+
+    /**
+     * 兑换路径
+     */
+    private final List<String> path;
+
+    /**
+     * 输入数量，单位wei
+     */
+    private final BigInteger amountIn;
+
+    /**
+     * 输出数量，单位wei
+     */
+    private final BigInteger amountOut;
+
+    /**
+     * 报价所用数据有效的区块高度（镜像已同步到的区块或读取时的区块），未知时为null
+     */
+    private final BigInteger blockNumber;
+
+    /**
+     * 预计的gas成本，已换算为输出代币，单位wei，未计算时为null
+     */
+    private final BigInteger gasCost;
+
+    /**
+     * 过期时间 单位:ms
+     */
+    private final long expireTime;
+
+    /**
+     * 报价可以使用到的最大区块高度，区块高度未知时为null
+     */
+    private final BigInteger maxBlockNumber;
+
+    Quote(RouterInfo routerInfo, V2Quoter.PathQuote quote, long ttlMillis, int maxBlocks) {
+        this.routerInfo = routerInfo;
+        this.path = quote.getPath();
+        this.amountIn = quote.getAmounts().get(0);
+        this.amountOut = quote.getAmountOut();
+        this.blockNumber = quote.getBlockNumber();
+        this.gasCost = quote.getGasCost();
+        this.expireTime = System.currentTimeMillis() + ttlMillis;
+        this.maxBlockNumber = blockNumber == null ? null : blockNumber.add(BigInteger.valueOf(maxBlocks));
+    }
+
+    /**
+     * 是否已过期
+     *
+     * @param currentBlock 当前区块高度，未知时传null，只判断时间
+     * @return 过期返回true
+     */
+    public boolean isExpired(BigInteger currentBlock) {
+        if (System.currentTimeMillis() > expireTime) {
+            return true;
+        }
+        return currentBlock != null && maxBlockNumber != null && currentBlock.compareTo(maxBlockNumber) > 0;
+    }
+
+    /**
+     * 扣除gas成本后的输出数量
+     *
+     * @return 净输出数量，单位wei，未计算gas成本时与输出数量相同
+     */
+    public BigInteger getNetAmountOut() {
+        return gasCost == null ? amountOut : amountOut.subtract(gasCost);
+    }
+
+    /**
+     * 获取输入数量
+     *
+     * @return 输入数量，单位ether
+     */
+    public String getAmountInEther() {
+        return Convert.fromWei(new BigDecimal(amountIn), Convert.Unit.ETHER).toPlainString();
+    }
+
+    /**
+     * 获取输出数量
+     *
+     * @return 输出数量，单位ether
+     */
+    public String getAmountOutEther() {
+        return Convert.fromWei(new BigDecimal(amountOut), Convert.Unit.ETHER).toPlainString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s amountOut: %s netAmountOut: %s block: %s", routerInfo.getRouterName(), path,
+                getAmountOutEther(), Convert.fromWei(new BigDecimal(getNetAmountOut()), Convert.Unit.ETHER), blockNumber);
+    }
+}
@@ -3,7 +3,13 @@ package com.oxthink.web3.swap;
 import com.oxthink.constant.RouterInfo;
 import com.oxthink.constant.TokenInfo;
 import com.oxthink.tool.StringUtil;
+import com.oxthink.web3.GasLimitCache;
+import com.oxthink.web3.GasOracle;
+import com.oxthink.web3.MulticallUtil;
+import com.oxthink.web3.PairAddressUtil;
 import com.oxthink.web3.PairUtil;
+import com.oxthink.web3.ReserveCache;
+import com.oxthink.web3.ReserveMirror;
 import com.oxthink.web3.Web3jUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.web3j.abi.TypeReference;
@@ -11,7 +17,9 @@ import org.web3j.abi.datatypes.Address;
 import org.web3j.abi.datatypes.Bool;
 import org.web3j.abi.datatypes.DynamicArray;
 import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint112;
 import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint32;
 import org.web3j.utils.Convert;
 
 import java.math.BigDecimal;
@@ -20,6 +28,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Slf4j
 public class RouterUtil {
@@ -35,23 +47,77 @@ public class RouterUtil {
     final Web3jUtil web3;
 
     /**
-     * 常用用于组lp的代币信息
+     * 本地报价
      */
-    public List<String> commonPairToken = new ArrayList<>();
+    final V2Quoter quoter;
+
+    /**
+     * 常用用于组lp的代币信息，共用实例会被并发报价遍历，使用写时复制列表
+     */
+    public List<String> commonPairToken = new CopyOnWriteArrayList<>();
+
+    /**
+     * 工厂的代币图，启用后getBestPath会额外在代币图上搜索多跳路径
+     */
+    PairGraph pairGraph;
+
+    /**
+     * 代币图搜索的最大跳数
+     */
+    int maxHops = 3;
+
+    /**
+     * 选择路径时是否扣除gas成本，按净输出排序
+     */
+    volatile boolean gasAware = true;
+
+    /**
+     * 报价的有效期 单位:ms
+     */
+    long quoteTtlMillis = 3000;
+
+    /**
+     * 报价最多可以使用的区块数
+     */
+    int quoteMaxBlocks = 1;
+
+    /**
+     * 没有gas记录时一跳兑换的gas用量
+     */
+    private static final long DEFAULT_SWAP_GAS = 110000;
+
+    /**
+     * 每多一跳增加的gas用量
+     */
+    private static final long GAS_PER_HOP = 70000;
+
+    /**
+     * 兑换函数的输出类型
+     */
+    private static final List<TypeReference<?>> SWAP_OUTPUT = Collections.singletonList(new TypeReference<Bool>() {
+    });
+
+    /**
+     * 共用的只读实例 key: router信息
+     */
+    private static final Map<RouterInfo, RouterUtil> SHARED = new ConcurrentHashMap<>();
 
     public RouterUtil(Web3jUtil web3, RouterInfo routerInfo) {
         this.web3 = web3;
         this.routerInfo = routerInfo;
+        this.quoter = new V2Quoter(this.web3, routerInfo);
     }
 
     public RouterUtil(String privateKey, RouterInfo routerInfo) {
         this.web3 = new Web3jUtil(routerInfo.getChainInfo(), privateKey);
         this.routerInfo = routerInfo;
+        this.quoter = new V2Quoter(this.web3, routerInfo);
     }
 
     public RouterUtil(RouterInfo routerInfo) {
         this.web3 = new Web3jUtil(routerInfo.getChainInfo());
         this.routerInfo = routerInfo;
+        this.quoter = new V2Quoter(this.web3, routerInfo);
     }
 
     /**
@@ -63,23 +129,23 @@ public class RouterUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public String getAmountOut(String amountIn, List<String> paths) throws Exception {
-        // 对象转换
-        List<Address> addressPath = new ArrayList<>();
-        for (String path : paths) {
-            addressPath.add(new Address(path));
-        }
-        List<Type> input = Arrays.asList(
-                new Uint256(Convert.toWei(amountIn, Convert.Unit.ETHER).toBigInteger()),
-                new DynamicArray<>(addressPath));
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<DynamicArray<Uint256>>() {
-        });
-        List<Type> res = web3.readContract(routerInfo.getRouterAddress(), "getAmountsOut", input, output);
-        List<Uint256> amounts = ((DynamicArray<Uint256>) res.get(0)).getValue();
-        // 拿到合约返回的结果(返回的最后结果，才是最终要输出的)
-        BigInteger amountOut = amounts.get(amounts.size() - 1).getValue();
+        // 使用缓存的存储量在本地计算，存储量过期时才调用router的getAmountsOut
+        List<BigInteger> amounts = quoter.getAmountsOut(Convert.toWei(amountIn, Convert.Unit.ETHER).toBigInteger(), paths);
+        BigInteger amountOut = amounts.get(amounts.size() - 1);
         return Convert.fromWei(amountOut.toString(), Convert.Unit.ETHER).toString();
     }
 
+    /**
+     * 异步获取代币兑换的输出
+     *
+     * @param amountIn 输入需要兑换的代币数量
+     * @param paths    兑换路径
+     * @return 代币兑换出的数量：单位ether
+     */
+    public CompletableFuture<String> getAmountOutAsync(String amountIn, List<String> paths) {
+        return Web3jUtil.supplyAsync(() -> getAmountOut(amountIn, paths));
+    }
+
     /**
      * Token兑换token(输入token数量确认)
      *
@@ -91,25 +157,7 @@ public class RouterUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public String swapExactTokensForTokens(String amountIn, String amountOutMin, List<String> paths, double slippage) throws Exception {
-        // 计算滑点
-        amountOutMin = new BigDecimal(amountOutMin).multiply(new BigDecimal(1 - slippage)).toBigInteger().toString();
-        // 对象转换
-        List<Address> addressPath = new ArrayList<>();
-        for (String path : paths) {
-            addressPath.add(new Address(path));
-        }
-        // 持续时间（20min）
-        long time = (System.currentTimeMillis()) / 1000 + 1200;
-        Uint256 deadline = new Uint256(new BigInteger(String.valueOf(time), 10));
-        List<Type> input = Arrays.asList(
-                new Uint256(Convert.toWei(amountIn, Convert.Unit.ETHER).toBigInteger()),
-                new Uint256(Convert.toWei(amountOutMin, Convert.Unit.ETHER).toBigInteger()),
-                new DynamicArray<>(addressPath),
-                new Address(web3.getOwnerAddress()),
-                deadline);
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Bool>() {
-        });
-        return web3.writeContract(routerInfo.getRouterAddress(), "swapExactTokensForTokens", input, output);
+        return web3.writeContract(routerInfo.getRouterAddress(), "swapExactTokensForTokens", swapInput(amountIn, amountOutMin, paths, slippage), SWAP_OUTPUT);
     }
 
     /**
@@ -123,25 +171,7 @@ public class RouterUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public String swapExactTokensForETH(String amountIn, String amountOutMin, List<String> paths, double slippage) throws Exception {
-        // 计算滑点
-        amountOutMin = new BigDecimal(amountOutMin).multiply(new BigDecimal(1 - slippage)).toBigInteger().toString();
-        // 对象转换
-        List<Address> addressPath = new ArrayList<>();
-        for (String path : paths) {
-            addressPath.add(new Address(path));
-        }
-        // 持续时间（20min）
-        long time = (System.currentTimeMillis()) / 1000 + 1200;
-        Uint256 deadline = new Uint256(new BigInteger(String.valueOf(time), 10));
-        List<Type> input = Arrays.asList(
-                new Uint256(Convert.toWei(amountIn, Convert.Unit.ETHER).toBigInteger()),
-                new Uint256(Convert.toWei(amountOutMin, Convert.Unit.ETHER).toBigInteger()),
-                new DynamicArray<>(addressPath),
-                new Address(web3.getOwnerAddress()),
-                deadline);
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Bool>() {
-        });
-        return web3.writeContract(routerInfo.getRouterAddress(), "swapExactTokensForETH", input, output);
+        return web3.writeContract(routerInfo.getRouterAddress(), "swapExactTokensForETH", swapInput(amountIn, amountOutMin, paths, slippage), SWAP_OUTPUT);
     }
 
     /**
@@ -155,24 +185,7 @@ public class RouterUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public String swapExactETHForTokens(String amountIn, String amountOutMin, List<String> paths, double slippage) throws Exception {
-        // 计算滑点
-        amountOutMin = new BigDecimal(amountOutMin).multiply(new BigDecimal(1 - slippage)).toBigInteger().toString();
-        // 对象转换
-        List<Address> addressPath = new ArrayList<>();
-        for (String path : paths) {
-            addressPath.add(new Address(path));
-        }
-        // 持续时间（20min）
-        long time = (System.currentTimeMillis()) / 1000 + 1200;
-        Uint256 deadline = new Uint256(new BigInteger(String.valueOf(time), 10));
-        List<Type> input = Arrays.asList(
-                new Uint256(Convert.toWei(amountOutMin, Convert.Unit.ETHER).toBigInteger()),
-                new DynamicArray<>(addressPath),
-                new Address(web3.getOwnerAddress()),
-                deadline);
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Bool>() {
-        });
-        return web3.writeContract(routerInfo.getRouterAddress(), "swapExactETHForTokens", amountIn, input, output);
+        return web3.writeContract(routerInfo.getRouterAddress(), "swapExactETHForTokens", amountIn, swapInput(null, amountOutMin, paths, slippage), SWAP_OUTPUT);
     }
 
     /**
@@ -197,20 +210,37 @@ public class RouterUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public boolean sellTuGou(String tokenAddress, String gasPrice, String amountIn, String minEthAmountOut, double slippage, int tryCount) throws Exception {
-        web3.setGasPriceLimit(gasPrice, gasPrice);
-        int count = 0;
         List<String> path = new ArrayList<>();
         path.add(tokenAddress);
         path.add(web3.getChainInfo().getWETHAddress());
+        return sellTuGou(getQuote(amountIn, path), gasPrice, minEthAmountOut, slippage, tryCount);
+    }
+
+    /**
+     * 使用已有的报价卖出土狗，每次尝试前只在报价过期时重新报价，输出数量低于预期时立即重新报价
+     *
+     * @param quote           卖出的报价，路径为 代币 -> WETH
+     * @param gasPrice        gas价格
+     * @param minEthAmountOut 能接受的最小eth数量(不计算滑点)
+     * @param slippage        卖出滑点
+     * @param tryCount        卖出尝试次数
+     * @return 是否成功
+     * @throws Exception 与节点交互失败会抛出异常
+     */
+    public boolean sellTuGou(Quote quote, String gasPrice, String minEthAmountOut, double slippage, int tryCount) throws Exception {
+        web3.setGasPriceLimit(gasPrice, gasPrice);
+        int count = 0;
         while (count < tryCount) {
             count++;
-            String out = getAmountOut(amountIn, path);
+            quote = refreshQuote(quote);
+            String out = quote.getAmountOutEther();
             // 兑换出的数量小于最小的心理预期，重试
             if (Double.parseDouble(out) < Double.parseDouble(minEthAmountOut)) {
                 log.info("当前可获得ETH数量: " + Double.parseDouble(out) + ",小于期待最小值，正在重试");
+                quote = getQuote(quote.getAmountInEther(), quote.getPath());
                 continue;
             }
-            String hash = swapExactTokensForETH(amountIn, out, path, slippage);
+            String hash = swapExactTokensForETH(quote.getAmountInEther(), out, quote.getPath(), slippage);
             boolean status = web3.blockTransactionUtilComplete(hash, 30 * 1000);
             if (status) {
                 log.info("买入土狗成功，交易hash: " + hash);
@@ -235,12 +265,12 @@ public class RouterUtil {
      */
     public String swapExactIn(String tokenIn, String amountIn, String tokenOut, String amountOutMin, double slippage) throws Exception {
         log.info("自动选择最优路径");
-        // 自动选择最优路径
-        List<String> path = getBestPath(tokenIn, amountIn, tokenOut);
-        if (path == null || path.isEmpty()) {
+        // 自动选择最优路径，选路时的报价直接用于兑换
+        Quote quote = getQuote(tokenIn, amountIn, tokenOut);
+        if (quote == null) {
             throw new Exception("自动寻找路径失败");
         }
-        return swapExactIn(tokenIn, amountIn, tokenOut, amountOutMin, path, slippage);
+        return swapExactIn(quote, amountOutMin, slippage);
     }
 
     /**
@@ -256,29 +286,182 @@ public class RouterUtil {
      * @throws Exception 与节点交互失败会抛出异常
      */
     public String swapExactIn(String tokenIn, String amountIn, String tokenOut, String amountOutMin, List<String> path, double slippage) throws Exception {
+        return swapExactIn(getQuote(amountIn, path), amountOutMin, slippage);
+    }
+
+    /**
+     * 使用已有的报价兑换，报价未过期时不再报价
+     *
+     * @param quote        报价，需要是当前router的报价
+     * @param amountOutMin 最小可接受的输出数量
+     * @param slippage     滑点（在amountOutMin的基础上）
+     * @return 交易hash
+     * @throws Exception 与节点交互失败会抛出异常
+     */
+    public String swapExactIn(Quote quote, String amountOutMin, double slippage) throws Exception {
+        quote = checkQuote(quote, amountOutMin);
         String wEth = web3.getChainInfo().getWETHAddress();
-        // 判断兑换出的数量能否满足要求
-        log.info("判断兑换出的数量能否满足要求");
-        String amountOut = getAmountOut(amountIn, path);
-        if (StringUtil.greatThan(amountOutMin, amountOut)) {
-            throw new Exception(String.format("当前输出数量为: %s,无法满足最小输出", amountOut));
-        }
         log.info("正在兑换");
+        List<String> path = quote.getPath();
+        String amountIn = quote.getAmountInEther();
         // 用eth兑换
-        if (tokenIn.equals(wEth)) {
+        if (path.get(0).equalsIgnoreCase(wEth)) {
             return swapExactETHForTokens(amountIn, amountOutMin, path, slippage);
         }
         // 兑换成eth
-        if (tokenOut.equals(wEth)) {
+        if (path.get(path.size() - 1).equalsIgnoreCase(wEth)) {
             return swapExactTokensForETH(amountIn, amountOutMin, path, slippage);
         }
         // token兑换成token
         return swapExactTokensForTokens(amountIn, amountOutMin, path, slippage);
     }
 
+    /**
+     * 检查报价是否属于当前router、兑换出的数量能否满足要求，报价过期时重新报价
+     */
+    private Quote checkQuote(Quote quote, String amountOutMin) throws Exception {
+        if (quote.getRouterInfo() != routerInfo) {
+            throw new Exception(String.format("error: 报价的router为%s，与当前router不一致", quote.getRouterInfo().getRouterName()));
+        }
+        log.info("判断兑换出的数量能否满足要求");
+        quote = refreshQuote(quote);
+        String amountOut = quote.getAmountOutEther();
+        if (StringUtil.greatThan(amountOutMin, amountOut)) {
+            throw new Exception(String.format("当前输出数量为: %s,无法满足最小输出", amountOut));
+        }
+        return quote;
+    }
 
     /**
-     * 自动寻找最优兑换路径，路径最大为三层
+     * 兑换函数的参数
+     *
+     * @param amountIn 输入的代币数量，为null时表示用ETH支付，不需要该参数
+     */
+    private List<Type> swapInput(String amountIn, String amountOutMin, List<String> paths, double slippage) {
+        // 计算滑点
+        amountOutMin = new BigDecimal(amountOutMin).multiply(new BigDecimal(1 - slippage)).toBigInteger().toString();
+        // 对象转换
+        List<Address> addressPath = new ArrayList<>();
+        for (String path : paths) {
+            addressPath.add(new Address(path));
+        }
+        // 持续时间（20min）
+        long time = (System.currentTimeMillis()) / 1000 + 1200;
+        Uint256 deadline = new Uint256(new BigInteger(String.valueOf(time), 10));
+        List<Type> input = new ArrayList<>();
+        if (amountIn != null) {
+            input.add(new Uint256(Convert.toWei(amountIn, Convert.Unit.ETHER).toBigInteger()));
+        }
+        input.add(new Uint256(Convert.toWei(amountOutMin, Convert.Unit.ETHER).toBigInteger()));
+        input.add(new DynamicArray<>(addressPath));
+        input.add(new Address(web3.getOwnerAddress()));
+        input.add(deadline);
+        return input;
+    }
+
+    /**
+     * 自动寻找最优路径并报价
+     *
+     * @param tokenIn  输入的token地址
+     * @param amountIn 输入的token数量
+     * @param tokenOut 输出的token地址
+     * @return 最优路径的报价，没有可用路径返回null
+     * @throws Exception 与节点交互失败
+     */
+    public Quote getQuote(String tokenIn, String amountIn, String tokenOut) throws Exception {
+        V2Quoter.PathQuote best = getBestQuote(tokenIn, Convert.toWei(amountIn, Convert.Unit.ETHER).toBigInteger(), tokenOut);
+        return best == null ? null : newQuote(best);
+    }
+
+    /**
+     * 对指定路径报价
+     *
+     * @param amountIn 输入的token数量
+     * @param path     兑换路径
+     * @return 报价
+     * @throws Exception 交易对不存在或与节点交互失败
+     */
+    public Quote getQuote(String amountIn, List<String> path) throws Exception {
+        V2Quoter.PathQuote quote = quoter.quoteAll(Convert.toWei(amountIn, Convert.Unit.ETHER).toBigInteger(), Collections.singletonList(path)).get(0);
+        if (!quote.isSuccess()) {
+            throw new Exception("error: " + quote.getError());
+        }
+        return newQuote(quote);
+    }
+
+    /**
+     * 设置报价的有效期，时间和区块数任意一个超过即过期
+     *
+     * @param ttlMillis 有效期 单位:ms
+     * @param maxBlocks 最多可以使用的区块数
+     */
+    public void setQuoteTtl(long ttlMillis, int maxBlocks) {
+        this.quoteTtlMillis = ttlMillis;
+        this.quoteMaxBlocks = maxBlocks;
+    }
+
+    Quote newQuote(V2Quoter.PathQuote quote) {
+        return new Quote(routerInfo, quote, quoteTtlMillis, quoteMaxBlocks);
+    }
+
+    /**
+     * 报价过期时重新报价，当前区块高度取自正常同步的存储量镜像，不额外与节点交互
+     */
+    private Quote refreshQuote(Quote quote) throws Exception {
+        ReserveMirror mirror = web3.getReserveMirror();
+        BigInteger currentBlock = mirror.isLive() ? mirror.getBlockNumber() : null;
+        if (!quote.isExpired(currentBlock)) {
+            return quote;
+        }
+        log.info("报价已过期，重新报价");
+        return getQuote(quote.getAmountInEther(), quote.getPath());
+    }
+
+    /**
+     * 异步通用兑换函数
+     *
+     * @param tokenIn      输入的token地址
+     * @param amountIn     输入的token数量
+     * @param tokenOut     输出的token地址
+     * @param amountOutMin 最小可接受的输出数量
+     * @param path         兑换路径
+     * @param slippage     滑点（在amountOutMin的基础上）
+     * @return 交易hash
+     */
+    public CompletableFuture<String> swapExactInAsync(String tokenIn, String amountIn, String tokenOut, String amountOutMin, List<String> path, double slippage) {
+        // 报价优先使用本地缓存的存储量，需要刷新时在异步线程池中请求
+        return Web3jUtil.supplyAsync(() -> getQuote(amountIn, path))
+                .thenCompose(quote -> swapExactInAsync(quote, amountOutMin, slippage));
+    }
+
+    /**
+     * 使用已有的报价异步兑换，交易通过sendAsync发送
+     *
+     * @param quote        报价，需要是当前router的报价
+     * @param amountOutMin 最小可接受的输出数量
+     * @param slippage     滑点（在amountOutMin的基础上）
+     * @return 交易hash
+     */
+    public CompletableFuture<String> swapExactInAsync(Quote quote, String amountOutMin, double slippage) {
+        return Web3jUtil.supplyAsync(() -> checkQuote(quote, amountOutMin))
+                .thenCompose(fresh -> {
+                    String wEth = web3.getChainInfo().getWETHAddress();
+                    List<String> path = fresh.getPath();
+                    String amountIn = fresh.getAmountInEther();
+                    log.info("正在兑换");
+                    // 用eth兑换
+                    if (path.get(0).equalsIgnoreCase(wEth)) {
+                        return web3.writeContractAsync(routerInfo.getRouterAddress(), "swapExactETHForTokens", amountIn,
+                                swapInput(null, amountOutMin, path, slippage), SWAP_OUTPUT);
+                    }
+                    String function = path.get(path.size() - 1).equalsIgnoreCase(wEth) ? "swapExactTokensForETH" : "swapExactTokensForTokens";
+                    return web3.writeContractAsync(routerInfo.getRouterAddress(), function,
+                            swapInput(amountIn, amountOutMin, path, slippage), SWAP_OUTPUT);
+                });
+    }
+
+    /**
+     * 自动寻找最优兑换路径，路径最大为三层，启用代币图后额外搜索不超过maxHops跳的路径
      *
      * @param tokenIn       输入代币
      * @param tokenAmountIn 输出代币
@@ -289,46 +472,135 @@ public class RouterUtil {
         if (tokenAmountIn.isEmpty()) {
             log.warn("常用组LP代币未配置");
         }
-        // 最优兑换路径
-        List<String> resPaths = null;
-        // 最优兑换数量
-        String maxAmountOut = "0";
-        // 直接兑换
+        V2Quoter.PathQuote best;
         try {
-            List<String> path = new ArrayList<>();
-            path.add(tokenIn);
-            path.add(tokenOut);
-            String amountOut = getAmountOut(tokenAmountIn, path);
-            log.info(String.format("tokenA -> tokenB \namountOut: %s", amountOut));
-            if (StringUtil.greatThan(amountOut, maxAmountOut)) {
-                maxAmountOut = amountOut;
-                resPaths = path;
-            }
+            best = getBestQuote(tokenIn, Convert.toWei(tokenAmountIn, Convert.Unit.ETHER).toBigInteger(), tokenOut);
         } catch (Exception e) {
-            log.info(String.format("无此交易对: %s -> %s", tokenIn, tokenOut));
+            log.error(String.format("获取报价失败: %s", e.getMessage()));
+            return null;
         }
-        // 走常见的中间兑换币进行兑换
+        List<String> resPaths = best == null ? null : best.getPath();
+        String maxAmountOut = best == null ? "0" : Convert.fromWei(new BigDecimal(best.getAmountOut()), Convert.Unit.ETHER).toString();
+        log.info(String.format("最优兑换路径: %s 最优兑换数量: %s", resPaths, maxAmountOut));
+        return resPaths;
+    }
+
+    /**
+     * 自动寻找最优兑换路径并返回报价，所有候选路径一次报价
+     *
+     * @param tokenIn  输入代币
+     * @param amountIn 输入数量，单位wei
+     * @param tokenOut 输出代币
+     * @return 最优路径的报价，没有可用路径返回null
+     * @throws Exception 与节点交互失败
+     */
+    public V2Quoter.PathQuote getBestQuote(String tokenIn, BigInteger amountIn, String tokenOut) throws Exception {
+        List<V2Quoter.PathQuote> quotes = getCandidateQuotes(tokenIn, amountIn, tokenOut);
+        return quotes.isEmpty() ? null : quotes.get(0);
+    }
+
+    /**
+     * 对所有候选路径报价：直接兑换、走常见的中间兑换币、代币图上的多跳路径，所有候选路径一次报价
+     *
+     * @param tokenIn  输入代币
+     * @param amountIn 输入数量，单位wei
+     * @param tokenOut 输出代币
+     * @return 有流动性的路径报价，按扣除gas成本后的净输出从大到小排序
+     * @throws Exception 与节点交互失败
+     */
+    public List<V2Quoter.PathQuote> getCandidateQuotes(String tokenIn, BigInteger amountIn, String tokenOut) throws Exception {
+        String chainName = web3.getChainInfo().getChainName();
+        List<List<String>> candidates = new ArrayList<>();
+        candidates.add(Arrays.asList(tokenIn, tokenOut));
         for (String pairToken : commonPairToken) {
-            if (pairToken.equals(tokenIn) || pairToken.equals(tokenOut)) {
+            if (pairToken.equalsIgnoreCase(tokenIn) || pairToken.equalsIgnoreCase(tokenOut)) {
                 continue;
             }
+            candidates.add(Arrays.asList(tokenIn, pairToken, tokenOut));
+        }
+        if (pairGraph != null) {
             try {
-                List<String> path = new ArrayList<>();
-                path.add(tokenIn);
-                path.add(pairToken);
-                path.add(tokenOut);
-                String amountOut = getAmountOut(tokenAmountIn, path);
-                log.info(String.format("tokenA -> %s -> tokenB \namountOut: %s", TokenInfo.getNameFormAddress(pairToken, web3.getChainInfo().getChainName()), amountOut));
-                if (StringUtil.greatThan(amountOut, maxAmountOut)) {
-                    maxAmountOut = amountOut;
-                    resPaths = path;
+                // 代币图返回的地址为小写，与候选路径比较时忽略大小写
+                List<String> path = pairGraph.findBestPath(tokenIn, amountIn, tokenOut, maxHops);
+                if (path != null && !containsPath(candidates, path)) {
+                    candidates.add(path);
                 }
             } catch (Exception e) {
-                log.info(String.format("寻找交易对失败: tokenA -> %s -> tokenB", TokenInfo.getNameFormAddress(pairToken, web3.getChainInfo().getChainName())));
+                log.info(String.format("代币图搜索失败: %s", e.getMessage()));
             }
         }
-        log.info(String.format("最优兑换路径: %s 最优兑换数量: %s", resPaths, maxAmountOut));
-        return resPaths;
+        // 用WETH兑换输出代币的报价换算gas成本，与候选路径一起报价
+        BigInteger gasPrice = gasAware ? getGasPrice() : BigInteger.ZERO;
+        String wEth = web3.getChainInfo().getWETHAddress();
+        BigInteger gasReference = gasPrice.multiply(BigInteger.valueOf(DEFAULT_SWAP_GAS));
+        List<BigInteger> amountsIn = new ArrayList<>(Collections.nCopies(candidates.size(), amountIn));
+        List<List<String>> paths = new ArrayList<>(candidates);
+        if (gasReference.signum() > 0 && !tokenOut.equalsIgnoreCase(wEth)) {
+            paths.add(Arrays.asList(wEth, tokenOut));
+            for (String pairToken : commonPairToken) {
+                if (!pairToken.equalsIgnoreCase(wEth) && !pairToken.equalsIgnoreCase(tokenOut)) {
+                    paths.add(Arrays.asList(wEth, pairToken, tokenOut));
+                }
+            }
+            amountsIn.addAll(Collections.nCopies(paths.size() - candidates.size(), gasReference));
+        }
+        List<V2Quoter.PathQuote> quotes = quoter.quoteAll(amountsIn, paths);
+        // gasReference个WETH可以兑换的输出代币数量
+        BigInteger gasReferenceOut = null;
+        if (gasReference.signum() > 0 && tokenOut.equalsIgnoreCase(wEth)) {
+            gasReferenceOut = gasReference;
+        }
+        for (V2Quoter.PathQuote quote : quotes.subList(candidates.size(), quotes.size())) {
+            if (quote.isSuccess() && (gasReferenceOut == null || quote.getAmountOut().compareTo(gasReferenceOut) > 0)) {
+                gasReferenceOut = quote.getAmountOut();
+            }
+        }
+        // 没有流动性的路径只记录失败原因
+        List<V2Quoter.PathQuote> result = new ArrayList<>();
+        for (V2Quoter.PathQuote quote : quotes.subList(0, candidates.size())) {
+            String name = pathName(quote.getPath(), chainName);
+            if (!quote.isSuccess()) {
+                log.info(String.format("寻找交易对失败: %s, %s", name, quote.getError()));
+                continue;
+            }
+            if (gasReferenceOut != null) {
+                BigInteger gas = estimateSwapGas(quote.getPath().size() - 1).multiply(gasPrice);
+                quote.setGasCost(gas.multiply(gasReferenceOut).divide(gasReference));
+            }
+            log.info(String.format("%s \namountOut: %s netAmountOut: %s", name,
+                    Convert.fromWei(new BigDecimal(quote.getAmountOut()), Convert.Unit.ETHER),
+                    Convert.fromWei(new BigDecimal(quote.getNetAmountOut()), Convert.Unit.ETHER)));
+            if (quote.getAmountOut().signum() > 0) {
+                result.add(quote);
+            }
+        }
+        result.sort((a, b) -> b.getNetAmountOut().compareTo(a.getNetAmountOut()));
+        return result;
+    }
+
+    /**
+     * 获取当前的gasPrice，用于估算兑换成本
+     *
+     * @return gasPrice，获取失败返回0，不扣除gas成本
+     */
+    private BigInteger getGasPrice() {
+        try {
+            return web3.getGasOracle().getSuggestion().getGasPrice(GasOracle.Speed.NORMAL);
+        } catch (Exception e) {
+            log.info(String.format("获取gasPrice失败: %s", e.getMessage()));
+            return BigInteger.ZERO;
+        }
+    }
+
+    /**
+     * 路径的日志名称，eg: tokenA -> USDT -> tokenB
+     */
+    private static String pathName(List<String> path, String chainName) {
+        StringBuilder name = new StringBuilder("tokenA");
+        for (int i = 1; i < path.size() - 1; i++) {
+            name.append(" -> ").append(TokenInfo.getNameFormAddress(path.get(i), chainName));
+        }
+        return name.append(" -> tokenB").toString();
     }
 
     /**
@@ -346,6 +618,88 @@ public class RouterUtil {
         return result;
     }
 
+    /**
+     * 启用工厂的代币图，首次使用需要枚举工厂的所有pair，之后从本地文件加载，
+     * 并启动后台线程每分钟通过PairCreated事件增量更新
+     *
+     * @param maxHops 搜索的最大跳数
+     * @throws Exception 与节点交互失败
+     */
+    public void enablePairGraph(int maxHops) throws Exception {
+        enablePairGraph(maxHops, 60000);
+    }
+
+    /**
+     * 启用工厂的代币图，并启动后台线程通过PairCreated事件增量更新，同一个router的代币图共用，只启动一次
+     *
+     * @param maxHops              搜索的最大跳数
+     * @param updateIntervalMillis 增量更新的间隔 单位:ms
+     * @throws Exception 与节点交互失败
+     */
+    public void enablePairGraph(int maxHops, long updateIntervalMillis) throws Exception {
+        PairGraph graph = PairGraph.of(web3, routerInfo);
+        graph.update();
+        graph.start(updateIntervalMillis);
+        this.maxHops = maxHops;
+        this.pairGraph = graph;
+    }
+
+    private static boolean containsPath(List<List<String>> paths, List<String> path) {
+        for (List<String> candidate : paths) {
+            if (candidate.size() != path.size()) {
+                continue;
+            }
+            boolean same = true;
+            for (int i = 0; same && i < path.size(); i++) {
+                same = candidate.get(i).equalsIgnoreCase(path.get(i));
+            }
+            if (same) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 设置选择路径时是否扣除gas成本，默认开启
+     *
+     * @param gasAware 是否扣除gas成本
+     */
+    public void setGasAware(boolean gasAware) {
+        this.gasAware = gasAware;
+    }
+
+    /**
+     * 估算兑换消耗的gas
+     * 优先使用该router上相同跳数的交易回执中实际消耗的gas，其次根据其他跳数的记录推算，都没有时使用默认值
+     *
+     * @param hops 跳数(路径长度 - 1)
+     * @return gas用量
+     */
+    public BigInteger estimateSwapGas(int hops) {
+        GasLimitCache cache = web3.getGasLimitCache();
+        BigInteger used = cache.getUsed(routerInfo.getRouterAddress(), hops + 1);
+        if (used != null) {
+            return used;
+        }
+        for (int known = 1; known <= 4; known++) {
+            used = cache.getUsed(routerInfo.getRouterAddress(), known + 1);
+            if (used != null) {
+                return used.add(BigInteger.valueOf((hops - known) * GAS_PER_HOP)).max(BigInteger.valueOf(DEFAULT_SWAP_GAS));
+            }
+        }
+        return BigInteger.valueOf(DEFAULT_SWAP_GAS + (hops - 1) * GAS_PER_HOP);
+    }
+
+    /**
+     * 获取工厂的代币图
+     *
+     * @return 代币图，未启用返回null
+     */
+    public PairGraph getPairGraph() {
+        return pairGraph;
+    }
+
     /**
      * 增加中间兑换pair
      *
@@ -364,8 +718,18 @@ public class RouterUtil {
         return routerInfo;
     }
 
+    /**
+     * 获取本地报价对象
+     *
+     * @return 本地报价
+     */
+    public V2Quoter getQuoter() {
+        return quoter;
+    }
+
     /**
      * 获取lp流动对地址
+     * router配置了init code hash时在本地计算，不与节点交互
      *
      * @param token0 用于组流动性的token
      * @param token1 用于组流动性的token
@@ -373,23 +737,100 @@ public class RouterUtil {
      * @throws Exception 与节点交互出现异常
      */
     public String getPairAddress(String token0, String token1) throws Exception {
+        if (routerInfo.canComputePairAddress()) {
+            return routerInfo.computePairAddress(token0, token1);
+        }
         String factory = getPairFactoryAddress();
         PairUtil pairUtil = new PairUtil(web3);
         return pairUtil.getPair(factory, token0, token1);
     }
 
     /**
-     * 获取LP pair工厂地址
+     * 批量获取lp流动对地址
+     * router配置了init code hash时在本地计算，否则通过一次Multicall查询工厂合约
+     *
+     * @param tokensA    用于组流动性的token
+     * @param tokensB    用于组流动性的token，与tokensA一一对应
+     * @param checkExist 是否检查pair已经创建，检查时通过一次Multicall读取存储量，并写入存储量缓存
+     * @return lp流动对地址，顺序与输入一致，不存在的pair为0地址
+     * @throws Exception 与节点交互出现异常
+     */
+    public List<String> getPairAddresses(List<String> tokensA, List<String> tokensB, boolean checkExist) throws Exception {
+        if (!routerInfo.canComputePairAddress()) {
+            return getPairAddressesFromFactory(tokensA, tokensB);
+        }
+        List<String> pairs = new ArrayList<>(PairAddressUtil.computePairAddresses(
+                routerInfo.getFactoryAddress(), routerInfo.getInitCodeHash(), tokensA, tokensB));
+        if (!checkExist) {
+            return pairs;
+        }
+        MulticallUtil multicall = new MulticallUtil(web3);
+        for (String pair : pairs) {
+            multicall.addCall(pair, "getReserves", new ArrayList<>(), Arrays.asList(new TypeReference<Uint112>() {
+            }, new TypeReference<Uint112>() {
+            }, new TypeReference<Uint32>() {
+            }));
+        }
+        MulticallUtil.Result result = multicall.execute();
+        ReserveCache reserveCache = web3.getReserveCache();
+        for (int i = 0; i < pairs.size(); i++) {
+            MulticallUtil.CallResult callResult = result.getResults().get(i);
+            // 地址上没有合约时调用成功但没有返回数据
+            if (callResult.isSuccess()) {
+                List<Type> values = callResult.getValues();
+                reserveCache.put(pairs.get(i), (BigInteger) values.get(0).getValue(), (BigInteger) values.get(1).getValue(), result.getBlockNumber());
+            } else {
+                pairs.set(i, V2Quoter.ZERO_ADDRESS);
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * 通过一次Multicall查询工厂合约的getPair
+     */
+    private List<String> getPairAddressesFromFactory(List<String> tokensA, List<String> tokensB) throws Exception {
+        String factory = getPairFactoryAddress();
+        MulticallUtil multicall = new MulticallUtil(web3);
+        for (int i = 0; i < tokensA.size(); i++) {
+            multicall.addCall(factory, "getPair", Arrays.asList(new Address(tokensA.get(i)), new Address(tokensB.get(i))),
+                    Collections.singletonList(new TypeReference<Address>() {
+                    }));
+        }
+        MulticallUtil.Result result = multicall.execute();
+        List<String> pairs = new ArrayList<>(tokensA.size());
+        for (int i = 0; i < tokensA.size(); i++) {
+            pairs.add(((Address) result.get(i).get(0)).getValue());
+        }
+        return pairs;
+    }
+
+    /**
+     * 异步获取lp流动对地址
+     *
+     * @param token0 用于组流动性的token
+     * @param token1 用于组流动性的token
+     * @return lp流动对地址
+     */
+    public CompletableFuture<String> getPairAddressAsync(String token0, String token1) {
+        if (routerInfo.canComputePairAddress()) {
+            return CompletableFuture.completedFuture(routerInfo.computePairAddress(token0, token1));
+        }
+        return Web3jUtil.supplyAsync(this::getPairFactoryAddress)
+                .thenCompose(factory -> new PairUtil(web3).getPairAsync(factory, token0, token1));
+    }
+
+    /**
+     * 获取LP pair工厂地址，优先使用RouterInfo中配置的地址，否则同一节点上每个router只查询一次
      *
      * @return LP pair工厂地址
      * @throws Exception 与节点交互失败
      */
     public String getPairFactoryAddress() throws Exception {
-        List<TypeReference<?>> output = Collections.singletonList(new TypeReference<Address>() {
-        });
-        List<Type> result = web3.readContract(routerInfo.getRouterAddress(), "factory", new ArrayList<>(), output);
-        Address a = (Address) result.get(0);
-        return a.getValue();
+        if (!routerInfo.getFactoryAddress().isEmpty()) {
+            return routerInfo.getFactoryAddress();
+        }
+        return web3.getChainContext().getFactoryAddress(routerInfo.getRouterAddress());
     }
 
     /**
@@ -442,35 +883,74 @@ public class RouterUtil {
     }
 
     /**
-     * 获取某条链上最优的router对象
+     * 获取router共用的只读实例，同一条链上的router共用一个连接，用于跨DEX报价
+     *
+     * @param routerInfo router信息
+     * @return router对象，不能发送交易
+     */
+    public static RouterUtil of(RouterInfo routerInfo) {
+        return SHARED.computeIfAbsent(routerInfo, k -> new RouterUtil(Web3jUtil.of(k.getChainInfo()), k));
+    }
+
+    /**
+     * 获取某条链上最优的router对象，需要报价结果时使用getRouterQuotes
      *
      * @param chainName 链名称
      * @param tokenIn   输入的token地址
      * @param amtIn     输入的token数量
      * @param tokenOut  输出的token地址
-     * @return 最优兑换数量的router对象
+     * @return 最优兑换数量的router对象，新建的只读实例，与共用实例使用同一个节点连接，没有可用路径返回null
      * @throws Exception 与节点交互失败
      */
     public static RouterUtil getBestRouter(String chainName, String tokenIn, String amtIn, String tokenOut) throws Exception {
-        String maxAmtOut = "0";
-        RouterUtil resRouter = null;
-        List<RouterInfo> allRouter = RouterInfo.getChainAllRouter(chainName);
-        for (RouterInfo routerInfo : allRouter) {
-            RouterUtil routerUtil = new RouterUtil(routerInfo);
-            // 获取最佳的兑换路径
-            List<String> path = routerUtil.getBestPath(tokenIn, amtIn, tokenOut);
-            if (path != null) {
-                String amtOut = routerUtil.getAmountOut(amtIn, path);
-                log.info(String.format("%s最优兑换数量: %s", routerInfo.getRouterName(), amtOut));
-                if (StringUtil.greatThan(amtOut, maxAmtOut)) {
-                    maxAmtOut = amtOut;
-                    resRouter = routerUtil;
-                }
+        List<Quote> quotes = getRouterQuotes(chainName, tokenIn, amtIn, tokenOut);
+        if (quotes.isEmpty()) {
+            return null;
+        }
+        Quote best = quotes.get(0);
+        log.info(String.format("最优兑换Router: %s 最优兑换数量: %s", best.getRouterInfo().getRouterName(), best.getAmountOutEther()));
+        // 返回新的实例，调用方修改配置不影响共用实例
+        return new RouterUtil(Web3jUtil.of(best.getRouterInfo().getChainInfo()), best.getRouterInfo());
+    }
+
+    /**
+     * 同时在某条链上所有router中寻找最优路径，按扣除gas成本后的净输出从大到小排序
+     * 每个router使用共用的只读实例，一个router报价失败不影响其他router
+     *
+     * @param chainName 链名称
+     * @param tokenIn   输入的token地址
+     * @param amtIn     输入的token数量
+     * @param tokenOut  输出的token地址
+     * @return 各router的最优报价，没有可用路径的router不包含在内
+     * @throws Exception 与节点交互失败
+     */
+    public static List<Quote> getRouterQuotes(String chainName, String tokenIn, String amtIn, String tokenOut) throws Exception {
+        BigInteger amountIn = Convert.toWei(amtIn, Convert.Unit.ETHER).toBigInteger();
+        List<CompletableFuture<Quote>> futures = new ArrayList<>();
+        for (RouterInfo routerInfo : RouterInfo.getChainAllRouter(chainName)) {
+            if (routerInfo.getRouterAddress().isEmpty() || routerInfo.isV3()) {
+                continue;
             }
+            RouterUtil routerUtil = of(routerInfo);
+            futures.add(Web3jUtil.supplyAsync(() -> {
+                try {
+                    V2Quoter.PathQuote quote = routerUtil.getBestQuote(tokenIn, amountIn, tokenOut);
+                    return quote == null ? null : routerUtil.newQuote(quote);
+                } catch (Exception e) {
+                    log.info(String.format("%s获取报价失败: %s", routerInfo.getRouterName(), e.getMessage()));
+                    return null;
+                }
+            }));
         }
-        if (resRouter != null) {
-            log.info(String.format("最优兑换Router: %s 最优兑换数量: %s", resRouter.getRouterInfo().getRouterName(), maxAmtOut));
+        List<Quote> quotes = new ArrayList<>();
+        for (CompletableFuture<Quote> future : futures) {
+            Quote quote = future.get();
+            if (quote != null) {
+                log.info(String.format("%s最优兑换数量: %s", quote.getRouterInfo().getRouterName(), quote.getAmountOutEther()));
+                quotes.add(quote);
+            }
         }
-        return resRouter;
+        quotes.sort((a, b) -> b.getNetAmountOut().compareTo(a.getNetAmountOut()));
+        return quotes;
     }
 }
@@ -0,0 +1,393 @@
+package com.oxthink.web3.swap;
+
+import com.oxthink.constant.ChainInfo;
+import com.oxthink.constant.RouterInfo;
+import com.oxthink.web3.UnknownBroadcastException;
+import com.oxthink.web3.Web3jUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.utils.Convert;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 拆单兑换
+ * 把一笔兑换拆分到多条路径和多个router上，使总输出最大，适合大额兑换减少价格冲击
+ * 基于缓存的存储量在本地模拟：把输入数量分成若干份，每一份分给当前边际输出最大的路径，并更新模拟的存储量
+ * 规划得到的多笔交易使用本地维护的nonce连续发送，不等待上一笔交易完成
+ */
+@Slf4j
+public class SplitSwapUtil {
+
+    /**
+     * 发送交易使用的账户
+     */
+    private final Web3jUtil web3;
+
+    /**
+     * 发送交易使用的router对象 key: router信息
+     */
+    private final Map<RouterInfo, RouterUtil> routers = new HashMap<>();
+
+    /**
+     * 输入数量拆分的份数，越大越接近最优但计算量越大
+     */
+    private int parts = 20;
+
+    /**
+     * 参与拆分的最大路径数量，按单独兑换的输出从大到小选取
+     */
+    private int maxRoutes = 4;
+
+    public SplitSwapUtil(ChainInfo chainInfo, String privateKey) {
+        this(new Web3jUtil(chainInfo, privateKey));
+    }
+
+    public SplitSwapUtil(Web3jUtil web3) {
+        this.web3 = web3;
+    }
+
+    /**
+     * 设置输入数量拆分的份数
+     *
+     * @param parts 份数
+     */
+    public void setParts(int parts) {
+        this.parts = parts;
+    }
+
+    /**
+     * 设置参与拆分的最大路径数量
+     *
+     * @param maxRoutes 路径数量
+     */
+    public void setMaxRoutes(int maxRoutes) {
+        this.maxRoutes = maxRoutes;
+    }
+
+    /**
+     * 规划拆单兑换
+     *
+     * @param tokenIn  输入的token地址
+     * @param amountIn 输入的token数量
+     * @param tokenOut 输出的token地址
+     * @return 兑换计划
+     * @throws Exception 没有可用路径或与节点交互失败
+     */
+    public Plan plan(String tokenIn, String amountIn, String tokenOut) throws Exception {
+        BigInteger amountInWei = Convert.toWei(amountIn, Convert.Unit.ETHER).toBigInteger();
+        // 所有router的候选路径，报价使用共用的只读实例
+        List<Quote> candidates = new ArrayList<>();
+        for (RouterInfo routerInfo : RouterInfo.getChainAllRouter(web3.getChainInfo().getChainName())) {
+            if (routerInfo.getRouterAddress().isEmpty() || routerInfo.isV3()) {
+                continue;
+            }
+            RouterUtil routerUtil = RouterUtil.of(routerInfo);
+            try {
+                for (V2Quoter.PathQuote quote : routerUtil.getCandidateQuotes(tokenIn, amountInWei, tokenOut)) {
+                    candidates.add(routerUtil.newQuote(quote));
+                }
+            } catch (Exception e) {
+                log.info(String.format("%s获取报价失败: %s", routerInfo.getRouterName(), e.getMessage()));
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new Exception("error: 没有可用的兑换路径");
+        }
+        candidates.sort((a, b) -> b.getNetAmountOut().compareTo(a.getNetAmountOut()));
+        if (candidates.size() > maxRoutes) {
+            candidates = new ArrayList<>(candidates.subList(0, maxRoutes));
+        }
+        List<List<V2Quoter.Hop>> routes = new ArrayList<>();
+        for (Quote candidate : candidates) {
+            routes.add(RouterUtil.of(candidate.getRouterInfo()).getQuoter().getHops(candidate.getPath()));
+        }
+        // 模拟的存储量 pair -> [reserve0, reserve1]，多条路径经过同一个pair时互相影响
+        Map<String, BigInteger[]> state = new HashMap<>();
+        for (List<V2Quoter.Hop> route : routes) {
+            for (V2Quoter.Hop hop : route) {
+                state.putIfAbsent(hop.getPair(), new BigInteger[]{hop.getReserve0(), hop.getReserve1()});
+            }
+        }
+        BigInteger[] allocated = new BigInteger[routes.size()];
+        BigInteger[] received = new BigInteger[routes.size()];
+        for (int i = 0; i < routes.size(); i++) {
+            allocated[i] = BigInteger.ZERO;
+            received[i] = BigInteger.ZERO;
+        }
+        BigInteger chunk = amountInWei.divide(BigInteger.valueOf(parts));
+        BigInteger remaining = amountInWei;
+        while (remaining.signum() > 0) {
+            // 最后一份包含除不尽的部分
+            BigInteger amount = chunk.signum() == 0 || remaining.compareTo(chunk.shiftLeft(1)) < 0 ? remaining : chunk;
+            int best = -1;
+            BigInteger bestOut = BigInteger.ZERO;
+            for (int i = 0; i < routes.size(); i++) {
+                BigInteger out = simulate(routes.get(i), amount, state, false);
+                if (out.compareTo(bestOut) > 0) {
+                    best = i;
+                    bestOut = out;
+                }
+            }
+            if (best < 0) {
+                throw new Exception("error: INSUFFICIENT_LIQUIDITY");
+            }
+            simulate(routes.get(best), amount, state, true);
+            allocated[best] = allocated[best].add(amount);
+            received[best] = received[best].add(bestOut);
+            remaining = remaining.subtract(amount);
+        }
+        List<Leg> legs = new ArrayList<>();
+        BigInteger amountOut = BigInteger.ZERO;
+        BigInteger gasCost = BigInteger.ZERO;
+        for (int i = 0; i < routes.size(); i++) {
+            if (allocated[i].signum() > 0) {
+                legs.add(new Leg(candidates.get(i).getRouterInfo(), candidates.get(i).getPath(), allocated[i], received[i]));
+                amountOut = amountOut.add(received[i]);
+                gasCost = gasCost.add(gasCost(candidates.get(i)));
+            }
+        }
+        // 每多一笔交易多一份gas，拆单的净输出不如单路径时不拆单
+        Quote single = candidates.get(0);
+        if (legs.size() > 1 && amountOut.subtract(gasCost).compareTo(single.getNetAmountOut()) <= 0) {
+            legs = Collections.singletonList(new Leg(single.getRouterInfo(), single.getPath(), amountInWei, single.getAmountOut()));
+            amountOut = single.getAmountOut();
+            gasCost = gasCost(single);
+        }
+        Plan plan = new Plan(tokenIn, tokenOut, amountInWei, amountOut, gasCost, single.getAmountOut(), legs);
+        log.info(String.format("拆单兑换: %s 份, 总输出: %s, gas成本: %s, 单路径输出: %s",
+                legs.size(), fromWei(amountOut), fromWei(gasCost), fromWei(plan.getSingleRouteAmountOut())));
+        return plan;
+    }
+
+    /**
+     * 按计划连续发送所有兑换交易，不等待交易完成
+     * 输入为token时需要提前授权给计划中的每个router
+     * 某一笔发送失败不影响其余的交易，每笔的结果单独返回，已发送的交易都可以通过hash等待
+     *
+     * @param plan     兑换计划
+     * @param slippage 滑点（在计划的输出数量的基础上）
+     * @return 每笔交易的发送结果，顺序与计划一致
+     */
+    public List<LegResult> execute(Plan plan, double slippage) {
+        String wEth = web3.getChainInfo().getWETHAddress();
+        List<LegResult> results = new ArrayList<>();
+        for (Leg leg : plan.getLegs()) {
+            RouterUtil routerUtil = routers.computeIfAbsent(leg.getRouterInfo(), k -> new RouterUtil(web3, k));
+            String amountIn = fromWei(leg.getAmountIn());
+            String amountOutMin = fromWei(leg.getAmountOut());
+            try {
+                String hash;
+                if (plan.getTokenIn().equalsIgnoreCase(wEth)) {
+                    hash = routerUtil.swapExactETHForTokens(amountIn, amountOutMin, leg.getPath(), slippage);
+                } else if (plan.getTokenOut().equalsIgnoreCase(wEth)) {
+                    hash = routerUtil.swapExactTokensForETH(amountIn, amountOutMin, leg.getPath(), slippage);
+                } else {
+                    hash = routerUtil.swapExactTokensForTokens(amountIn, amountOutMin, leg.getPath(), slippage);
+                }
+                log.info(String.format("%s 兑换: %s -> %s 交易hash: %s", leg.getRouterInfo().getRouterName(), amountIn, amountOutMin, hash));
+                results.add(new LegResult(leg, hash, null));
+            } catch (UnknownBroadcastException e) {
+                // 节点可能已收到交易，按已发送处理
+                log.info(String.format("%s 兑换发送结果未知, 交易hash: %s", leg.getRouterInfo().getRouterName(), e.getHash()));
+                results.add(new LegResult(leg, e.getHash(), null));
+            } catch (Exception e) {
+                log.info(String.format("%s 兑换发送失败: %s", leg.getRouterInfo().getRouterName(), e.getMessage()));
+                results.add(new LegResult(leg, null, e));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 规划并执行拆单兑换，等待所有交易完成
+     *
+     * @param tokenIn  输入的token地址
+     * @param amountIn 输入的token数量
+     * @param tokenOut 输出的token地址
+     * @param slippage 滑点
+     * @param waitTime 最大等待时间 单位:ms
+     * @return 所有交易是否都成功
+     * @throws Exception 与节点交互失败
+     */
+    public boolean swap(String tokenIn, String amountIn, String tokenOut, double slippage, int waitTime) throws Exception {
+        List<LegResult> results = execute(plan(tokenIn, amountIn, tokenOut), slippage);
+        // 已发送的交易同时等待
+        boolean success = true;
+        List<String> hashes = new ArrayList<>();
+        List<CompletableFuture<TransactionReceipt>> futures = new ArrayList<>();
+        for (LegResult result : results) {
+            if (!result.isSent()) {
+                success = false;
+                continue;
+            }
+            hashes.add(result.getHash());
+            futures.add(web3.getReceiptWatcher().watch(result.getHash(), waitTime));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                if (!"0x1".equals(futures.get(i).get().getStatus())) {
+                    log.info("兑换失败，交易hash: " + hashes.get(i));
+                    success = false;
+                }
+            } catch (ExecutionException e) {
+                log.info(String.format("等待交易失败: %s, %s", hashes.get(i), e.getCause().getMessage()));
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * 在模拟的存储量上计算一条路径的输出
+     *
+     * @param commit 是否把兑换结果写入模拟的存储量
+     * @return 输出数量，流动性不足返回0
+     */
+    private static BigInteger simulate(List<V2Quoter.Hop> route, BigInteger amountIn, Map<String, BigInteger[]> state, boolean commit) {
+        BigInteger amount = amountIn;
+        for (V2Quoter.Hop hop : route) {
+            BigInteger[] reserves = state.get(hop.getPair());
+            BigInteger reserveIn = hop.isZeroForOne() ? reserves[0] : reserves[1];
+            BigInteger reserveOut = hop.isZeroForOne() ? reserves[1] : reserves[0];
+            BigInteger out;
+            try {
+                out = V2Quoter.getAmountOut(amount, reserveIn, reserveOut, hop.getSwapFee(), hop.getFeeBase());
+            } catch (Exception e) {
+                return BigInteger.ZERO;
+            }
+            if (commit) {
+                reserves[hop.isZeroForOne() ? 0 : 1] = reserveIn.add(amount);
+                reserves[hop.isZeroForOne() ? 1 : 0] = reserveOut.subtract(out);
+            }
+            amount = out;
+        }
+        return amount;
+    }
+
+    private static BigInteger gasCost(Quote quote) {
+        return quote.getGasCost() == null ? BigInteger.ZERO : quote.getGasCost();
+    }
+
+    private static String fromWei(BigInteger amount) {
+        return Convert.fromWei(new BigDecimal(amount), Convert.Unit.ETHER).toPlainString();
+    }
+
+    /**
+     * 拆单兑换计划
+     */
+    @Getter
+    public static class Plan {
+
+        private final String tokenIn;
+
+        private final String tokenOut;
+
+        /**
+         * 总输入数量，单位wei
+         */
+        private final BigInteger amountIn;
+
+        /**
+         * 预计总输出数量，单位wei
+         */
+        private final BigInteger amountOut;
+
+        /**
+         * 所有交易预计的gas成本，已换算为输出代币，单位wei
+         */
+        private final BigInteger gasCost;
+
+        /**
+         * 全部走最优单条路径的输出数量，单位wei
+         */
+        private final BigInteger singleRouteAmountOut;
+
+        /**
+         * 每条路径的兑换
+         */
+        private final List<Leg> legs;
+
+        Plan(String tokenIn, String tokenOut, BigInteger amountIn, BigInteger amountOut, BigInteger gasCost,
+             BigInteger singleRouteAmountOut, List<Leg> legs) {
+            this.tokenIn = tokenIn;
+            this.tokenOut = tokenOut;
+            this.amountIn = amountIn;
+            this.amountOut = amountOut;
+            this.gasCost = gasCost;
+            this.singleRouteAmountOut = singleRouteAmountOut;
+            this.legs = legs;
+        }
+    }
+
+    /**
+     * 计划中一笔兑换的发送结果
+     */
+    @Getter
+    public static class LegResult {
+
+        private final Leg leg;
+
+        /**
+         * 交易hash，发送失败时为null
+         */
+        private final String hash;
+
+        /**
+         * 发送失败的原因
+         */
+        private final Exception error;
+
+        LegResult(Leg leg, String hash, Exception error) {
+            this.leg = leg;
+            this.hash = hash;
+            this.error = error;
+        }
+
+        /**
+         * 交易是否已发送
+         *
+         * @return 已发送返回true
+         */
+        public boolean isSent() {
+            return hash != null;
+        }
+    }
+
+    /**
+     * 计划中的一笔兑换
+     */
+    @Getter
+    public static class Leg {
+
+        private final RouterInfo routerInfo;
+
+        private final List<String> path;
+
+        /**
+         * 输入数量，单位wei
+         */
+        private final BigInteger amountIn;
+
+        /**
+         * 预计输出数量，单位wei
+         */
+        private final BigInteger amountOut;
+
+        Leg(RouterInfo routerInfo, List<String> path, BigInteger amountIn, BigInteger amountOut) {
+            this.routerInfo = routerInfo;
+            this.path = path;
+            this.amountIn = amountIn;
+            this.amountOut = amountOut;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.oxthink.web3.swap;
+
+
+import com.oxthink.constant.ChainInfo;
+import com.oxthink.constant.RouterInfo;
+import com.oxthink.constant.TokenInfo;
+import com.oxthink.web3.Web3jUtil;
+
+public class UniswapV3Util extends V3RouterUtil {
+
+    {
+        // 常用用于组lp的代币信息
+        commonPairToken.add(TokenInfo.WMATIC_MATIC_MAIN.getAddress());
+        commonPairToken.add(TokenInfo.USDT_MATIC_MAIN.getAddress());
+        commonPairToken.add(TokenInfo.USDC_MATIC_MAIN.getAddress());
+    }
+
+
+    public UniswapV3Util() {
+        super(new Web3jUtil(ChainInfo.MATIC_MAIN), RouterInfo.UNI_MATIC_MAIN);
+    }
+
+    public UniswapV3Util(String privateKey) {
+        super(new Web3jUtil(ChainInfo.MATIC_MAIN, privateKey), RouterInfo.UNI_MATIC_MAIN);
+    }
+
+    public UniswapV3Util(Web3jUtil web3) {
+        super(web3, RouterInfo.UNI_MATIC_MAIN);
+    }
+}
@@ -0,0 +1,507 @@
+package com.oxthink.web3.swap;
+
+import com.oxthink.constant.RouterInfo;
+import com.oxthink.web3.MetadataCache;
+import com.oxthink.web3.MulticallUtil;
+import com.oxthink.web3.ReserveCache;
+import com.oxthink.web3.Web3jUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint112;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.abi.datatypes.generated.Uint32;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uniswap V2本地报价
+ * 使用缓存的pair存储量和router的手续费在本地计算getAmountsOut，结果与router合约一致
+ * 存储量过期时调用router的getAmountsOut，并在同一次Multicall中刷新路径上所有pair的存储量
+ */
+@Slf4j
+public class V2Quoter {
+
+    static final String ZERO_ADDRESS = "0x0000000000000000000000000000000000000000";
+
+    private final Web3jUtil web3;
+
+    private final RouterInfo routerInfo;
+
+    private final ReserveCache reserveCache;
+
+    private final MetadataCache metadataCache = MetadataCache.getInstance();
+
+    /**
+     * pair地址(小写) -> pair单独设置的手续费，仅pairSwapFee的router使用
+     */
+    private final Map<String, Integer> pairSwapFee = new ConcurrentHashMap<>();
+
+    public V2Quoter(Web3jUtil web3, RouterInfo routerInfo) {
+        this.web3 = web3;
+        this.routerInfo = routerInfo;
+        this.reserveCache = web3.getReserveCache();
+    }
+
+    /**
+     * Uniswap V2的getAmountOut
+     *
+     * @param amountIn   输入数量
+     * @param reserveIn  输入代币的存储量
+     * @param reserveOut 输出代币的存储量
+     * @param swapFee    手续费
+     * @param feeBase    手续费的分母
+     * @return 输出数量
+     * @throws Exception 输入数量或存储量为0
+     */
+    public static BigInteger getAmountOut(BigInteger amountIn, BigInteger reserveIn, BigInteger reserveOut, int swapFee, int feeBase) throws Exception {
+        if (amountIn.signum() <= 0) {
+            throw new Exception("error: INSUFFICIENT_INPUT_AMOUNT");
+        }
+        if (reserveIn.signum() <= 0 || reserveOut.signum() <= 0) {
+            throw new Exception("error: INSUFFICIENT_LIQUIDITY");
+        }
+        BigInteger amountInWithFee = amountIn.multiply(BigInteger.valueOf(feeBase - swapFee));
+        BigInteger numerator = amountInWithFee.multiply(reserveOut);
+        BigInteger denominator = reserveIn.multiply(BigInteger.valueOf(feeBase)).add(amountInWithFee);
+        return numerator.divide(denominator);
+    }
+
+    /**
+     * 计算路径上每一步的输出数量，与router合约的getAmountsOut一致
+     *
+     * @param amountIn 输入数量，单位wei
+     * @param path     兑换路径
+     * @return 每一步的数量，第一个为输入数量，最后一个为最终输出
+     * @throws Exception 交易对不存在或与节点交互失败
+     */
+    public List<BigInteger> getAmountsOut(BigInteger amountIn, List<String> path) throws Exception {
+        PathQuote quote = quoteAll(amountIn, Collections.singletonList(path)).get(0);
+        if (!quote.isSuccess()) {
+            throw new Exception("error: " + quote.getError());
+        }
+        return quote.getAmounts();
+    }
+
+    /**
+     * 同时计算多条路径的输出数量
+     * 存储量未过期的路径在本地计算，其余路径的getAmountsOut和相关pair的存储量合并为一次Multicall
+     * 没有流动性的路径不会抛出异常，而是在对应的结果中返回失败原因
+     *
+     * @param amountIn 输入数量，单位wei
+     * @param paths    兑换路径
+     * @return 每条路径的报价，顺序与输入一致
+     * @throws Exception 与节点交互失败
+     */
+    public List<PathQuote> quoteAll(BigInteger amountIn, List<List<String>> paths) throws Exception {
+        return quoteAll(Collections.nCopies(paths.size(), amountIn), paths);
+    }
+
+    /**
+     * 同时计算多条路径的输出数量，每条路径使用各自的输入数量
+     *
+     * @param amountsIn 输入数量，单位wei，与paths一一对应
+     * @param paths     兑换路径
+     * @return 每条路径的报价，顺序与输入一致
+     * @throws Exception 与节点交互失败
+     */
+    public List<PathQuote> quoteAll(List<BigInteger> amountsIn, List<List<String>> paths) throws Exception {
+        List<List<String>> pairs = resolvePairs(paths);
+        PathQuote[] quotes = new PathQuote[paths.size()];
+        List<Integer> remote = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            List<String> path = paths.get(i);
+            if (path.size() < 2) {
+                quotes[i] = new PathQuote(path, null, null, "INVALID_PATH");
+                continue;
+            }
+            int missing = pairs.get(i).indexOf(ZERO_ADDRESS);
+            if (missing >= 0) {
+                quotes[i] = new PathQuote(path, null, null, String.format("无此交易对: %s -> %s", path.get(missing), path.get(missing + 1)));
+                continue;
+            }
+            try {
+                quotes[i] = quoteLocal(amountsIn.get(i), path, pairs.get(i));
+                if (quotes[i] == null) {
+                    remote.add(i);
+                }
+            } catch (Exception e) {
+                quotes[i] = new PathQuote(path, null, null, e.getMessage());
+            }
+        }
+        if (!remote.isEmpty()) {
+            quoteRemote(amountsIn, paths, pairs, remote, quotes);
+        }
+        return Arrays.asList(quotes);
+    }
+
+    /**
+     * 获取路径上每一步的pair地址
+     * router配置了init code hash时在本地计算，否则已知的pair不再查询，未知的通过一次Multicall查询
+     *
+     * @param path 兑换路径
+     * @return pair地址
+     * @throws Exception 交易对不存在或与节点交互失败
+     */
+    public List<String> getPairAddresses(List<String> path) throws Exception {
+        if (path.size() < 2) {
+            throw new Exception("error: INVALID_PATH");
+        }
+        List<String> pairs = resolvePairs(Collections.singletonList(path)).get(0);
+        for (int i = 0; i < pairs.size(); i++) {
+            if (ZERO_ADDRESS.equals(pairs.get(i))) {
+                throw new Exception(String.format("error: 无此交易对: %s -> %s", path.get(i), path.get(i + 1)));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * 获取多条路径上每一步的pair地址，所有未知的pair合并为一次Multicall查询
+     *
+     * @param paths 兑换路径
+     * @return pair地址，不存在的pair为0地址
+     * @throws Exception 与节点交互失败
+     */
+    private List<List<String>> resolvePairs(List<List<String>> paths) throws Exception {
+        List<List<String>> result = new ArrayList<>(paths.size());
+        // 配置了init code hash时在本地计算
+        if (routerInfo.canComputePairAddress()) {
+            for (List<String> path : paths) {
+                List<String> pairs = new ArrayList<>(Math.max(path.size() - 1, 0));
+                for (int i = 0; i < path.size() - 1; i++) {
+                    pairs.add(routerInfo.computePairAddress(path.get(i), path.get(i + 1)));
+                }
+                result.add(pairs);
+            }
+            return result;
+        }
+        String factory = web3.getChainContext().getFactoryAddress(routerInfo.getRouterAddress());
+        long chainId = web3.getChainContext().getChainId();
+        // pairField -> 代币对，去重后查询
+        Map<String, String[]> missing = new LinkedHashMap<>();
+        for (List<String> path : paths) {
+            for (int i = 0; i < path.size() - 1; i++) {
+                String field = pairField(path.get(i), path.get(i + 1));
+                if (metadataCache.get(chainId, factory, field) == null) {
+                    missing.put(field, new String[]{path.get(i), path.get(i + 1)});
+                }
+            }
+        }
+        Map<String, String> found = new HashMap<>();
+        if (!missing.isEmpty()) {
+            MulticallUtil multicall = new MulticallUtil(web3);
+            for (String[] tokens : missing.values()) {
+                multicall.addCall(factory, "getPair", Arrays.asList(new Address(tokens[0]), new Address(tokens[1])),
+                        Collections.singletonList(new TypeReference<Address>() {
+                        }));
+            }
+            MulticallUtil.Result callResult = multicall.execute();
+            int index = 0;
+            for (String field : missing.keySet()) {
+                String pair = ((Address) callResult.get(index++).get(0)).getValue();
+                // 交易对不存在时不缓存，之后可能会被创建
+                if (!ZERO_ADDRESS.equals(pair)) {
+                    metadataCache.put(chainId, factory, field, pair);
+                }
+                found.put(field, pair);
+            }
+        }
+        for (List<String> path : paths) {
+            List<String> pairs = new ArrayList<>(Math.max(path.size() - 1, 0));
+            for (int i = 0; i < path.size() - 1; i++) {
+                String field = pairField(path.get(i), path.get(i + 1));
+                String pair = found.get(field);
+                pairs.add(pair != null ? pair : metadataCache.get(chainId, factory, field));
+            }
+            result.add(pairs);
+        }
+        return result;
+    }
+
+    /**
+     * 通过一次Multicall刷新pair的存储量
+     *
+     * @param pairs pair地址
+     * @throws Exception 与节点交互失败
+     */
+    public void refreshReserves(Collection<String> pairs) throws Exception {
+        MulticallUtil multicall = new MulticallUtil(web3);
+        List<String> list = new ArrayList<>(new LinkedHashSet<>(pairs));
+        for (String pair : list) {
+            addReserveCalls(multicall, pair);
+        }
+        MulticallUtil.Result result = multicall.execute();
+        saveReserves(result, 0, list);
+    }
+
+    /**
+     * 获取路径上每一步的pair、存储量和手续费，用于在本地模拟多笔兑换
+     * 过期的存储量通过一次Multicall刷新
+     *
+     * @param path 兑换路径
+     * @return 每一步的信息
+     * @throws Exception 交易对不存在或与节点交互失败
+     */
+    List<Hop> getHops(List<String> path) throws Exception {
+        List<String> pairs = getPairAddresses(path);
+        List<String> stale = new ArrayList<>();
+        for (String pair : pairs) {
+            if (reserveCache.getFresh(pair) == null || getSwapFee(pair) == null) {
+                stale.add(pair);
+            }
+        }
+        if (!stale.isEmpty()) {
+            refreshReserves(stale);
+        }
+        List<Hop> hops = new ArrayList<>(pairs.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            ReserveCache.Reserves reserves = reserveCache.get(pairs.get(i));
+            Integer swapFee = getSwapFee(pairs.get(i));
+            if (reserves == null || swapFee == null) {
+                throw new Exception("error: 获取存储量失败: " + pairs.get(i));
+            }
+            hops.add(new Hop(pairs.get(i).toLowerCase(), isToken0(path.get(i), path.get(i + 1)),
+                    reserves.getReserve0(), reserves.getReserve1(), swapFee, routerInfo.getFeeBase()));
+        }
+        return hops;
+    }
+
+    /**
+     * 使用缓存的存储量在本地计算
+     *
+     * @return 报价，区块高度取路径上各存储量有效区块中最旧的一个，存储量过期返回null
+     */
+    private PathQuote quoteLocal(BigInteger amountIn, List<String> path, List<String> pairs) throws Exception {
+        List<BigInteger> amounts = new ArrayList<>(path.size());
+        amounts.add(amountIn);
+        BigInteger blockNumber = null;
+        for (int i = 0; i < pairs.size(); i++) {
+            ReserveCache.Reserves reserves = reserveCache.getFresh(pairs.get(i));
+            Integer swapFee = getSwapFee(pairs.get(i));
+            if (reserves == null || swapFee == null) {
+                return null;
+            }
+            boolean zeroForOne = isToken0(path.get(i), path.get(i + 1));
+            BigInteger reserveIn = zeroForOne ? reserves.getReserve0() : reserves.getReserve1();
+            BigInteger reserveOut = zeroForOne ? reserves.getReserve1() : reserves.getReserve0();
+            amounts.add(getAmountOut(amounts.get(i), reserveIn, reserveOut, swapFee, routerInfo.getFeeBase()));
+            if (blockNumber == null || (reserves.getBlockNumber() != null && reserves.getBlockNumber().compareTo(blockNumber) < 0)) {
+                blockNumber = reserves.getBlockNumber();
+            }
+        }
+        return new PathQuote(path, amounts, blockNumber, null);
+    }
+
+    /**
+     * 通过一次Multicall调用多条路径的getAmountsOut，同时刷新这些路径上所有pair的存储量
+     */
+    private void quoteRemote(List<BigInteger> amountsIn, List<List<String>> paths, List<List<String>> pairs,
+                             List<Integer> remote, PathQuote[] quotes) throws Exception {
+        MulticallUtil multicall = new MulticallUtil(web3);
+        Set<String> uniquePairs = new LinkedHashSet<>();
+        for (int i : remote) {
+            List<Address> addressPath = new ArrayList<>();
+            for (String token : paths.get(i)) {
+                addressPath.add(new Address(token));
+            }
+            multicall.addCall(routerInfo.getRouterAddress(), "getAmountsOut",
+                    Arrays.asList(new Uint256(amountsIn.get(i)), new DynamicArray<>(Address.class, addressPath)),
+                    Collections.singletonList(new TypeReference<DynamicArray<Uint256>>() {
+                    }));
+            uniquePairs.addAll(pairs.get(i));
+        }
+        List<String> pairList = new ArrayList<>(uniquePairs);
+        for (String pair : pairList) {
+            addReserveCalls(multicall, pair);
+        }
+        MulticallUtil.Result result = multicall.execute();
+        saveReserves(result, remote.size(), pairList);
+        for (int j = 0; j < remote.size(); j++) {
+            int i = remote.get(j);
+            MulticallUtil.CallResult callResult = result.getResults().get(j);
+            if (!callResult.isSuccess()) {
+                quotes[i] = new PathQuote(paths.get(i), null, result.getBlockNumber(), callResult.getError());
+                continue;
+            }
+            List<?> values = ((DynamicArray<?>) callResult.getValues().get(0)).getValue();
+            List<BigInteger> amounts = new ArrayList<>(values.size());
+            for (Object value : values) {
+                amounts.add(((Uint256) value).getValue());
+            }
+            quotes[i] = new PathQuote(paths.get(i), amounts, result.getBlockNumber(), null);
+        }
+    }
+
+    private void addReserveCalls(MulticallUtil multicall, String pair) {
+        multicall.addCall(pair, "getReserves", new ArrayList<>(), Arrays.asList(new TypeReference<Uint112>() {
+        }, new TypeReference<Uint112>() {
+        }, new TypeReference<Uint32>() {
+        }));
+        if (routerInfo.isPairSwapFee()) {
+            multicall.addCall(pair, "swapFee", new ArrayList<>(), Collections.singletonList(new TypeReference<Uint32>() {
+            }));
+        }
+    }
+
+    private void saveReserves(MulticallUtil.Result result, int offset, List<String> pairs) {
+        int index = offset;
+        for (String pair : pairs) {
+            MulticallUtil.CallResult reserves = result.getResults().get(index++);
+            if (reserves.isSuccess()) {
+                List<Type> values = reserves.getValues();
+                reserveCache.put(pair, (BigInteger) values.get(0).getValue(), (BigInteger) values.get(1).getValue(), result.getBlockNumber());
+            }
+            if (routerInfo.isPairSwapFee()) {
+                MulticallUtil.CallResult swapFee = result.getResults().get(index++);
+                if (swapFee.isSuccess()) {
+                    pairSwapFee.put(pair.toLowerCase(), ((BigInteger) swapFee.getValues().get(0).getValue()).intValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取pair的手续费
+     *
+     * @return 手续费，pair单独设置但还未查询时返回null
+     */
+    private Integer getSwapFee(String pair) {
+        if (!routerInfo.isPairSwapFee()) {
+            return routerInfo.getSwapFee();
+        }
+        return pairSwapFee.get(pair.toLowerCase());
+    }
+
+    /**
+     * tokenA是否为pair中的token0，V2的pair按地址大小排序
+     */
+    static boolean isToken0(String tokenA, String tokenB) {
+        return tokenA.toLowerCase().compareTo(tokenB.toLowerCase()) < 0;
+    }
+
+    private static String pairField(String tokenA, String tokenB) {
+        String a = tokenA.toLowerCase();
+        String b = tokenB.toLowerCase();
+        return a.compareTo(b) < 0 ? "pair:" + a + ":" + b : "pair:" + b + ":" + a;
+    }
+
+    /**
+     * 一条路径的报价
+     */
+    @Getter
+    public static class PathQuote {
+
+        /**
+         * 兑换路径
+         */
+        private final List<String> path;
+
+        /**
+         * 每一步的数量，失败时为null
+         */
+        private final List<BigInteger> amounts;
+
+        /**
+         * 报价对应的区块高度，未知时为null
+         */
+        private final BigInteger blockNumber;
+
+        /**
+         * 失败原因，eg: 无此交易对、流动性不足
+         */
+        private final String error;
+
+        /**
+         * 预计的gas成本，已换算为输出代币，单位wei，未计算时为null
+         */
+        private BigInteger gasCost;
+
+        PathQuote(List<String> path, List<BigInteger> amounts, BigInteger blockNumber, String error) {
+            this.path = path;
+            this.amounts = amounts;
+            this.blockNumber = blockNumber;
+            this.error = error;
+        }
+
+        /**
+         * 是否报价成功
+         *
+         * @return 成功返回true
+         */
+        public boolean isSuccess() {
+            return amounts != null;
+        }
+
+        /**
+         * 最终输出数量
+         *
+         * @return 输出数量，单位wei，失败返回null
+         */
+        public BigInteger getAmountOut() {
+            return amounts == null ? null : amounts.get(amounts.size() - 1);
+        }
+
+        /**
+         * 扣除gas成本后的输出数量
+         *
+         * @return 净输出数量，单位wei，未计算gas成本时与输出数量相同
+         */
+        public BigInteger getNetAmountOut() {
+            BigInteger amountOut = getAmountOut();
+            return amountOut == null || gasCost == null ? amountOut : amountOut.subtract(gasCost);
+        }
+
+        void setGasCost(BigInteger gasCost) {
+            this.gasCost = gasCost;
+        }
+    }
+
+    /**
+     * 路径上的一步兑换
+     */
+    @Getter
+    static class Hop {
+
+        /**
+         * pair地址(小写)
+         */
+        private final String pair;
+
+        /**
+         * 是否由token0兑换为token1
+         */
+        private final boolean zeroForOne;
+
+        private final BigInteger reserve0;
+
+        private final BigInteger reserve1;
+
+        private final int swapFee;
+
+        private final int feeBase;
+
+        Hop(String pair, boolean zeroForOne, BigInteger reserve0, BigInteger reserve1, int swapFee, int feeBase) {
+            this.pair = pair;
+            this.zeroForOne = zeroForOne;
+            this.reserve0 = reserve0;
+            this.reserve1 = reserve1;
+            this.swapFee = swapFee;
+            this.feeBase = feeBase;
+        }
+    }
+}
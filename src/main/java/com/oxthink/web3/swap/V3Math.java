@@ -0,0 +1,241 @@
+package com.oxthink.web3.swap;
+
+import java.math.BigInteger;
+
+/**
+ * Uniswap V3 的定点数计算，与合约中TickMath、SqrtPriceMath、SwapMath的整数运算和取整方式一致
+ * 合约中的uint256溢出分支按相同条件处理，计算结果与链上一致
+ */
+public final class V3Math {
+
+    public static final int MIN_TICK = -887272;
+
+    public static final int MAX_TICK = 887272;
+
+    public static final BigInteger MIN_SQRT_RATIO = new BigInteger("4295128739");
+
+    public static final BigInteger MAX_SQRT_RATIO = new BigInteger("1461446703485210103287273052203988822378723970342");
+
+    public static final BigInteger Q96 = BigInteger.ONE.shiftLeft(96);
+
+    private static final BigInteger MAX_UINT256 = BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE);
+
+    private static final BigInteger MAX_UINT160 = BigInteger.ONE.shiftLeft(160).subtract(BigInteger.ONE);
+
+    private static final BigInteger FEE_BASE = BigInteger.valueOf(1000000);
+
+    /**
+     * TickMath中 sqrt(1.0001)^(-2^i) 的Q128值
+     */
+    private static final BigInteger[] TICK_RATIOS = {
+            new BigInteger("fffcb933bd6fad37aa2d162d1a594001", 16),
+            new BigInteger("fff97272373d413259a46990580e213a", 16),
+            new BigInteger("fff2e50f5f656932ef12357cf3c7fdcc", 16),
+            new BigInteger("ffe5caca7e10e4e61c3624eaa0941cd0", 16),
+            new BigInteger("ffcb9843d60f6159c9db58835c926644", 16),
+            new BigInteger("ff973b41fa98c081472e6896dfb254c0", 16),
+            new BigInteger("ff2ea16466c96a3843ec78b326b52861", 16),
+            new BigInteger("fe5dee046a99a2a811c461f1969c3053", 16),
+            new BigInteger("fcbe86c7900a88aedcffc83b479aa3a4", 16),
+            new BigInteger("f987a7253ac413176f2b074cf7815e54", 16),
+            new BigInteger("f3392b0822b70005940c7a398e4b70f3", 16),
+            new BigInteger("e7159475a2c29b7443b29c7fa6e889d9", 16),
+            new BigInteger("d097f3bdfd2022b8845ad8f792aa5825", 16),
+            new BigInteger("a9f746462d870fdf8a65dc1f90e061e5", 16),
+            new BigInteger("70d869a156d2a1b890bb3df62baf32f7", 16),
+            new BigInteger("31be135f97d08fd981231505542fcfa6", 16),
+            new BigInteger("9aa508b5b7a84e1c677de54f3e99bc9", 16),
+            new BigInteger("5d6af8dedb81196699c329225ee604", 16),
+            new BigInteger("2216e584f5fa1ea926041bedfe98", 16),
+            new BigInteger("48a170391f7dc42444e8fa2", 16)
+    };
+
+    private V3Math() {
+    }
+
+    /**
+     * 计算tick对应的价格 sqrt(1.0001^tick) * 2^96
+     *
+     * @param tick tick
+     * @return sqrtPriceX96
+     */
+    public static BigInteger getSqrtRatioAtTick(int tick) {
+        int absTick = Math.abs(tick);
+        if (absTick > MAX_TICK) {
+            throw new IllegalArgumentException("tick超出范围: " + tick);
+        }
+        BigInteger ratio = (absTick & 0x1) != 0 ? TICK_RATIOS[0] : BigInteger.ONE.shiftLeft(128);
+        for (int i = 1; i < TICK_RATIOS.length; i++) {
+            if ((absTick & (1 << i)) != 0) {
+                ratio = ratio.multiply(TICK_RATIOS[i]).shiftRight(128);
+            }
+        }
+        if (tick > 0) {
+            ratio = MAX_UINT256.divide(ratio);
+        }
+        BigInteger[] qr = ratio.divideAndRemainder(BigInteger.ONE.shiftLeft(32));
+        return qr[1].signum() == 0 ? qr[0] : qr[0].add(BigInteger.ONE);
+    }
+
+    /**
+     * 计算价格对应的tick，即满足 getSqrtRatioAtTick(tick) &lt;= sqrtPriceX96 的最大tick
+     *
+     * @param sqrtPriceX96 价格
+     * @return tick
+     */
+    public static int getTickAtSqrtRatio(BigInteger sqrtPriceX96) {
+        if (sqrtPriceX96.compareTo(MIN_SQRT_RATIO) < 0 || sqrtPriceX96.compareTo(MAX_SQRT_RATIO) >= 0) {
+            throw new IllegalArgumentException("价格超出范围: " + sqrtPriceX96);
+        }
+        int low = MIN_TICK;
+        int high = MAX_TICK;
+        while (low < high) {
+            int mid = (int) (((long) low + high + 1) >> 1);
+            if (getSqrtRatioAtTick(mid).compareTo(sqrtPriceX96) <= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 计算一步兑换，参数和返回值与SwapMath.computeSwapStep一致
+     *
+     * @param sqrtRatioCurrent 当前价格
+     * @param sqrtRatioTarget  目标价格，不能越过
+     * @param liquidity        当前流动性
+     * @param amountRemaining  剩余数量，正数为精确输入，负数为精确输出
+     * @param feePips          手续费，单位百万分之一
+     * @return [兑换后的价格, 输入数量, 输出数量, 手续费]
+     */
+    public static BigInteger[] computeSwapStep(BigInteger sqrtRatioCurrent, BigInteger sqrtRatioTarget, BigInteger liquidity,
+                                               BigInteger amountRemaining, int feePips) {
+        boolean zeroForOne = sqrtRatioCurrent.compareTo(sqrtRatioTarget) >= 0;
+        boolean exactIn = amountRemaining.signum() >= 0;
+        BigInteger fee = BigInteger.valueOf(feePips);
+        BigInteger sqrtRatioNext;
+        BigInteger amountIn = BigInteger.ZERO;
+        BigInteger amountOut = BigInteger.ZERO;
+        if (exactIn) {
+            BigInteger amountRemainingLessFee = mulDiv(amountRemaining, FEE_BASE.subtract(fee), FEE_BASE);
+            amountIn = zeroForOne
+                    ? getAmount0Delta(sqrtRatioTarget, sqrtRatioCurrent, liquidity, true)
+                    : getAmount1Delta(sqrtRatioCurrent, sqrtRatioTarget, liquidity, true);
+            sqrtRatioNext = amountRemainingLessFee.compareTo(amountIn) >= 0 ? sqrtRatioTarget
+                    : getNextSqrtPriceFromInput(sqrtRatioCurrent, liquidity, amountRemainingLessFee, zeroForOne);
+        } else {
+            amountOut = zeroForOne
+                    ? getAmount1Delta(sqrtRatioTarget, sqrtRatioCurrent, liquidity, false)
+                    : getAmount0Delta(sqrtRatioCurrent, sqrtRatioTarget, liquidity, false);
+            sqrtRatioNext = amountRemaining.negate().compareTo(amountOut) >= 0 ? sqrtRatioTarget
+                    : getNextSqrtPriceFromOutput(sqrtRatioCurrent, liquidity, amountRemaining.negate(), zeroForOne);
+        }
+        boolean max = sqrtRatioTarget.equals(sqrtRatioNext);
+        if (zeroForOne) {
+            amountIn = max && exactIn ? amountIn : getAmount0Delta(sqrtRatioNext, sqrtRatioCurrent, liquidity, true);
+            amountOut = max && !exactIn ? amountOut : getAmount1Delta(sqrtRatioNext, sqrtRatioCurrent, liquidity, false);
+        } else {
+            amountIn = max && exactIn ? amountIn : getAmount1Delta(sqrtRatioCurrent, sqrtRatioNext, liquidity, true);
+            amountOut = max && !exactIn ? amountOut : getAmount0Delta(sqrtRatioCurrent, sqrtRatioNext, liquidity, false);
+        }
+        if (!exactIn && amountOut.compareTo(amountRemaining.negate()) > 0) {
+            amountOut = amountRemaining.negate();
+        }
+        BigInteger feeAmount = exactIn && !sqrtRatioNext.equals(sqrtRatioTarget)
+                ? amountRemaining.subtract(amountIn)
+                : mulDivRoundingUp(amountIn, fee, FEE_BASE.subtract(fee));
+        return new BigInteger[]{sqrtRatioNext, amountIn, amountOut, feeAmount};
+    }
+
+    /**
+     * 两个价格之间token0的数量
+     */
+    public static BigInteger getAmount0Delta(BigInteger sqrtRatioA, BigInteger sqrtRatioB, BigInteger liquidity, boolean roundUp) {
+        if (sqrtRatioA.compareTo(sqrtRatioB) > 0) {
+            BigInteger temp = sqrtRatioA;
+            sqrtRatioA = sqrtRatioB;
+            sqrtRatioB = temp;
+        }
+        BigInteger numerator1 = liquidity.shiftLeft(96);
+        BigInteger numerator2 = sqrtRatioB.subtract(sqrtRatioA);
+        if (sqrtRatioA.signum() <= 0) {
+            throw new ArithmeticException("价格为0");
+        }
+        return roundUp
+                ? divRoundingUp(mulDivRoundingUp(numerator1, numerator2, sqrtRatioB), sqrtRatioA)
+                : mulDiv(numerator1, numerator2, sqrtRatioB).divide(sqrtRatioA);
+    }
+
+    /**
+     * 两个价格之间token1的数量
+     */
+    public static BigInteger getAmount1Delta(BigInteger sqrtRatioA, BigInteger sqrtRatioB, BigInteger liquidity, boolean roundUp) {
+        BigInteger diff = sqrtRatioB.subtract(sqrtRatioA).abs();
+        return roundUp ? mulDivRoundingUp(liquidity, diff, Q96) : mulDiv(liquidity, diff, Q96);
+    }
+
+    private static BigInteger getNextSqrtPriceFromInput(BigInteger sqrtPrice, BigInteger liquidity, BigInteger amountIn, boolean zeroForOne) {
+        return zeroForOne
+                ? getNextSqrtPriceFromAmount0RoundingUp(sqrtPrice, liquidity, amountIn, true)
+                : getNextSqrtPriceFromAmount1RoundingDown(sqrtPrice, liquidity, amountIn, true);
+    }
+
+    private static BigInteger getNextSqrtPriceFromOutput(BigInteger sqrtPrice, BigInteger liquidity, BigInteger amountOut, boolean zeroForOne) {
+        return zeroForOne
+                ? getNextSqrtPriceFromAmount1RoundingDown(sqrtPrice, liquidity, amountOut, false)
+                : getNextSqrtPriceFromAmount0RoundingUp(sqrtPrice, liquidity, amountOut, false);
+    }
+
+    private static BigInteger getNextSqrtPriceFromAmount0RoundingUp(BigInteger sqrtPrice, BigInteger liquidity, BigInteger amount, boolean add) {
+        if (amount.signum() == 0) {
+            return sqrtPrice;
+        }
+        BigInteger numerator1 = liquidity.shiftLeft(96);
+        BigInteger product = amount.multiply(sqrtPrice);
+        if (add) {
+            // 合约中乘积不溢出时使用精确公式，否则使用近似公式
+            if (product.compareTo(MAX_UINT256) <= 0) {
+                BigInteger denominator = numerator1.add(product);
+                if (denominator.compareTo(MAX_UINT256) <= 0) {
+                    return mulDivRoundingUp(numerator1, sqrtPrice, denominator);
+                }
+            }
+            return divRoundingUp(numerator1, numerator1.divide(sqrtPrice).add(amount));
+        }
+        if (product.compareTo(MAX_UINT256) > 0 || numerator1.compareTo(product) <= 0) {
+            throw new ArithmeticException("流动性不足");
+        }
+        return mulDivRoundingUp(numerator1, sqrtPrice, numerator1.subtract(product));
+    }
+
+    private static BigInteger getNextSqrtPriceFromAmount1RoundingDown(BigInteger sqrtPrice, BigInteger liquidity, BigInteger amount, boolean add) {
+        if (add) {
+            BigInteger quotient = amount.compareTo(MAX_UINT160) <= 0
+                    ? amount.shiftLeft(96).divide(liquidity)
+                    : mulDiv(amount, Q96, liquidity);
+            return sqrtPrice.add(quotient);
+        }
+        BigInteger quotient = amount.compareTo(MAX_UINT160) <= 0
+                ? divRoundingUp(amount.shiftLeft(96), liquidity)
+                : mulDivRoundingUp(amount, Q96, liquidity);
+        if (sqrtPrice.compareTo(quotient) <= 0) {
+            throw new ArithmeticException("流动性不足");
+        }
+        return sqrtPrice.subtract(quotient);
+    }
+
+    static BigInteger mulDiv(BigInteger a, BigInteger b, BigInteger denominator) {
+        return a.multiply(b).divide(denominator);
+    }
+
+    static BigInteger mulDivRoundingUp(BigInteger a, BigInteger b, BigInteger denominator) {
+        return divRoundingUp(a.multiply(b), denominator);
+    }
+
+    static BigInteger divRoundingUp(BigInteger a, BigInteger b) {
+        BigInteger[] qr = a.divideAndRemainder(b);
+        return qr[1].signum() == 0 ? qr[0] : qr[0].add(BigInteger.ONE);
+    }
+}
@@ -0,0 +1,99 @@
+package com.oxthink.web3.swap;
+
+import lombok.Getter;
+import org.web3j.utils.Numeric;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Uniswap V3兑换路径，每一跳可以使用不同的手续费等级
+ * 编码为 token0(20) ++ fee0(3) ++ token1(20) ++ fee1(3) ++ token2(20) ...
+ */
+@Getter
+public class V3Path {
+
+    /**
+     * 代币地址
+     */
+    private final List<String> tokens;
+
+    /**
+     * 每一跳的手续费等级，eg: 500、3000，数量比tokens少一个
+     */
+    private final List<Integer> fees;
+
+    public V3Path(List<String> tokens, List<Integer> fees) {
+        if (tokens.size() < 2 || fees.size() != tokens.size() - 1) {
+            throw new IllegalArgumentException("路径格式错误");
+        }
+        this.tokens = Collections.unmodifiableList(new ArrayList<>(tokens));
+        this.fees = Collections.unmodifiableList(new ArrayList<>(fees));
+    }
+
+    /**
+     * 输入代币
+     *
+     * @return 代币地址
+     */
+    public String getTokenIn() {
+        return tokens.get(0);
+    }
+
+    /**
+     * 输出代币
+     *
+     * @return 代币地址
+     */
+    public String getTokenOut() {
+        return tokens.get(tokens.size() - 1);
+    }
+
+    /**
+     * 编码为exactInput使用的路径
+     *
+     * @return 路径
+     */
+    public byte[] encode() {
+        return encode(tokens, fees);
+    }
+
+    /**
+     * 编码为exactOutput使用的路径，顺序与兑换方向相反
+     *
+     * @return 路径
+     */
+    public byte[] encodeReversed() {
+        List<String> reversedTokens = new ArrayList<>(tokens);
+        List<Integer> reversedFees = new ArrayList<>(fees);
+        Collections.reverse(reversedTokens);
+        Collections.reverse(reversedFees);
+        return encode(reversedTokens, reversedFees);
+    }
+
+    private static byte[] encode(List<String> tokens, List<Integer> fees) {
+        byte[] result = new byte[tokens.size() * 20 + fees.size() * 3];
+        int offset = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            System.arraycopy(Numeric.hexStringToByteArray(tokens.get(i)), 0, result, offset, 20);
+            offset += 20;
+            if (i < fees.size()) {
+                int fee = fees.get(i);
+                result[offset++] = (byte) (fee >>> 16);
+                result[offset++] = (byte) (fee >>> 8);
+                result[offset++] = (byte) fee;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(tokens.get(0));
+        for (int i = 0; i < fees.size(); i++) {
+            builder.append(" -(").append(fees.get(i)).append(")-> ").append(tokens.get(i + 1));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,166 @@
+package com.oxthink.web3.swap;
+
+import lombok.Getter;
+
+import java.math.BigInteger;
+import java.util.Map;
+
+/**
+ * Uniswap V3 pool某个区块的状态快照
+ * 包含slot0、当前流动性，以及当前tick附近若干个tick bitmap word和其中已初始化tick的liquidityNet
+ * 在快照上模拟兑换，结果与pool合约的swap一致，超出已加载的word范围时返回null，需要加载更多word
+ */
+@Getter
+class V3Pool {
+
+    private final String address;
+
+    private final String token0;
+
+    private final int fee;
+
+    private final int tickSpacing;
+
+    /**
+     * pool是否已部署
+     */
+    private final boolean exists;
+
+    private final BigInteger sqrtPriceX96;
+
+    private final int tick;
+
+    private final BigInteger liquidity;
+
+    /**
+     * 已加载的word范围 [minWord, maxWord]
+     */
+    private final int minWord;
+
+    private final int maxWord;
+
+    /**
+     * word位置 -> tick bitmap
+     */
+    private final Map<Integer, BigInteger> bitmap;
+
+    /**
+     * 已初始化的tick -> liquidityNet
+     */
+    private final Map<Integer, BigInteger> liquidityNet;
+
+    private final BigInteger blockNumber;
+
+    /**
+     * 本地更新时间 单位:ms
+     */
+    private final long updateTime;
+
+    V3Pool(String address, String token0, int fee, int tickSpacing, boolean exists, BigInteger sqrtPriceX96, int tick,
+           BigInteger liquidity, int minWord, int maxWord, Map<Integer, BigInteger> bitmap, Map<Integer, BigInteger> liquidityNet,
+           BigInteger blockNumber) {
+        this.address = address;
+        this.token0 = token0;
+        this.fee = fee;
+        this.tickSpacing = tickSpacing;
+        this.exists = exists;
+        this.sqrtPriceX96 = sqrtPriceX96;
+        this.tick = tick;
+        this.liquidity = liquidity;
+        this.minWord = minWord;
+        this.maxWord = maxWord;
+        this.bitmap = bitmap;
+        this.liquidityNet = liquidityNet;
+        this.blockNumber = blockNumber;
+        this.updateTime = System.currentTimeMillis();
+    }
+
+    /**
+     * tick所在的word位置
+     */
+    static int wordOf(int tick, int tickSpacing) {
+        return compress(tick, tickSpacing) >> 8;
+    }
+
+    private static int compress(int tick, int tickSpacing) {
+        int compressed = tick / tickSpacing;
+        if (tick < 0 && tick % tickSpacing != 0) {
+            compressed--;
+        }
+        return compressed;
+    }
+
+    /**
+     * 模拟兑换
+     *
+     * @param zeroForOne      是否由token0兑换为token1
+     * @param amountSpecified 正数为精确输入数量，负数为精确输出数量
+     * @return [输入数量, 输出数量]，超出已加载的word范围返回null
+     * @throws Exception 流动性不足
+     */
+    BigInteger[] swap(boolean zeroForOne, BigInteger amountSpecified) throws Exception {
+        if (!exists) {
+            throw new Exception("error: pool不存在");
+        }
+        boolean exactIn = amountSpecified.signum() > 0;
+        BigInteger limit = zeroForOne ? V3Math.MIN_SQRT_RATIO.add(BigInteger.ONE) : V3Math.MAX_SQRT_RATIO.subtract(BigInteger.ONE);
+        BigInteger remaining = amountSpecified;
+        BigInteger calculated = BigInteger.ZERO;
+        BigInteger price = sqrtPriceX96;
+        BigInteger currentLiquidity = liquidity;
+        int currentTick = tick;
+        while (remaining.signum() != 0 && !price.equals(limit)) {
+            int compressed = compress(currentTick, tickSpacing);
+            if (!zeroForOne) {
+                compressed++;
+            }
+            int wordPos = compressed >> 8;
+            int bitPos = compressed & 0xff;
+            if (wordPos < minWord || wordPos > maxWord) {
+                return null;
+            }
+            BigInteger word = bitmap.getOrDefault(wordPos, BigInteger.ZERO);
+            int next;
+            boolean initialized;
+            if (zeroForOne) {
+                // 当前word中小于等于当前tick的最近一个已初始化tick
+                BigInteger masked = word.and(BigInteger.ONE.shiftLeft(bitPos + 1).subtract(BigInteger.ONE));
+                initialized = masked.signum() != 0;
+                next = initialized ? (compressed - (bitPos - (masked.bitLength() - 1))) * tickSpacing : (compressed - bitPos) * tickSpacing;
+            } else {
+                // 当前word中大于当前tick的最近一个已初始化tick
+                BigInteger masked = word.shiftRight(bitPos).shiftLeft(bitPos);
+                initialized = masked.signum() != 0;
+                next = initialized ? (compressed + (masked.getLowestSetBit() - bitPos)) * tickSpacing : (compressed + (255 - bitPos)) * tickSpacing;
+            }
+            next = Math.max(V3Math.MIN_TICK, Math.min(V3Math.MAX_TICK, next));
+            BigInteger priceNext = V3Math.getSqrtRatioAtTick(next);
+            BigInteger target = (zeroForOne ? priceNext.compareTo(limit) < 0 : priceNext.compareTo(limit) > 0) ? limit : priceNext;
+            BigInteger[] step = V3Math.computeSwapStep(price, target, currentLiquidity, remaining, fee);
+            BigInteger start = price;
+            price = step[0];
+            if (exactIn) {
+                remaining = remaining.subtract(step[1].add(step[3]));
+                calculated = calculated.subtract(step[2]);
+            } else {
+                remaining = remaining.add(step[2]);
+                calculated = calculated.add(step[1].add(step[3]));
+            }
+            if (price.equals(priceNext)) {
+                if (initialized) {
+                    BigInteger net = liquidityNet.getOrDefault(next, BigInteger.ZERO);
+                    currentLiquidity = currentLiquidity.add(zeroForOne ? net.negate() : net);
+                }
+                currentTick = zeroForOne ? next - 1 : next;
+            } else if (!price.equals(start)) {
+                currentTick = V3Math.getTickAtSqrtRatio(price);
+            }
+        }
+        if (remaining.signum() != 0) {
+            throw new Exception("error: 流动性不足");
+        }
+        return exactIn
+                ? new BigInteger[]{amountSpecified, calculated.negate()}
+                : new BigInteger[]{calculated, amountSpecified.negate()};
+    }
+}
@@ -0,0 +1,498 @@
+package com.oxthink.web3.swap;
+
+import com.oxthink.constant.RouterInfo;
+import com.oxthink.web3.MulticallUtil;
+import com.oxthink.web3.PairAddressUtil;
+import com.oxthink.web3.Web3jUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Int128;
+import org.web3j.abi.datatypes.generated.Int16;
+import org.web3j.abi.datatypes.generated.Int24;
+import org.web3j.abi.datatypes.generated.Uint128;
+import org.web3j.abi.datatypes.generated.Uint160;
+import org.web3j.abi.datatypes.generated.Uint256;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uniswap V3本地报价
+ * 缓存pool的slot0、流动性和当前tick附近的tick bitmap，在本地按tick逐段模拟兑换，不调用Quoter合约
+ * 状态过期时通过Multicall刷新：第一次读取slot0、流动性和bitmap，第二次读取已初始化tick的liquidityNet，所有pool合并查询
+ */
+@Slf4j
+public class V3Quoter {
+
+    /**
+     * 默认的手续费等级
+     */
+    public static final List<Integer> FEE_TIERS = Collections.unmodifiableList(Arrays.asList(100, 500, 3000, 10000));
+
+    private final Web3jUtil web3;
+
+    private final RouterInfo routerInfo;
+
+    /**
+     * pool地址 -> 状态快照
+     */
+    private final Map<String, V3Pool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * 有效期 单位:ms
+     */
+    private volatile long maxAgeMillis = 3000;
+
+    /**
+     * 在当前tick所在word两侧各加载的word数量
+     */
+    private volatile int wordRadius = 2;
+
+    /**
+     * 单个pool最多加载的word半径，超过后认为流动性不足
+     */
+    private volatile int maxWordRadius = 32;
+
+    /**
+     * 参与报价的手续费等级
+     */
+    private volatile List<Integer> feeTiers = FEE_TIERS;
+
+    public V3Quoter(Web3jUtil web3, RouterInfo routerInfo) {
+        this.web3 = web3;
+        this.routerInfo = routerInfo;
+    }
+
+    /**
+     * 设置状态的有效期，建议与出块时间一致
+     *
+     * @param maxAgeMillis 有效期 单位:ms
+     */
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * 设置加载的tick bitmap范围
+     *
+     * @param wordRadius    首次在当前word两侧各加载的word数量
+     * @param maxWordRadius 大额兑换越过已加载范围时最多扩展到的word数量
+     */
+    public void setWordRadius(int wordRadius, int maxWordRadius) {
+        this.wordRadius = wordRadius;
+        this.maxWordRadius = maxWordRadius;
+    }
+
+    /**
+     * 设置参与报价的手续费等级
+     *
+     * @param feeTiers 手续费等级，eg: 500、3000
+     */
+    public void setFeeTiers(List<Integer> feeTiers) {
+        this.feeTiers = Collections.unmodifiableList(new ArrayList<>(feeTiers));
+    }
+
+    /**
+     * 计算pool地址
+     *
+     * @param tokenA 代币地址
+     * @param tokenB 代币地址
+     * @param fee    手续费等级
+     * @return pool地址
+     */
+    public String getPoolAddress(String tokenA, String tokenB, int fee) {
+        return PairAddressUtil.computePoolAddress(routerInfo.getFactoryAddress(), routerInfo.getInitCodeHash(), tokenA, tokenB, fee);
+    }
+
+    /**
+     * 同时计算多条代币路径的精确输入报价，每一跳在所有手续费等级中选择输出最多的pool
+     * 所有路径用到的pool合并刷新
+     *
+     * @param amountIn   输入数量，单位wei
+     * @param tokenPaths 代币路径
+     * @return 每条路径的报价，顺序与输入一致
+     * @throws Exception 与节点交互失败
+     */
+    public List<PathQuote> quoteExactInputAll(BigInteger amountIn, List<List<String>> tokenPaths) throws Exception {
+        loadPools(poolsOf(tokenPaths), wordRadius);
+        List<PathQuote> quotes = new ArrayList<>(tokenPaths.size());
+        for (List<String> tokens : tokenPaths) {
+            quotes.add(quote(tokens, amountIn, true));
+        }
+        return quotes;
+    }
+
+    /**
+     * 计算精确输入报价，每一跳在所有手续费等级中选择输出最多的pool
+     *
+     * @param amountIn 输入数量，单位wei
+     * @param tokens   代币路径
+     * @return 报价
+     * @throws Exception 与节点交互失败
+     */
+    public PathQuote quoteExactInput(BigInteger amountIn, List<String> tokens) throws Exception {
+        return quoteExactInputAll(amountIn, Collections.singletonList(tokens)).get(0);
+    }
+
+    /**
+     * 计算精确输出报价，从最后一跳往前，每一跳在所有手续费等级中选择输入最少的pool
+     *
+     * @param amountOut 输出数量，单位wei
+     * @param tokens    代币路径
+     * @return 报价
+     * @throws Exception 与节点交互失败
+     */
+    public PathQuote quoteExactOutput(BigInteger amountOut, List<String> tokens) throws Exception {
+        loadPools(poolsOf(Collections.singletonList(tokens)), wordRadius);
+        return quote(tokens, amountOut, false);
+    }
+
+    /**
+     * 按指定的手续费等级计算精确输入报价
+     *
+     * @param amountIn 输入数量，单位wei
+     * @param path     兑换路径
+     * @return 报价
+     * @throws Exception 与节点交互失败
+     */
+    public PathQuote quoteExactInput(BigInteger amountIn, V3Path path) throws Exception {
+        Map<String, PoolRef> refs = new LinkedHashMap<>();
+        for (int i = 0; i < path.getFees().size(); i++) {
+            addRef(refs, path.getTokens().get(i), path.getTokens().get(i + 1), path.getFees().get(i));
+        }
+        loadPools(refs.values(), wordRadius);
+        BigInteger amount = amountIn;
+        BigInteger blockNumber = null;
+        try {
+            for (int i = 0; i < path.getFees().size(); i++) {
+                String tokenIn = path.getTokens().get(i);
+                String tokenOut = path.getTokens().get(i + 1);
+                V3Pool pool = pools.get(getPoolAddress(tokenIn, tokenOut, path.getFees().get(i)));
+                amount = swap(pool, tokenIn, amount, true)[1];
+                blockNumber = pool.getBlockNumber();
+            }
+        } catch (Exception e) {
+            return new PathQuote(path, amountIn, null, blockNumber, e.getMessage());
+        }
+        return new PathQuote(path, amountIn, amount, blockNumber, null);
+    }
+
+    /**
+     * 按报价方向逐跳选择最优的手续费等级
+     */
+    private PathQuote quote(List<String> tokens, BigInteger amount, boolean exactIn) {
+        int hops = tokens.size() - 1;
+        Integer[] fees = new Integer[hops];
+        BigInteger current = amount;
+        BigInteger blockNumber = null;
+        String error = null;
+        for (int step = 0; step < hops; step++) {
+            // 精确输出从最后一跳往前计算
+            int i = exactIn ? step : hops - 1 - step;
+            String tokenIn = tokens.get(i);
+            String tokenOut = tokens.get(i + 1);
+            BigInteger best = null;
+            for (int fee : feeTiers) {
+                V3Pool pool = pools.get(getPoolAddress(tokenIn, tokenOut, fee));
+                if (pool == null || !pool.isExists()) {
+                    continue;
+                }
+                try {
+                    BigInteger[] result = swap(pool, tokenIn, exactIn ? current : current.negate(), true);
+                    BigInteger value = exactIn ? result[1] : result[0];
+                    if (best == null || (exactIn ? value.compareTo(best) > 0 : value.compareTo(best) < 0)) {
+                        best = value;
+                        fees[i] = fee;
+                        blockNumber = pool.getBlockNumber();
+                    }
+                } catch (Exception e) {
+                    error = e.getMessage();
+                }
+            }
+            if (best == null) {
+                String reason = error != null ? error : String.format("无此交易对: %s -> %s", tokenIn, tokenOut);
+                return new PathQuote(null, exactIn ? amount : null, exactIn ? null : amount, blockNumber, reason);
+            }
+            current = best;
+        }
+        V3Path path = new V3Path(tokens, Arrays.asList(fees));
+        return exactIn
+                ? new PathQuote(path, amount, current, blockNumber, null)
+                : new PathQuote(path, current, amount, blockNumber, null);
+    }
+
+    /**
+     * 在pool上模拟兑换，超出已加载的tick范围时扩大范围重新加载
+     *
+     * @return [输入数量, 输出数量]
+     */
+    private BigInteger[] swap(V3Pool pool, String tokenIn, BigInteger amountSpecified, boolean extend) throws Exception {
+        boolean zeroForOne = pool.getToken0().equalsIgnoreCase(tokenIn);
+        int radius = wordRadius;
+        while (true) {
+            BigInteger[] result = pool.swap(zeroForOne, amountSpecified);
+            if (result != null) {
+                return result;
+            }
+            radius *= 2;
+            if (!extend || radius > maxWordRadius) {
+                throw new Exception("error: 流动性不足");
+            }
+            loadPools(Collections.singletonList(new PoolRef(pool.getAddress(), pool.getToken0(), pool.getFee())), radius);
+            pool = pools.get(pool.getAddress());
+        }
+    }
+
+    private Collection<PoolRef> poolsOf(List<List<String>> tokenPaths) {
+        Map<String, PoolRef> refs = new LinkedHashMap<>();
+        for (List<String> tokens : tokenPaths) {
+            for (int i = 0; i < tokens.size() - 1; i++) {
+                for (int fee : feeTiers) {
+                    addRef(refs, tokens.get(i), tokens.get(i + 1), fee);
+                }
+            }
+        }
+        return refs.values();
+    }
+
+    private void addRef(Map<String, PoolRef> refs, String tokenA, String tokenB, int fee) {
+        String address = getPoolAddress(tokenA, tokenB, fee);
+        refs.putIfAbsent(address, new PoolRef(address, PairAddressUtil.sortTokens(tokenA, tokenB)[0].toLowerCase(), fee));
+    }
+
+    /**
+     * 刷新过期的pool状态
+     * 第一次Multicall读取slot0、流动性、tickSpacing和上次加载范围内的bitmap，第二次补充缺少的bitmap并读取tick的liquidityNet
+     * 第二次固定在第一次的区块高度上，保证快照一致
+     *
+     * @param refs   需要的pool
+     * @param radius 当前tick所在word两侧各加载的word数量
+     */
+    private void loadPools(Collection<PoolRef> refs, int radius) throws Exception {
+        List<PoolRef> stale = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (PoolRef ref : refs) {
+            V3Pool pool = pools.get(ref.address);
+            boolean wide = pool == null || !pool.isExists()
+                    || pool.getMaxWord() - pool.getMinWord() >= 2 * radius;
+            if (pool == null || now - pool.getUpdateTime() > maxAgeMillis || !wide) {
+                stale.add(ref);
+            }
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+        MulticallUtil multicall = new MulticallUtil(web3);
+        int[] first = new int[stale.size()];
+        for (int i = 0; i < stale.size(); i++) {
+            PoolRef ref = stale.get(i);
+            V3Pool old = pools.get(ref.address);
+            first[i] = multicall.addCall(ref.address, "slot0", new ArrayList<>(), Arrays.asList(new TypeReference<Uint160>() {
+            }, new TypeReference<Int24>() {
+            }));
+            multicall.addCall(ref.address, "liquidity", new ArrayList<>(), Collections.singletonList(new TypeReference<Uint128>() {
+            }));
+            multicall.addCall(ref.address, "tickSpacing", new ArrayList<>(), Collections.singletonList(new TypeReference<Int24>() {
+            }));
+            // 上次的范围大概率仍然适用，与slot0一起读取
+            if (old != null && old.isExists()) {
+                for (int word = old.getMinWord(); word <= old.getMaxWord(); word++) {
+                    addBitmapCall(multicall, ref.address, word);
+                }
+            }
+        }
+        MulticallUtil.Result result = multicall.execute();
+        BigInteger blockNumber = result.getBlockNumber();
+        List<PoolLoad> loads = new ArrayList<>();
+        for (int i = 0; i < stale.size(); i++) {
+            PoolRef ref = stale.get(i);
+            V3Pool old = pools.get(ref.address);
+            int index = first[i];
+            MulticallUtil.CallResult slot0 = result.getResults().get(index);
+            if (!slot0.isSuccess()) {
+                pools.put(ref.address, new V3Pool(ref.address, ref.token0, ref.fee, 0, false, null, 0, null, 0, -1,
+                        Collections.emptyMap(), Collections.emptyMap(), blockNumber));
+                continue;
+            }
+            PoolLoad load = new PoolLoad(ref);
+            load.sqrtPriceX96 = (BigInteger) slot0.getValues().get(0).getValue();
+            load.tick = ((BigInteger) slot0.getValues().get(1).getValue()).intValue();
+            load.liquidity = (BigInteger) result.get(index + 1).get(0).getValue();
+            load.tickSpacing = ((BigInteger) result.get(index + 2).get(0).getValue()).intValue();
+            int center = V3Pool.wordOf(load.tick, load.tickSpacing);
+            load.minWord = center - radius;
+            load.maxWord = center + radius;
+            if (old != null && old.isExists()) {
+                int offset = index + 3;
+                for (int word = old.getMinWord(); word <= old.getMaxWord(); word++) {
+                    MulticallUtil.CallResult bitmap = result.getResults().get(offset++);
+                    if (bitmap.isSuccess() && word >= load.minWord && word <= load.maxWord) {
+                        load.bitmap.put(word, (BigInteger) bitmap.getValues().get(0).getValue());
+                    }
+                }
+            }
+            loads.add(load);
+        }
+        // 补充缺少的bitmap
+        multicall = new MulticallUtil(web3);
+        List<int[]> bitmapCalls = new ArrayList<>();
+        for (int i = 0; i < loads.size(); i++) {
+            PoolLoad load = loads.get(i);
+            for (int word = load.minWord; word <= load.maxWord; word++) {
+                if (!load.bitmap.containsKey(word)) {
+                    bitmapCalls.add(new int[]{i, word, addBitmapCall(multicall, load.ref.address, word)});
+                }
+            }
+        }
+        if (multicall.size() > 0) {
+            result = multicall.execute(blockNumber);
+            for (int[] call : bitmapCalls) {
+                loads.get(call[0]).bitmap.put(call[1], (BigInteger) result.get(call[2]).get(0).getValue());
+            }
+        }
+        // 读取已初始化tick的liquidityNet
+        multicall = new MulticallUtil(web3);
+        List<int[]> tickCalls = new ArrayList<>();
+        for (int i = 0; i < loads.size(); i++) {
+            PoolLoad load = loads.get(i);
+            for (Map.Entry<Integer, BigInteger> entry : load.bitmap.entrySet()) {
+                BigInteger word = entry.getValue();
+                for (int bit = word.getLowestSetBit(); bit >= 0 && bit < 256; bit = nextSetBit(word, bit + 1)) {
+                    int tick = ((entry.getKey() << 8) + bit) * load.tickSpacing;
+                    int index = multicall.addCall(load.ref.address, "ticks", Collections.singletonList(new Int24(BigInteger.valueOf(tick))),
+                            Arrays.asList(new TypeReference<Uint128>() {
+                            }, new TypeReference<Int128>() {
+                            }));
+                    tickCalls.add(new int[]{i, tick, index});
+                }
+            }
+        }
+        if (multicall.size() > 0) {
+            result = multicall.execute(blockNumber);
+            for (int[] call : tickCalls) {
+                List<Type> values = result.get(call[2]);
+                loads.get(call[0]).liquidityNet.put(call[1], (BigInteger) values.get(1).getValue());
+            }
+        }
+        for (PoolLoad load : loads) {
+            pools.put(load.ref.address, new V3Pool(load.ref.address, load.ref.token0, load.ref.fee, load.tickSpacing, true,
+                    load.sqrtPriceX96, load.tick, load.liquidity, load.minWord, load.maxWord, load.bitmap, load.liquidityNet, blockNumber));
+        }
+    }
+
+    private static int addBitmapCall(MulticallUtil multicall, String pool, int word) {
+        return multicall.addCall(pool, "tickBitmap", Collections.singletonList(new Int16(BigInteger.valueOf(word))),
+                Collections.singletonList(new TypeReference<Uint256>() {
+                }));
+    }
+
+    private static int nextSetBit(BigInteger word, int from) {
+        BigInteger rest = word.shiftRight(from);
+        return rest.signum() == 0 ? -1 : from + rest.getLowestSetBit();
+    }
+
+    /**
+     * 需要加载的pool
+     */
+    private static class PoolRef {
+
+        private final String address;
+
+        private final String token0;
+
+        private final int fee;
+
+        private PoolRef(String address, String token0, int fee) {
+            this.address = address;
+            this.token0 = token0;
+            this.fee = fee;
+        }
+    }
+
+    /**
+     * 加载中的pool状态
+     */
+    private static class PoolLoad {
+
+        private final PoolRef ref;
+
+        private BigInteger sqrtPriceX96;
+
+        private int tick;
+
+        private BigInteger liquidity;
+
+        private int tickSpacing;
+
+        private int minWord;
+
+        private int maxWord;
+
+        private final Map<Integer, BigInteger> bitmap = new HashMap<>();
+
+        private final Map<Integer, BigInteger> liquidityNet = new HashMap<>();
+
+        private PoolLoad(PoolRef ref) {
+            this.ref = ref;
+        }
+    }
+
+    /**
+     * 一条路径的V3报价
+     */
+    @Getter
+    public static class PathQuote {
+
+        /**
+         * 兑换路径(包含每一跳选定的手续费等级)，失败时为null
+         */
+        private final V3Path path;
+
+        /**
+         * 输入数量，单位wei
+         */
+        private final BigInteger amountIn;
+
+        /**
+         * 输出数量，单位wei
+         */
+        private final BigInteger amountOut;
+
+        /**
+         * 报价对应的区块高度
+         */
+        private final BigInteger blockNumber;
+
+        /**
+         * 失败原因
+         */
+        private final String error;
+
+        PathQuote(V3Path path, BigInteger amountIn, BigInteger amountOut, BigInteger blockNumber, String error) {
+            this.path = path;
+            this.amountIn = amountIn;
+            this.amountOut = amountOut;
+            this.blockNumber = blockNumber;
+            this.error = error;
+        }
+
+        /**
+         * 是否报价成功
+         *
+         * @return 成功返回true
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.oxthink.web3.swap;
+
+import com.oxthink.constant.RouterInfo;
+import com.oxthink.web3.Web3jUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Convert;
+import org.web3j.utils.Numeric;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Uniswap V3 SwapRouter
+ * 支持exactInput、exactOutput和多跳路径，每一跳可以使用不同的手续费等级
+ * 报价在本地根据缓存的pool状态计算，不调用Quoter合约
+ * 与V2的RouterUtil一致，输入代币为WETH时直接使用主网币支付，输出代币为WETH时兑换为主网币
+ */
+@Slf4j
+public class V3RouterUtil {
+
+    /**
+     * exactInput((bytes,address,uint256,uint256,uint256))的函数选择器
+     */
+    private static final String EXACT_INPUT = Hash.sha3String("exactInput((bytes,address,uint256,uint256,uint256))").substring(0, 10);
+
+    /**
+     * exactOutput((bytes,address,uint256,uint256,uint256))的函数选择器
+     */
+    private static final String EXACT_OUTPUT = Hash.sha3String("exactOutput((bytes,address,uint256,uint256,uint256))").substring(0, 10);
+
+    /**
+     * router信息
+     */
+    final RouterInfo routerInfo;
+
+    /**
+     * web3对象
+     */
+    final Web3jUtil web3;
+
+    /**
+     * 本地报价
+     */
+    final V3Quoter quoter;
+
+    /**
+     * 常用用于组lp的代币信息
+     */
+    public List<String> commonPairToken = new ArrayList<>();
+
+    public V3RouterUtil(Web3jUtil web3, RouterInfo routerInfo) {
+        if (!routerInfo.isV3()) {
+            throw new IllegalArgumentException(routerInfo.getRouterName() + "不是V3的router");
+        }
+        this.web3 = web3;
+        this.routerInfo = routerInfo;
+        this.quoter = new V3Quoter(web3, routerInfo);
+    }
+
+    public V3RouterUtil(String privateKey, RouterInfo routerInfo) {
+        this(new Web3jUtil(routerInfo.getChainInfo(), privateKey), routerInfo);
+    }
+
+    public V3RouterUtil(RouterInfo routerInfo) {
+        this(new Web3jUtil(routerInfo.getChainInfo()), routerInfo);
+    }
+
+    /**
+     * 获取代币兑换的输出，每一跳自动选择输出最多的手续费等级
+     *
+     * @param amountIn 输入的代币数量
+     * @param tokens   兑换路径
+     * @return 代币兑换出的数量：单位ether
+     * @throws Exception 没有流动性或与节点交互失败
+     */
+    public String getAmountOut(String amountIn, List<String> tokens) throws Exception {
+        V3Quoter.PathQuote quote = quoter.quoteExactInput(toWei(amountIn), tokens);
+        if (!quote.isSuccess()) {
+            throw new Exception("error: " + quote.getError());
+        }
+        return fromWei(quote.getAmountOut());
+    }
+
+    /**
+     * 获取得到指定输出需要的输入，每一跳自动选择输入最少的手续费等级
+     *
+     * @param amountOut 输出的代币数量
+     * @param tokens    兑换路径
+     * @return 需要输入的代币数量：单位ether
+     * @throws Exception 没有流动性或与节点交互失败
+     */
+    public String getAmountIn(String amountOut, List<String> tokens) throws Exception {
+        V3Quoter.PathQuote quote = quoter.quoteExactOutput(toWei(amountOut), tokens);
+        if (!quote.isSuccess()) {
+            throw new Exception("error: " + quote.getError());
+        }
+        return fromWei(quote.getAmountIn());
+    }
+
+    /**
+     * 自动寻找最优兑换路径：直接兑换和走常见的中间兑换币，所有候选路径的pool合并刷新
+     *
+     * @param tokenIn  输入代币
+     * @param amountIn 输入的代币数量
+     * @param tokenOut 输出代币
+     * @return 最优路径的报价，没有可用路径返回null
+     * @throws Exception 与节点交互失败
+     */
+    public V3Quoter.PathQuote getBestPath(String tokenIn, String amountIn, String tokenOut) throws Exception {
+        List<List<String>> candidates = new ArrayList<>();
+        candidates.add(Arrays.asList(tokenIn, tokenOut));
+        for (String pairToken : commonPairToken) {
+            if (pairToken.equals(tokenIn) || pairToken.equals(tokenOut)) {
+                continue;
+            }
+            candidates.add(Arrays.asList(tokenIn, pairToken, tokenOut));
+        }
+        V3Quoter.PathQuote best = null;
+        for (V3Quoter.PathQuote quote : quoter.quoteExactInputAll(toWei(amountIn), candidates)) {
+            if (!quote.isSuccess()) {
+                log.info(String.format("寻找交易对失败: %s", quote.getError()));
+                continue;
+            }
+            log.info(String.format("%s \namountOut: %s", quote.getPath(), fromWei(quote.getAmountOut())));
+            if (best == null || quote.getAmountOut().compareTo(best.getAmountOut()) > 0) {
+                best = quote;
+            }
+        }
+        if (best != null) {
+            log.info(String.format("最优兑换路径: %s 最优兑换数量: %s", best.getPath(), fromWei(best.getAmountOut())));
+        }
+        return best;
+    }
+
+    /**
+     * 通用兑换函数，自动选择最优路径和手续费等级
+     *
+     * @param tokenIn      输入的token地址
+     * @param amountIn     输入的token数量
+     * @param tokenOut     输出的token地址
+     * @param amountOutMin 最小可接受的输出数量
+     * @param slippage     滑点（在amountOutMin的基础上）
+     * @return 交易hash
+     * @throws Exception 与节点交互失败会抛出异常
+     */
+    public String swapExactIn(String tokenIn, String amountIn, String tokenOut, String amountOutMin, double slippage) throws Exception {
+        V3Quoter.PathQuote quote = getBestPath(tokenIn, amountIn, tokenOut);
+        if (quote == null) {
+            throw new Exception("自动寻找路径失败");
+        }
+        String amountOut = fromWei(quote.getAmountOut());
+        if (new BigDecimal(amountOutMin).compareTo(new BigDecimal(amountOut)) > 0) {
+            throw new Exception(String.format("当前输出数量为: %s,无法满足最小输出", amountOut));
+        }
+        return exactInput(quote.getPath(), amountIn, amountOutMin, slippage);
+    }
+
+    /**
+     * 精确输入兑换
+     *
+     * @param path         兑换路径
+     * @param amountIn     输入的代币数量
+     * @param amountOutMin 输出的最小代币数量
+     * @param slippage     滑点
+     * @return 交易hash
+     * @throws Exception 与节点交互失败会抛出异常
+     */
+    public String exactInput(V3Path path, String amountIn, String amountOutMin, double slippage) throws Exception {
+        String wEth = web3.getChainInfo().getWETHAddress();
+        BigInteger amountInWei = toWei(amountIn);
+        BigInteger minOut = withSlippage(toWei(amountOutMin), slippage);
+        boolean ethIn = path.getTokenIn().equalsIgnoreCase(wEth);
+        boolean ethOut = path.getTokenOut().equalsIgnoreCase(wEth);
+        // 输出为主网币时先转给router，再由router解包转给自己
+        String recipient = ethOut ? routerInfo.getRouterAddress() : web3.getOwnerAddress();
+        String data = encodeSwap(EXACT_INPUT, path.encode(), recipient, amountInWei, minOut);
+        if (ethOut) {
+            data = encodeMulticall(data, unwrapWETH9(minOut));
+        }
+        return web3.writeContract(routerInfo.getRouterAddress(), data, ethIn ? amountIn : "0");
+    }
+
+    /**
+     * 精确输出兑换
+     *
+     * @param path        兑换路径
+     * @param amountOut   输出的代币数量
+     * @param amountInMax 输入的最大代币数量
+     * @param slippage    滑点
+     * @return 交易hash
+     * @throws Exception 与节点交互失败会抛出异常
+     */
+    public String exactOutput(V3Path path, String amountOut, String amountInMax, double slippage) throws Exception {
+        String wEth = web3.getChainInfo().getWETHAddress();
+        BigInteger amountOutWei = toWei(amountOut);
+        BigInteger maxIn = new BigDecimal(toWei(amountInMax)).multiply(BigDecimal.valueOf(1 + slippage)).toBigInteger();
+        boolean ethIn = path.getTokenIn().equalsIgnoreCase(wEth);
+        boolean ethOut = path.getTokenOut().equalsIgnoreCase(wEth);
+        String recipient = ethOut ? routerInfo.getRouterAddress() : web3.getOwnerAddress();
+        String data = encodeSwap(EXACT_OUTPUT, path.encodeReversed(), recipient, amountOutWei, maxIn);
+        if (ethOut) {
+            data = encodeMulticall(data, unwrapWETH9(amountOutWei));
+        } else if (ethIn) {
+            // 多付的主网币退回
+            data = encodeMulticall(data, FunctionEncoder.encode(new Function("refundETH", Collections.emptyList(), Collections.emptyList())));
+        }
+        return web3.writeContract(routerInfo.getRouterAddress(), data, ethIn ? fromWei(maxIn) : "0");
+    }
+
+    /**
+     * 获取本地报价对象
+     *
+     * @return 本地报价
+     */
+    public V3Quoter getQuoter() {
+        return quoter;
+    }
+
+    /**
+     * 获取router信息
+     *
+     * @return router信息
+     */
+    public RouterInfo getRouterInfo() {
+        return routerInfo;
+    }
+
+    /**
+     * 增加中间兑换pair
+     *
+     * @param tokenAddress 代币地址
+     */
+    public void addCommonPairToken(String tokenAddress) {
+        commonPairToken.add(tokenAddress);
+    }
+
+    /**
+     * 编码exactInput/exactOutput，参数为一个包含bytes的动态tuple
+     */
+    private String encodeSwap(String selector, byte[] path, String recipient, BigInteger amount, BigInteger limit) {
+        // 持续时间（20min）
+        long time = System.currentTimeMillis() / 1000 + 1200;
+        List<Type> params = Arrays.asList(new DynamicBytes(path), new Address(recipient), new Uint256(BigInteger.valueOf(time)),
+                new Uint256(amount), new Uint256(limit));
+        // tuple的偏移量 + tuple内容
+        return selector + Numeric.toHexStringNoPrefixZeroPadded(BigInteger.valueOf(32), 64) + FunctionEncoder.encodeConstructor(params);
+    }
+
+    private String unwrapWETH9(BigInteger amountMinimum) {
+        return FunctionEncoder.encode(new Function("unwrapWETH9",
+                Arrays.asList(new Uint256(amountMinimum), new Address(web3.getOwnerAddress())), Collections.emptyList()));
+    }
+
+    private static String encodeMulticall(String... calls) {
+        List<DynamicBytes> data = new ArrayList<>();
+        for (String call : calls) {
+            data.add(new DynamicBytes(Numeric.hexStringToByteArray(call)));
+        }
+        return FunctionEncoder.encode(new Function("multicall",
+                Collections.singletonList(new DynamicArray<>(DynamicBytes.class, data)), Collections.emptyList()));
+    }
+
+    private static BigInteger withSlippage(BigInteger amount, double slippage) {
+        return new BigDecimal(amount).multiply(BigDecimal.valueOf(1 - slippage)).toBigInteger();
+    }
+
+    private static BigInteger toWei(String amount) {
+        return Convert.toWei(amount, Convert.Unit.ETHER).toBigInteger();
+    }
+
+    private static String fromWei(BigInteger amount) {
+        return Convert.fromWei(new BigDecimal(amount), Convert.Unit.ETHER).toPlainString();
+    }
+}